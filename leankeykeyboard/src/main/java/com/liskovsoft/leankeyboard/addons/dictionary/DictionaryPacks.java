@@ -0,0 +1,103 @@
+package com.liskovsoft.leankeyboard.addons.dictionary;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+import com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.keyboards.ApkKeyboardAddOnAndBuilder;
+import com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.keyboards.ApkLangKeyboardFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * NOTE: Dictionaries shipped by the keyboard add-on packages (com.liskovsoft.leankey.langpack.KEYBOARD).<br/>
+ * Add-on declares its language with defaultDictionaryLocale attribute
+ * and puts the word list into assets/dictionaries/&lt;locale&gt;.lkwl (see {@link MappedWordList}).<br/>
+ * Lists are mapped on first use of the language and dropped when add-ons change.
+ * NOTE: Call from the suggestions thread only.
+ */
+public class DictionaryPacks {
+    private static final String TAG = DictionaryPacks.class.getSimpleName();
+    private static final String ASSET_PATH = "dictionaries/%s.lkwl";
+    private final Context mContext;
+    /**
+     * NOTE: One per process: factories are registered for the package events and never unregistered
+     */
+    private static final ApkLangKeyboardFactory sAddOnsFactory = new ApkLangKeyboardFactory();
+    /**
+     * Null value: no pack for the language
+     */
+    private final Map<String, MappedWordList> mWordLists = new HashMap<>();
+
+    public DictionaryPacks(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @param langCode language of the current keyboard
+     * @return word list of the installed pack or null
+     */
+    public MappedWordList get(String langCode) {
+        if (langCode == null) {
+            return null;
+        }
+
+        if (sAddOnsFactory.needUpdate()) {
+            mWordLists.clear();
+        }
+
+        if (!mWordLists.containsKey(langCode)) {
+            mWordLists.put(langCode, open(langCode));
+        }
+
+        return mWordLists.get(langCode);
+    }
+
+    /**
+     * Unmap all lists, they're mapped again on demand
+     */
+    public void release() {
+        mWordLists.clear();
+    }
+
+    private MappedWordList open(String langCode) {
+        for (ApkKeyboardAddOnAndBuilder addOn : sAddOnsFactory.getAllAddOns(mContext)) {
+            String locale = addOn.getKeyboardLocale();
+
+            if (locale == null || !locale.equals(langCode)) {
+                continue;
+            }
+
+            Context packageContext = addOn.getPackageContext();
+
+            if (packageContext == null) {
+                continue;
+            }
+
+            String path = String.format(ASSET_PATH, locale);
+
+            try {
+                // NOTE: AssetFileDescriptor isn't Closeable before KitKat
+                AssetFileDescriptor fd = packageContext.getAssets().openFd(path);
+                MappedWordList wordList;
+
+                try {
+                    wordList = MappedWordList.map(fd);
+                } finally {
+                    fd.close();
+                }
+
+                Log.d(TAG, "Dictionary " + locale + " from " + addOn.getPackageName() + ": " + wordList.size() + " words");
+                return wordList;
+            } catch (FileNotFoundException e) {
+                Log.w(TAG, "No uncompressed " + path + " in " + addOn.getPackageName());
+            } catch (IOException e) {
+                Log.e(TAG, "Can't map " + path + " from " + addOn.getPackageName(), e);
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,265 @@
+package com.liskovsoft.leankeyboard.addons.dictionary;
+
+import android.content.res.AssetFileDescriptor;
+import com.liskovsoft.leankeyboard.ime.DatabaseHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * NOTE: Sorted word list mapped straight from the asset of the dictionary pack
+ * (or the file made by {@link WordListBuilder}), nothing is copied or parsed on open.<br/>
+ * Layout (big endian): magic, version, count, int offsets of the entries, entries.
+ * Entry: key length (short), key (lower case word without accents, UTF-8), word length (short), word (UTF-8).
+ * Entries are sorted by the key bytes.<br/>
+ * NOTE: Pack comes from a third-party apk, so offsets and lengths of all entries are checked once on map.<br/>
+ * NOTE: Asset should be stored uncompressed (aaptOptions noCompress), otherwise it can't be mapped.
+ */
+public class MappedWordList {
+    private static final int MAGIC = 0x4c4b574c; // LKWL
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int MAX_SUGGESTIONS = 8;
+    /**
+     * Added to the rank of the phrase, so single words go first
+     */
+    private static final int PHRASE_RANK = 0x10000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mDataStart;
+
+    private MappedWordList(ByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a word list");
+        }
+
+        int version = buffer.getInt(4);
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported word list version: " + version);
+        }
+
+        mCount = buffer.getInt(8);
+        long dataStart = HEADER_SIZE + (long) mCount * 4;
+
+        if (mCount < 0 || dataStart > buffer.capacity()) {
+            throw new IOException("Broken word list: " + mCount + " entries");
+        }
+
+        mDataStart = (int) dataStart;
+        validateEntries();
+    }
+
+    /**
+     * Lookups read entries without checks, so broken pack is rejected here (caller falls back to the database)
+     */
+    private void validateEntries() throws IOException {
+        int capacity = mBuffer.capacity();
+
+        for (int i = 0; i < mCount; i++) {
+            long keyOffset = mDataStart + (long) mBuffer.getInt(HEADER_SIZE + i * 4);
+
+            if (keyOffset < mDataStart || keyOffset + 2 > capacity) {
+                throw new IOException("Broken word list: entry " + i + " is outside of the file");
+            }
+
+            long wordOffset = keyOffset + 2 + (mBuffer.getShort((int) keyOffset) & 0xFFFF);
+
+            if (wordOffset + 2 > capacity || wordOffset + 2 + (mBuffer.getShort((int) wordOffset) & 0xFFFF) > capacity) {
+                throw new IOException("Broken word list: entry " + i + " is outside of the file");
+            }
+        }
+    }
+
+    public static MappedWordList map(AssetFileDescriptor fd) throws IOException {
+        try (FileInputStream stream = fd.createInputStream()) {
+            MappedByteBuffer buffer = stream.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getDeclaredLength());
+            // mapping stays valid after the descriptor is closed
+            return new MappedWordList(buffer);
+        }
+    }
+
+    public static MappedWordList map(File file) throws IOException {
+        try (RandomAccessFile stream = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = stream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, stream.length());
+            return new MappedWordList(buffer);
+        }
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Same contract as {@link DatabaseHelper#getSuggestions(String, int)}: all matches are ranked (single words first,
+     * then shorter ones), only the best ones are decoded.<br/>
+     * NOTE: Length of the key bytes stands for the word length. Equal ranks keep the key order.
+     */
+    public List<String> getSuggestions(String prefix, int searchMode) {
+        List<String> suggestions = new ArrayList<>();
+
+        if (prefix == null || prefix.trim().isEmpty()) {
+            return suggestions;
+        }
+
+        String key = DatabaseHelper.removeAccents(prefix).toLowerCase(Locale.ROOT);
+
+        if (searchMode == DatabaseHelper.MODE_FIRST_SYLLABLE_OF_PHRASE) {
+            key += " ";
+        }
+
+        byte[] keyBytes = key.getBytes(UTF_8);
+        boolean phraseMode = searchMode == DatabaseHelper.MODE_FIRST_SYLLABLE_OF_PHRASE;
+        int[] bestOffsets = new int[MAX_SUGGESTIONS];
+        int[] bestRanks = new int[MAX_SUGGESTIONS];
+        int bestCount = 0;
+
+        for (int i = lowerBound(keyBytes); i < mCount; i++) {
+            int offset = getEntryOffset(i);
+
+            if (!startsWith(offset, keyBytes)) {
+                break;
+            }
+
+            int keyLength = mBuffer.getShort(offset) & 0xFFFF;
+
+            if (phraseMode && keyLength <= keyBytes.length) {
+                // nothing after the first syllable
+                continue;
+            }
+
+            int rank = phraseMode || !hasSpace(offset, keyLength) ? keyLength : PHRASE_RANK + keyLength;
+
+            if (bestCount == MAX_SUGGESTIONS && rank >= bestRanks[MAX_SUGGESTIONS - 1]) {
+                continue;
+            }
+
+            int pos = bestCount < MAX_SUGGESTIONS ? bestCount++ : MAX_SUGGESTIONS - 1;
+
+            for (; pos > 0 && bestRanks[pos - 1] > rank; pos--) {
+                bestRanks[pos] = bestRanks[pos - 1];
+                bestOffsets[pos] = bestOffsets[pos - 1];
+            }
+
+            bestRanks[pos] = rank;
+            bestOffsets[pos] = offset;
+        }
+
+        final int prefixLength = prefix.length();
+
+        for (int i = 0; i < bestCount; i++) {
+            String word = readWord(bestOffsets[i]);
+
+            if (!phraseMode) {
+                suggestions.add(word);
+            } else if (word.length() > prefixLength + 1) {
+                suggestions.add(word.substring(prefixLength + 1));
+            }
+        }
+
+        return suggestions;
+    }
+
+    private boolean hasSpace(int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (mBuffer.get(offset + 2 + i) == ' ') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return index of the first entry which key isn't less than the given key
+     */
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = mCount;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (compareKey(getEntryOffset(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private int getEntryOffset(int index) {
+        return mDataStart + mBuffer.getInt(HEADER_SIZE + index * 4);
+    }
+
+    private int compareKey(int offset, byte[] key) {
+        int length = mBuffer.getShort(offset) & 0xFFFF;
+        int common = Math.min(length, key.length);
+
+        for (int i = 0; i < common; i++) {
+            int diff = (mBuffer.get(offset + 2 + i) & 0xFF) - (key[i] & 0xFF);
+
+            if (diff != 0) {
+                return diff;
+            }
+        }
+
+        return length - key.length;
+    }
+
+    private boolean startsWith(int offset, byte[] key) {
+        int length = mBuffer.getShort(offset) & 0xFFFF;
+
+        if (length < key.length) {
+            return false;
+        }
+
+        for (int i = 0; i < key.length; i++) {
+            if (mBuffer.get(offset + 2 + i) != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return lower case word without accents
+     */
+    public String getKeyAt(int index) {
+        return readString(getEntryOffset(index));
+    }
+
+    public String getWordAt(int index) {
+        return readWord(getEntryOffset(index));
+    }
+
+    private String readWord(int offset) {
+        return readString(offset + 2 + (mBuffer.getShort(offset) & 0xFFFF));
+    }
+
+    private String readString(int offset) {
+        int length = mBuffer.getShort(offset) & 0xFFFF;
+        byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(offset + 2 + i);
+        }
+
+        return new String(bytes, UTF_8);
+    }
+}
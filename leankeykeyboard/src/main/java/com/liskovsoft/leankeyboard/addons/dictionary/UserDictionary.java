@@ -0,0 +1,258 @@
+package com.liskovsoft.leankeyboard.addons.dictionary;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.liskovsoft.leankeyboard.ime.DatabaseHelper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * NOTE: Words imported by the user from the text file (one word or phrase per line, '#' starts a comment).<br/>
+ * File is streamed and indexed on the background thread (see {@link WordListBuilder}),
+ * then the new {@link MappedWordList} replaces the old one in a single reference swap.
+ * Lookups never wait for the import and never see a partially built list.
+ */
+public class UserDictionary {
+    private static final String TAG = UserDictionary.class.getSimpleName();
+    private static final String FILE_NAME = "user_words.lkwl";
+    private static final String WORK_DIR = "user_words_import";
+    private static final int MAX_WORD_LENGTH = 64;
+    private static final int MAX_WORDS = 500_000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static UserDictionary sInstance;
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicReference<MappedWordList> mWordList = new AtomicReference<>();
+    private final AtomicBoolean mLoadStarted = new AtomicBoolean();
+    private final List<OnImportListener> mImportListeners = new CopyOnWriteArrayList<>();
+
+    public interface ImportCallback {
+        /**
+         * Called on the main thread
+         * @param totalWords words in the dictionary after the import
+         */
+        void onImportDone(int totalWords);
+
+        /**
+         * Called on the main thread
+         */
+        void onImportFailed(String reason);
+    }
+
+    /**
+     * NOTE: For the copies of the words (e.g. gesture dictionary) that should be rebuilt after an import
+     */
+    public interface OnImportListener {
+        /**
+         * Called on the main thread, new list is already swapped in
+         */
+        void onWordsImported();
+    }
+
+    public static UserDictionary instance(Context context) {
+        if (sInstance == null) {
+            synchronized (UserDictionary.class) {
+                if (sInstance == null) {
+                    sInstance = new UserDictionary(context.getApplicationContext());
+                }
+            }
+        }
+
+        return sInstance;
+    }
+
+    private UserDictionary(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Same contract as {@link DatabaseHelper#getSuggestions(String, int)}.<br/>
+     * Returns nothing until the saved list is mapped (happens in the background on first call).
+     */
+    public List<String> getSuggestions(String prefix, int searchMode) {
+        MappedWordList wordList = mWordList.get();
+
+        if (wordList == null) {
+            loadAsync();
+            return Collections.emptyList();
+        }
+
+        return wordList.getSuggestions(prefix, searchMode);
+    }
+
+    /**
+     * @return imported words or null if there are none or they're not mapped yet
+     */
+    public MappedWordList getWordList() {
+        MappedWordList wordList = mWordList.get();
+
+        if (wordList == null) {
+            loadAsync();
+        }
+
+        return wordList;
+    }
+
+    /**
+     * Unmap the list, it's mapped again on the next lookup
+     */
+    public void release() {
+        mWordList.set(null);
+        mLoadStarted.set(false);
+    }
+
+    public void addOnImportListener(OnImportListener listener) {
+        mImportListeners.add(listener);
+    }
+
+    public void removeOnImportListener(OnImportListener listener) {
+        mImportListeners.remove(listener);
+    }
+
+    /**
+     * Add words from the text file to the existing ones
+     */
+    public void importAsync(Uri uri, ImportCallback callback) {
+        mExecutor.execute(() -> {
+            try {
+                int count = importWords(uri);
+                mHandler.post(() -> {
+                    for (OnImportListener listener : mImportListeners) {
+                        listener.onWordsImported();
+                    }
+
+                    callback.onImportDone(count);
+                });
+            } catch (IOException | SecurityException e) {
+                Log.e(TAG, "Can't import " + uri, e);
+                mHandler.post(() -> callback.onImportFailed(e.getMessage()));
+            }
+        });
+    }
+
+    private void loadAsync() {
+        if (mLoadStarted.compareAndSet(false, true)) {
+            mExecutor.execute(() -> {
+                // import might have swapped the list in already
+                if (mWordList.get() == null) {
+                    mWordList.compareAndSet(null, open());
+                }
+            });
+        }
+    }
+
+    private MappedWordList open() {
+        File file = getFile();
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            return MappedWordList.map(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Can't map " + file, e);
+            return null;
+        }
+    }
+
+    private int importWords(Uri uri) throws IOException {
+        long startMs = System.currentTimeMillis();
+        InputStream stream = mContext.getContentResolver().openInputStream(uri);
+
+        if (stream == null) {
+            throw new IOException("Can't open " + uri);
+        }
+
+        WordListBuilder builder = new WordListBuilder(new File(mContext.getCacheDir(), WORK_DIR));
+        File file = getFile();
+        File tempFile = new File(file.getPath() + ".tmp");
+        int count;
+
+        try {
+            MappedWordList current = mWordList.get();
+
+            if (current == null) {
+                current = open();
+            }
+
+            int added = 0;
+
+            if (current != null) {
+                for (int i = 0; i < current.size(); i++) {
+                    builder.add(current.getKeyAt(i), current.getWordAt(i));
+                }
+
+                added = current.size();
+            }
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, UTF_8))) {
+                String line;
+
+                while ((line = reader.readLine()) != null && added < MAX_WORDS) {
+                    String word = normalize(line);
+
+                    if (word != null) {
+                        builder.add(DatabaseHelper.removeAccents(word).toLowerCase(Locale.ROOT), word);
+                        added++;
+                    }
+                }
+            }
+
+            count = builder.build(tempFile);
+        } catch (IOException e) {
+            builder.abort();
+            tempFile.delete();
+            throw e;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Can't replace " + file);
+        }
+
+        // previous mapping stays valid for the lookups that still hold it
+        mWordList.set(MappedWordList.map(file));
+        mLoadStarted.set(true);
+
+        Log.d(TAG, "Imported " + uri + ": " + count + " words in " + (System.currentTimeMillis() - startMs) + " ms");
+
+        return count;
+    }
+
+    /**
+     * @return word or null if the line should be skipped
+     */
+    private static String normalize(String line) {
+        // word lists often have frequency or other columns after the tab
+        int tab = line.indexOf('\t');
+        String word = (tab != -1 ? line.substring(0, tab) : line).trim();
+
+        if (word.isEmpty() || word.charAt(0) == '#' || word.length() > MAX_WORD_LENGTH) {
+            return null;
+        }
+
+        return word.replaceAll("\\s+", " ");
+    }
+
+    private File getFile() {
+        return new File(mContext.getFilesDir(), FILE_NAME);
+    }
+}
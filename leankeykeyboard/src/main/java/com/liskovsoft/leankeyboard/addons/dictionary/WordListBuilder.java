@@ -0,0 +1,253 @@
+package com.liskovsoft.leankeyboard.addons.dictionary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * NOTE: Builds {@link MappedWordList} file in bounded memory (external merge sort).<br/>
+ * Entries are collected into sorted chunks of {@link #CHUNK_SIZE}, chunks are spilled to the work dir
+ * and merged (with duplicates removed) into the output at the end.
+ */
+public class WordListBuilder {
+    private static final int MAGIC = 0x4c4b574c; // LKWL
+    private static final int VERSION = 1;
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_LENGTH = 0x7FFF;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final File mWorkDir;
+    private final List<File> mChunks = new ArrayList<>();
+    private TreeSet<Entry> mChunk = new TreeSet<>();
+
+    private static final class Entry implements Comparable<Entry> {
+        final byte[] key;
+        final byte[] word;
+
+        Entry(byte[] key, byte[] word) {
+            this.key = key;
+            this.word = word;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = compareBytes(key, other.key);
+            return result != 0 ? result : compareBytes(word, other.word);
+        }
+    }
+
+    /**
+     * Chunk reader for the merge
+     */
+    private static final class ChunkCursor implements Comparable<ChunkCursor> {
+        final DataInputStream in;
+        Entry current;
+
+        ChunkCursor(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        boolean next() throws IOException {
+            try {
+                current = new Entry(readBytes(in), readBytes(in));
+                return true;
+            } catch (EOFException e) {
+                current = null;
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(ChunkCursor other) {
+            return current.compareTo(other.current);
+        }
+    }
+
+    /**
+     * @param workDir dir for the temp chunks, created if needed
+     */
+    public WordListBuilder(File workDir) throws IOException {
+        mWorkDir = workDir;
+
+        if (!workDir.exists() && !workDir.mkdirs()) {
+            throw new IOException("Can't create dir " + workDir);
+        }
+    }
+
+    /**
+     * @param key lower case word without accents
+     * @param word word as it's shown in the suggestions
+     */
+    public void add(String key, String word) throws IOException {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        byte[] wordBytes = word.getBytes(UTF_8);
+
+        if (keyBytes.length > MAX_LENGTH || wordBytes.length > MAX_LENGTH) {
+            return;
+        }
+
+        mChunk.add(new Entry(keyBytes, wordBytes));
+
+        if (mChunk.size() >= CHUNK_SIZE) {
+            spillChunk();
+        }
+    }
+
+    /**
+     * Merge chunks into the output file. Temp files are removed.
+     * @return number of unique entries
+     */
+    public int build(File output) throws IOException {
+        if (!mChunk.isEmpty()) {
+            spillChunk();
+        }
+
+        File data = new File(mWorkDir, "data.tmp");
+        File offsets = new File(mWorkDir, "offsets.tmp");
+        int count = 0;
+
+        try {
+            try (DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(data)));
+                 DataOutputStream offsetsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(offsets)))) {
+                count = merge(dataOut, offsetsOut);
+            }
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                copy(offsets, out);
+                copy(data, out);
+            }
+        } finally {
+            data.delete();
+            offsets.delete();
+            deleteChunks();
+        }
+
+        return count;
+    }
+
+    /**
+     * Remove temp files of the unfinished build
+     */
+    public void abort() {
+        mChunk = new TreeSet<>();
+        deleteChunks();
+    }
+
+    private int merge(DataOutputStream dataOut, DataOutputStream offsetsOut) throws IOException {
+        PriorityQueue<ChunkCursor> queue = new PriorityQueue<>();
+        List<ChunkCursor> cursors = new ArrayList<>();
+        int count = 0;
+        Entry last = null;
+
+        try {
+            for (File chunk : mChunks) {
+                ChunkCursor cursor = new ChunkCursor(chunk);
+                cursors.add(cursor);
+
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                ChunkCursor cursor = queue.poll();
+                Entry entry = cursor.current;
+
+                if (last == null || last.compareTo(entry) != 0) {
+                    offsetsOut.writeInt(dataOut.size());
+                    writeBytes(dataOut, entry.key);
+                    writeBytes(dataOut, entry.word);
+                    last = entry;
+                    count++;
+                }
+
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+        } finally {
+            for (ChunkCursor cursor : cursors) {
+                cursor.in.close();
+            }
+        }
+
+        return count;
+    }
+
+    private void spillChunk() throws IOException {
+        File chunk = new File(mWorkDir, "chunk" + mChunks.size() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(chunk)))) {
+            for (Entry entry : mChunk) {
+                writeBytes(out, entry.key);
+                writeBytes(out, entry.word);
+            }
+        }
+
+        mChunks.add(chunk);
+        mChunk = new TreeSet<>();
+    }
+
+    private void deleteChunks() {
+        for (File chunk : mChunks) {
+            chunk.delete();
+        }
+
+        mChunks.clear();
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void copy(File file, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Unsigned comparison, same order as {@link MappedWordList} lookups
+     */
+    private static int compareBytes(byte[] a, byte[] b) {
+        int common = Math.min(a.length, b.length);
+
+        for (int i = 0; i < common; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+
+            if (diff != 0) {
+                return diff;
+            }
+        }
+
+        return a.length - b.length;
+    }
+}
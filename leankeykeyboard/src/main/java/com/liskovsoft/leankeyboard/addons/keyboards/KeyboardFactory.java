@@ -7,4 +7,10 @@ import java.util.List;
 public interface KeyboardFactory {
     List<? extends KeyboardBuilder> getAllAvailableKeyboards(Context context);
     boolean needUpdate();
+
+    /**
+     * Drop cached resources of the inactive keyboards
+     * @param activeLangCode lang code of the current keyboard or null
+     */
+    void releaseCaches(String activeLangCode);
 }
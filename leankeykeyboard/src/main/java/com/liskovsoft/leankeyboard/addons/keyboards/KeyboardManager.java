@@ -2,7 +2,10 @@ package com.liskovsoft.leankeyboard.addons.keyboards;
 
 import android.content.Context;
 import android.inputmethodservice.Keyboard;
-
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.core.os.TraceCompat;
 import com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards.ResKeyboardFactory;
 import com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards.ResKeyboardFactory.ResKeyboardBuilder;
 
@@ -16,6 +19,11 @@ public class KeyboardManager {
     private List<KeyboardData> mAllKeyboards;
     private final KeyboardFactory mKeyboardFactory;
     private int mKeyboardIndex = 0;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Incremented on every load, so stale background results are dropped
+     */
+    private int mGeneration;
 
     // global lang code
     private static String sCurrentLangCode;
@@ -40,29 +48,113 @@ public class KeyboardManager {
         mStateManager.restore();
     }
 
+    /**
+     * NOTE: Only current keyboard is built here. Others are built in background by {@link #preloadInactive()}
+     * or on demand, whichever comes first.
+     */
     public void load() {
+        TraceCompat.beginSection("LeanKey.loadLayouts");
+        mGeneration++;
         mKeyboardBuilders = mKeyboardFactory.getAllAvailableKeyboards(mContext);
-        mAllKeyboards = buildAllKeyboards();
+        mAllKeyboards = new ArrayList<>();
+
+        for (int i = 0; i < mKeyboardBuilders.size(); i++) {
+            mAllKeyboards.add(null);
+        }
+
+        if (mKeyboardIndex < 0 || mKeyboardIndex >= mAllKeyboards.size()) {
+            mKeyboardIndex = 0;
+        }
+
+        if (!mAllKeyboards.isEmpty()) {
+            getOrBuild(mKeyboardIndex);
+        }
+
         updateLangFromIndex();
+        TraceCompat.endSection();
     }
 
-    private List<KeyboardData> buildAllKeyboards() {
-        List<KeyboardData> keyboards = new ArrayList<>();
-        if (mKeyboardBuilders != null && !mKeyboardBuilders.isEmpty()) {
-            for (KeyboardBuilder builder : mKeyboardBuilders) {
-                KeyboardData data = new KeyboardData();
-                data.abcKeyboard = builder.createAbcKeyboard();
-                data.symKeyboard = builder.createSymKeyboard();
-                data.numKeyboard = builder.createNumKeyboard();
-
-                if (builder instanceof ResKeyboardBuilder) {
-                    data.langCode = ((ResKeyboardBuilder) builder).getLangCode();
+    /**
+     * NOTE: Build non-current keyboards on the background thread.<br/>
+     * Results are stored on the main thread, slots that were built on demand meanwhile are kept.
+     */
+    public void preloadInactive() {
+        if (mKeyboardBuilders == null || mKeyboardBuilders.size() < 2) {
+            return;
+        }
+
+        final int generation = mGeneration;
+        final List<? extends KeyboardBuilder> builders = mKeyboardBuilders;
+        final int currentIndex = mKeyboardIndex;
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            TraceCompat.beginSection("LeanKey.preloadLayouts");
+
+            for (int i = 0; i < builders.size(); i++) {
+                if (i == currentIndex) {
+                    continue;
                 }
 
-                keyboards.add(data);
+                KeyboardData data = buildKeyboard(builders.get(i));
+                final int index = i;
+
+                mHandler.post(() -> {
+                    if (generation == mGeneration && mAllKeyboards.get(index) == null) {
+                        mAllKeyboards.set(index, data);
+                    }
+                });
+            }
+
+            TraceCompat.endSection();
+        });
+    }
+
+    private static KeyboardData buildKeyboard(KeyboardBuilder builder) {
+        KeyboardData data = new KeyboardData();
+        data.abcKeyboard = builder.createAbcKeyboard();
+        data.symKeyboard = builder.createSymKeyboard();
+        data.numKeyboard = builder.createNumKeyboard();
+
+        if (builder instanceof ResKeyboardBuilder) {
+            data.langCode = ((ResKeyboardBuilder) builder).getLangCode();
+        }
+
+        return data;
+    }
+
+    /**
+     * NOTE: Keyboard that has been released by {@link #releaseInactive()} is built again here
+     */
+    private KeyboardData getOrBuild(int index) {
+        KeyboardData data = mAllKeyboards.get(index);
+
+        if (data == null && mKeyboardBuilders != null && index < mKeyboardBuilders.size()) {
+            data = buildKeyboard(mKeyboardBuilders.get(index));
+            mAllKeyboards.set(index, data);
+        }
+
+        return data;
+    }
+
+    /**
+     * NOTE: Keep only current keyboard, others are rebuilt on demand.<br/>
+     * Used on memory pressure.
+     */
+    public void releaseInactive() {
+        if (mAllKeyboards == null) {
+            return;
+        }
+
+        mGeneration++; // drop running preload
+
+        for (int i = 0; i < mAllKeyboards.size(); i++) {
+            if (i != mKeyboardIndex) {
+                mAllKeyboards.set(i, null);
             }
         }
-        return keyboards;
+
+        KeyboardData current = mKeyboardIndex < mAllKeyboards.size() ? mAllKeyboards.get(mKeyboardIndex) : null;
+        mKeyboardFactory.releaseCaches(current != null ? current.langCode : null);
     }
 
     private void onNextKeyboard() {
@@ -79,7 +171,7 @@ public class KeyboardManager {
             mKeyboardIndex = 0;
         }
 
-        KeyboardData kbd = mAllKeyboards.get(mKeyboardIndex);
+        KeyboardData kbd = getOrBuild(mKeyboardIndex);
         if (kbd == null) {
             throw new IllegalStateException(String.format("Keyboard %s not initialized", mKeyboardIndex));
         }
@@ -112,7 +204,7 @@ public class KeyboardManager {
         if (mAllKeyboards.size() <= mKeyboardIndex) {
             mKeyboardIndex = 0;
         }
-        KeyboardData current = mAllKeyboards.get(mKeyboardIndex);
+        KeyboardData current = getOrBuild(mKeyboardIndex);
         updateLangFromIndex();
         return current;
     }
@@ -37,7 +37,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public abstract class AddOnsFactory<E extends AddOn> {
 
@@ -98,6 +102,8 @@ public abstract class AddOnsFactory<E extends AddOn> {
     private final HashMap<String, E> mAddOnsById = new HashMap<>();
 
     private final boolean mReadExternalPacksToo;
+    private final AddOnsIndex mIndex;
+    private volatile boolean mNeedUpdate;
     private final String ROOT_NODE_TAG;
     private final String ADDON_NODE_TAG;
     //private final int mBuildInAddOnsResId;
@@ -115,8 +121,57 @@ public abstract class AddOnsFactory<E extends AddOn> {
         ADDON_NODE_TAG = addonNodeTag;
         //mBuildInAddOnsResId = buildInAddonResId;
         mReadExternalPacksToo = readExternalPacksToo;
+        mIndex = new AddOnsIndex(receiverInterface);
 
-        mActiveInstances.add(this);
+        synchronized (mActiveInstances) {
+            mActiveInstances.add(this);
+        }
+    }
+
+    /**
+     * NOTE: Refresh add-ons index of the package from the install/remove/replace broadcast.<br/>
+     * Other packages aren't touched. Queries the package manager and writes the index: call from a worker thread.
+     */
+    public static void onPackageEvent(Context context, Intent eventIntent) {
+        if (eventIntent.getData() == null) {
+            return;
+        }
+
+        List<AddOnsFactory<?>> factories;
+
+        synchronized (mActiveInstances) {
+            factories = new ArrayList<>(mActiveInstances);
+        }
+
+        for (AddOnsFactory<?> factory : factories) {
+            factory.refreshPackage(context, eventIntent);
+        }
+    }
+
+    private synchronized void refreshPackage(Context context, Intent eventIntent) {
+        if (!mReadExternalPacksToo) {
+            return;
+        }
+
+        mIndex.load(context);
+
+        if (!isEventRequiresCacheRefresh(eventIntent, context)) {
+            return;
+        }
+
+        readPackageToIndex(context, eventIntent.getData().getSchemeSpecificPart());
+        mIndex.save(context);
+        clearAddOnList();
+        mNeedUpdate = true;
+    }
+
+    /**
+     * @return true once after add-ons have been changed
+     */
+    protected boolean consumeNeedUpdate() {
+        boolean needUpdate = mNeedUpdate;
+        mNeedUpdate = false;
+        return needUpdate;
     }
 
     protected boolean isEventRequiresCacheRefresh(Intent eventIntent, Context context) {
@@ -161,7 +216,8 @@ public abstract class AddOnsFactory<E extends AddOn> {
             }
         }
 
-        return false;
+        // add-ons may not be loaded yet in this process
+        return mIndex.get(packageNameSchemePart) != null;
     }
 
     protected boolean isPackageContainAnAddon(Context context, String packageNameSchemePart) {
@@ -242,15 +298,42 @@ public abstract class AddOnsFactory<E extends AddOn> {
             mAddOnsById.put(addOn.getId(), addOn);
     }
 
+    /**
+     * NOTE: Add-ons are created from the {@link AddOnsIndex}. Packages are queried and parsed only when
+     * there's no index yet or the package has been changed.
+     */
     private ArrayList<E> getExternalAddOns(Context askContext) {
         final ArrayList<E> externalAddOns = new ArrayList<>();
 
         if (!mReadExternalPacksToo)//this will disable external packs (API careful stage)
             return externalAddOns;
 
+        if (mIndex.load(askContext)) {
+            validateIndex(askContext);
+        } else {
+            rebuildIndex(askContext);
+        }
+
+        for (AddOnsIndex.PackageEntry entry : mIndex.getEntries()) {
+            try {
+                final Context externalPackageContext = askContext.createPackageContext(entry.packageName, Context.CONTEXT_IGNORE_SECURITY);
+                externalAddOns.addAll(createAddOns(askContext, externalPackageContext, entry.addOns));
+            } catch (final NameNotFoundException e) {
+                Logger.e(TAG, "Did not find package: " + entry.packageName);
+            }
+        }
+
+        return externalAddOns;
+    }
+
+    private void rebuildIndex(Context askContext) {
+        Logger.d(TAG, "Building add-ons index for %s", RECEIVER_INTERFACE);
+        mIndex.clear();
+
         final List<ResolveInfo> broadcastReceivers =
                 askContext.getPackageManager().queryBroadcastReceivers(new Intent(RECEIVER_INTERFACE), PackageManager.GET_META_DATA);
 
+        HashMap<String, List<ActivityInfo>> receiversByPackage = new LinkedHashMap<>();
 
         for (final ResolveInfo receiver : broadcastReceivers) {
             if (receiver.activityInfo == null) {
@@ -261,38 +344,159 @@ public abstract class AddOnsFactory<E extends AddOn> {
                 continue;
             }
 
-            if (!receiver.activityInfo.enabled || !receiver.activityInfo.applicationInfo.enabled) continue;
+            List<ActivityInfo> receivers = receiversByPackage.get(receiver.activityInfo.packageName);
+
+            if (receivers == null) {
+                receivers = new ArrayList<>();
+                receiversByPackage.put(receiver.activityInfo.packageName, receivers);
+            }
+
+            receivers.add(receiver.activityInfo);
+        }
+
+        for (String packageName : receiversByPackage.keySet()) {
+            AddOnsIndex.PackageEntry entry = readPackage(askContext, packageName, receiversByPackage.get(packageName));
+
+            if (entry != null) {
+                mIndex.put(entry);
+            }
+        }
+
+        mIndex.save(askContext);
+    }
+
+    /**
+     * NOTE: Safety net for the changes that happened while broadcasts weren't received.<br/>
+     * Manifest receiver doesn't get package broadcasts since api 26, so new packages are looked up here too.
+     */
+    private void validateIndex(Context askContext) {
+        boolean changed = false;
+
+        for (AddOnsIndex.PackageEntry entry : new ArrayList<>(mIndex.getEntries())) {
+            long lastUpdateTime = getLastUpdateTime(askContext, entry.packageName);
+
+            if (lastUpdateTime != entry.lastUpdateTime) {
+                Logger.d(TAG, "Package %s has been changed, re-reading its add-ons", entry.packageName);
+                readPackageToIndex(askContext, entry.packageName);
+                changed = true;
+            }
+        }
+
+        for (String packageName : queryAddOnPackages(askContext)) {
+            if (mIndex.get(packageName) == null) {
+                Logger.d(TAG, "Package %s has been installed, reading its add-ons", packageName);
+                readPackageToIndex(askContext, packageName);
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            mIndex.save(askContext);
+        }
+    }
+
+    /**
+     * Cheap lookup without meta-data: only the names of the packages that declare add-on receivers
+     */
+    private Set<String> queryAddOnPackages(Context askContext) {
+        Set<String> packageNames = new HashSet<>();
+
+        for (ResolveInfo receiver : askContext.getPackageManager().queryBroadcastReceivers(new Intent(RECEIVER_INTERFACE), 0)) {
+            if (receiver.activityInfo != null) {
+                packageNames.add(receiver.activityInfo.packageName);
+            }
+        }
+
+        return packageNames;
+    }
+
+    /**
+     * Re-read add-ons of the single package into the index (removes the entry if there are no add-ons anymore)
+     */
+    private void readPackageToIndex(Context askContext, String packageName) {
+        mIndex.remove(packageName);
+
+        final List<ResolveInfo> broadcastReceivers = askContext.getPackageManager()
+                .queryBroadcastReceivers(new Intent(RECEIVER_INTERFACE).setPackage(packageName), PackageManager.GET_META_DATA);
+        List<ActivityInfo> receivers = new ArrayList<>();
+
+        for (final ResolveInfo receiver : broadcastReceivers) {
+            if (receiver.activityInfo != null) {
+                receivers.add(receiver.activityInfo);
+            }
+        }
+
+        if (receivers.isEmpty()) {
+            return;
+        }
+
+        AddOnsIndex.PackageEntry entry = readPackage(askContext, packageName, receivers);
+
+        if (entry != null) {
+            mIndex.put(entry);
+        }
+    }
+
+    private AddOnsIndex.PackageEntry readPackage(Context askContext, String packageName, List<ActivityInfo> receivers) {
+        long lastUpdateTime = getLastUpdateTime(askContext, packageName);
+
+        if (lastUpdateTime == -1) {
+            return null;
+        }
+
+        List<Map<String, String>> addOns = new ArrayList<>();
+
+        for (ActivityInfo receiver : receivers) {
+            if (!receiver.enabled || !receiver.applicationInfo.enabled) continue;
 
             try {
-                final Context externalPackageContext = askContext.createPackageContext(receiver.activityInfo.packageName, Context.CONTEXT_IGNORE_SECURITY);
-                final ArrayList<E> packageAddOns = getAddOnsFromActivityInfo(askContext, externalPackageContext, receiver.activityInfo);
+                final Context externalPackageContext = askContext.createPackageContext(packageName, Context.CONTEXT_IGNORE_SECURITY);
+                final XmlPullParser xml = receiver.loadXmlMetaData(externalPackageContext.getPackageManager(), RECEIVER_META_DATA);
 
-                externalAddOns.addAll(packageAddOns);
+                if (xml != null) {//issue 718: maybe a bad package?
+                    addOns.addAll(parseAddOnsFromXml(xml));
+                }
             } catch (final NameNotFoundException e) {
-                Logger.e(TAG, "Did not find package: " + receiver.activityInfo.packageName);
+                Logger.e(TAG, "Did not find package: " + packageName);
             }
-
         }
 
-        return externalAddOns;
+        return new AddOnsIndex.PackageEntry(packageName, lastUpdateTime, addOns);
+    }
+
+    private static long getLastUpdateTime(Context askContext, String packageName) {
+        try {
+            return askContext.getPackageManager().getPackageInfo(packageName, 0).lastUpdateTime;
+        } catch (NameNotFoundException e) {
+            return -1;
+        }
     }
 
     private ArrayList<E> getAddOnsFromResId(Context askContext, Context context, int addOnsResId) {
         final XmlPullParser xml = context.getResources().getXml(addOnsResId);
         if (xml == null)
             return new ArrayList<>();
-        return parseAddOnsFromXml(askContext, context, xml);
+        return createAddOns(askContext, context, parseAddOnsFromXml(xml));
     }
 
-    private ArrayList<E> getAddOnsFromActivityInfo(Context askContext, Context context, ActivityInfo ai) {
-        final XmlPullParser xml = ai.loadXmlMetaData(context.getPackageManager(), RECEIVER_META_DATA);
-        if (xml == null)//issue 718: maybe a bad package?
-            return new ArrayList<>();
-        return parseAddOnsFromXml(askContext, context, xml);
+    private ArrayList<E> createAddOns(Context askContext, Context context, List<Map<String, String>> addOnsAttrs) {
+        final ArrayList<E> addOns = new ArrayList<>();
+
+        for (Map<String, String> attrs : addOnsAttrs) {
+            E addOn = createAddOnFromXmlAttributes(askContext, new MapAttributeSet(attrs), context);
+            if (addOn != null) {
+                addOns.add(addOn);
+            }
+        }
+
+        return addOns;
     }
 
-    private ArrayList<E> parseAddOnsFromXml(Context askContext, Context context, XmlPullParser xml) {
-        final ArrayList<E> addOns = new ArrayList<>();
+    /**
+     * @return raw attributes of the add-on nodes
+     */
+    private List<Map<String, String>> parseAddOnsFromXml(XmlPullParser xml) {
+        final List<Map<String, String>> addOns = new ArrayList<>();
         try {
             int event;
             boolean inRoot = false;
@@ -302,11 +506,7 @@ public abstract class AddOnsFactory<E extends AddOn> {
                     if (ROOT_NODE_TAG.equals(tag)) {
                         inRoot = true;
                     } else if (inRoot && ADDON_NODE_TAG.equals(tag)) {
-                        final AttributeSet attrs = Xml.asAttributeSet(xml);
-                        E addOn = createAddOnFromXmlAttributes(askContext, attrs, context);
-                        if (addOn != null) {
-                            addOns.add(addOn);
-                        }
+                        addOns.add(MapAttributeSet.toMap(Xml.asAttributeSet(xml)));
                     }
                 } else if (event == XmlPullParser.END_TAG) {
                     if (ROOT_NODE_TAG.equals(tag)) {
@@ -0,0 +1,166 @@
+package com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.addons;
+
+import android.content.Context;
+import com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.utils.log.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NOTE: On-disk index of the parsed add-on metadata, so add-on packages aren't queried and parsed on every start.<br/>
+ * Entry per package: last update time of the package, raw attributes of its add-on nodes.<br/>
+ * Packages are re-read only when they change (package broadcasts or update time mismatch).
+ */
+class AddOnsIndex {
+    private static final String TAG = AddOnsIndex.class.getSimpleName();
+    private static final int FORMAT_VERSION = 1;
+    private final String mFileName;
+    private final Map<String, PackageEntry> mEntries = new LinkedHashMap<>();
+    private boolean mLoaded;
+    private boolean mExists;
+
+    static class PackageEntry {
+        final String packageName;
+        final long lastUpdateTime;
+        final List<Map<String, String>> addOns;
+
+        PackageEntry(String packageName, long lastUpdateTime, List<Map<String, String>> addOns) {
+            this.packageName = packageName;
+            this.lastUpdateTime = lastUpdateTime;
+            this.addOns = addOns;
+        }
+    }
+
+    /**
+     * @param receiverInterface add-on type, one index file per type
+     */
+    AddOnsIndex(String receiverInterface) {
+        mFileName = "addons_" + receiverInterface.replaceAll("[^A-Za-z0-9_.]", "_") + ".idx";
+    }
+
+    /**
+     * @return false if there's no index yet: full scan is needed
+     */
+    boolean load(Context context) {
+        if (mLoaded) {
+            return mExists;
+        }
+
+        mLoaded = true;
+        File file = getFile(context);
+
+        if (!file.exists()) {
+            return false;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return false;
+            }
+
+            int packages = in.readInt();
+
+            for (int i = 0; i < packages; i++) {
+                String packageName = in.readUTF();
+                long lastUpdateTime = in.readLong();
+                int addOnCount = in.readInt();
+                List<Map<String, String>> addOns = new ArrayList<>(addOnCount);
+
+                for (int j = 0; j < addOnCount; j++) {
+                    int attrCount = in.readInt();
+                    Map<String, String> attrs = new LinkedHashMap<>();
+
+                    for (int k = 0; k < attrCount; k++) {
+                        attrs.put(in.readUTF(), in.readUTF());
+                    }
+
+                    addOns.add(attrs);
+                }
+
+                mEntries.put(packageName, new PackageEntry(packageName, lastUpdateTime, addOns));
+            }
+
+            mExists = true;
+        } catch (IOException e) {
+            Logger.w(TAG, "Add-ons index is broken, full scan will be done", e);
+            mEntries.clear();
+        }
+
+        return mExists;
+    }
+
+    /**
+     * Write to the temp file and rename, so broken index is never read
+     */
+    void save(Context context) {
+        File file = getFile(context);
+        File tempFile = new File(file.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(mEntries.size());
+
+            for (PackageEntry entry : mEntries.values()) {
+                out.writeUTF(entry.packageName);
+                out.writeLong(entry.lastUpdateTime);
+                out.writeInt(entry.addOns.size());
+
+                for (Map<String, String> attrs : entry.addOns) {
+                    out.writeInt(attrs.size());
+
+                    for (Map.Entry<String, String> attr : attrs.entrySet()) {
+                        out.writeUTF(attr.getKey());
+                        out.writeUTF(attr.getValue());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Logger.e(TAG, "Can't write add-ons index", e);
+            tempFile.delete();
+            return;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            Logger.e(TAG, "Can't replace add-ons index %s", file);
+            tempFile.delete();
+            return;
+        }
+
+        mExists = true;
+    }
+
+    Collection<PackageEntry> getEntries() {
+        return mEntries.values();
+    }
+
+    PackageEntry get(String packageName) {
+        return mEntries.get(packageName);
+    }
+
+    void put(PackageEntry entry) {
+        mEntries.put(entry.packageName, entry);
+    }
+
+    void remove(String packageName) {
+        mEntries.remove(packageName);
+    }
+
+    void clear() {
+        mEntries.clear();
+    }
+
+    private File getFile(Context context) {
+        return new File(context.getFilesDir(), mFileName);
+    }
+}
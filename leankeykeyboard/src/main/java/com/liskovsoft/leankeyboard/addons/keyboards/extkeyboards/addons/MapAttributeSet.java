@@ -0,0 +1,200 @@
+package com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.addons;
+
+import android.util.AttributeSet;
+import com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.utils.xml.XmlUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NOTE: Add-on attributes restored from the {@link AddOnsIndex}.<br/>
+ * Values are kept in the form of the compiled xml: resource references are "@id", booleans are "true"/"false".
+ * Namespaces are ignored, as add-on metadata doesn't use them.
+ */
+class MapAttributeSet implements AttributeSet {
+    private final List<String> mNames;
+    private final List<String> mValues;
+
+    MapAttributeSet(Map<String, String> attrs) {
+        mNames = new ArrayList<>(attrs.keySet());
+        mValues = new ArrayList<>(attrs.values());
+    }
+
+    /**
+     * Capture attributes of the current xml tag
+     */
+    static Map<String, String> toMap(AttributeSet attrs) {
+        Map<String, String> result = new LinkedHashMap<>();
+
+        for (int i = 0; i < attrs.getAttributeCount(); i++) {
+            String value = attrs.getAttributeValue(i);
+
+            if (value != null) {
+                result.put(attrs.getAttributeName(i), value);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return mNames.size();
+    }
+
+    @Override
+    public String getAttributeName(int index) {
+        return mNames.get(index);
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        return mValues.get(index);
+    }
+
+    @Override
+    public String getAttributeValue(String namespace, String name) {
+        int index = mNames.indexOf(name);
+        return index != -1 ? mValues.get(index) : null;
+    }
+
+    @Override
+    public String getPositionDescription() {
+        return "cached add-on";
+    }
+
+    @Override
+    public int getAttributeNameResource(int index) {
+        return 0;
+    }
+
+    @Override
+    public int getAttributeListValue(String namespace, String attribute, String[] options, int defaultValue) {
+        return XmlUtils.convertValueToList(getAttributeValue(namespace, attribute), options, defaultValue);
+    }
+
+    @Override
+    public boolean getAttributeBooleanValue(String namespace, String attribute, boolean defaultValue) {
+        return XmlUtils.convertValueToBoolean(getAttributeValue(namespace, attribute), defaultValue);
+    }
+
+    @Override
+    public int getAttributeResourceValue(String namespace, String attribute, int defaultValue) {
+        return toResourceId(getAttributeValue(namespace, attribute), defaultValue);
+    }
+
+    @Override
+    public int getAttributeIntValue(String namespace, String attribute, int defaultValue) {
+        return toInt(getAttributeValue(namespace, attribute), defaultValue);
+    }
+
+    @Override
+    public int getAttributeUnsignedIntValue(String namespace, String attribute, int defaultValue) {
+        return toUnsignedInt(getAttributeValue(namespace, attribute), defaultValue);
+    }
+
+    @Override
+    public float getAttributeFloatValue(String namespace, String attribute, float defaultValue) {
+        return toFloat(getAttributeValue(namespace, attribute), defaultValue);
+    }
+
+    @Override
+    public int getAttributeListValue(int index, String[] options, int defaultValue) {
+        return XmlUtils.convertValueToList(getAttributeValue(index), options, defaultValue);
+    }
+
+    @Override
+    public boolean getAttributeBooleanValue(int index, boolean defaultValue) {
+        return XmlUtils.convertValueToBoolean(getAttributeValue(index), defaultValue);
+    }
+
+    @Override
+    public int getAttributeResourceValue(int index, int defaultValue) {
+        return toResourceId(getAttributeValue(index), defaultValue);
+    }
+
+    @Override
+    public int getAttributeIntValue(int index, int defaultValue) {
+        return toInt(getAttributeValue(index), defaultValue);
+    }
+
+    @Override
+    public int getAttributeUnsignedIntValue(int index, int defaultValue) {
+        return toUnsignedInt(getAttributeValue(index), defaultValue);
+    }
+
+    @Override
+    public float getAttributeFloatValue(int index, float defaultValue) {
+        return toFloat(getAttributeValue(index), defaultValue);
+    }
+
+    @Override
+    public String getIdAttribute() {
+        return getAttributeValue(null, "id");
+    }
+
+    @Override
+    public String getClassAttribute() {
+        return getAttributeValue(null, "class");
+    }
+
+    @Override
+    public int getIdAttributeResourceValue(int defaultValue) {
+        return getAttributeResourceValue(null, "id", defaultValue);
+    }
+
+    @Override
+    public int getStyleAttribute() {
+        return getAttributeResourceValue(null, "style", 0);
+    }
+
+    private static int toResourceId(String value, int defaultValue) {
+        if (value == null || value.length() < 2 || value.charAt(0) != '@') {
+            return defaultValue;
+        }
+
+        try {
+            return XmlUtils.convertValueToInt(value.substring(1), defaultValue);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static int toInt(String value, int defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return XmlUtils.convertValueToInt(value, defaultValue);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static int toUnsignedInt(String value, int defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return XmlUtils.convertValueToUnsignedInt(value, defaultValue);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static float toFloat(String value, float defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
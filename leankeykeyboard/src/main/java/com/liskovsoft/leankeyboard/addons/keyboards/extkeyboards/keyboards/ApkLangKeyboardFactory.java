@@ -59,8 +59,12 @@ public class ApkLangKeyboardFactory extends AddOnsFactory<ApkKeyboardAddOnAndBui
 
     @Override
     public boolean needUpdate() {
-        // TODO: implement need update
-        return false;
+        return consumeNeedUpdate();
+    }
+
+    @Override
+    public void releaseCaches(String activeLangCode) {
+        // add-on keyboards are built on demand, nothing to release
     }
 
     public List<ApkKeyboardAddOnAndBuilder> getEnabledKeyboards(Context askContext) {
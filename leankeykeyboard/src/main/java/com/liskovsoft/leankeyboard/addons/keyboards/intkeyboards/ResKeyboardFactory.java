@@ -77,6 +77,16 @@ public class ResKeyboardFactory implements KeyboardFactory {
         return ResKeyboardInfo.needUpdate();
     }
 
+    @Override
+    public synchronized void releaseCaches(String activeLangCode) {
+        Drawable active = activeLangCode != null ? mCachedSpace.get(activeLangCode) : null;
+        mCachedSpace.clear();
+
+        if (active != null) {
+            mCachedSpace.put(activeLangCode, active);
+        }
+    }
+
     private Keyboard localizeKeys(Keyboard keyboard, KeyboardInfo info) {
         List<Key> keys = keyboard.getKeys();
 
@@ -90,7 +100,10 @@ public class ResKeyboardFactory implements KeyboardFactory {
         return keyboard;
     }
 
-    private void localizeSpace(Key key, KeyboardInfo info) {
+    /**
+     * NOTE: Keyboards are built on the main and on the background thread
+     */
+    private synchronized void localizeSpace(Key key, KeyboardInfo info) {
         if (mCachedSpace.containsKey(info.getLangCode())) {
             key.icon = mCachedSpace.get(info.getLangCode());
             return;
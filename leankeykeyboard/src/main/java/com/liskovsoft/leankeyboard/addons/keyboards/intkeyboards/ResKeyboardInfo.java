@@ -12,6 +12,7 @@ import java.util.List;
 
 public class ResKeyboardInfo implements KeyboardInfo {
     private static boolean sNeedUpdate;
+    private static int sLayoutsVersion;
     private boolean mEnabled;
     private String mLangCode;
     private String mLangName;
@@ -43,6 +44,7 @@ public class ResKeyboardInfo implements KeyboardInfo {
             updatePrefs(ctx, info);
         }
         sNeedUpdate = true;
+        sLayoutsVersion++;
     }
 
     private static void syncWithPrefs(Context ctx, KeyboardInfo info) {
@@ -63,6 +65,13 @@ public class ResKeyboardInfo implements KeyboardInfo {
         return sNeedUpdate;
     }
 
+    /**
+     * Changes every time user enables or disables layouts
+     */
+    public static int getLayoutsVersion() {
+        return sLayoutsVersion;
+    }
+
     @Override
     public boolean isEnabled() {
         return mEnabled;
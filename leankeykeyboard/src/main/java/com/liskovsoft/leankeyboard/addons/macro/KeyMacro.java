@@ -0,0 +1,268 @@
+package com.liskovsoft.leankeyboard.addons.macro;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NOTE: Recorded keyboard entries in the compact binary form.<br/>
+ * Layout: magic, version, string table, events.
+ * Each event is: time delta (varint, ms), entry type (varint), key code (zigzag varint), text index + 1 (varint, 0 - no text).<br/>
+ * Repeated texts are stored once in the string table.
+ */
+public final class KeyMacro {
+    private static final int MAGIC = 0x4c4b4d; // LKM
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final String[] mStrings;
+    private final int[] mDeltas;
+    private final int[] mTypes;
+    private final int[] mKeyCodes;
+    private final int[] mTextIndexes;
+
+    private KeyMacro(String[] strings, int[] deltas, int[] types, int[] keyCodes, int[] textIndexes) {
+        mStrings = strings;
+        mDeltas = deltas;
+        mTypes = types;
+        mKeyCodes = keyCodes;
+        mTextIndexes = textIndexes;
+    }
+
+    public int size() {
+        return mTypes.length;
+    }
+
+    /**
+     * @return time from the previous entry in ms
+     */
+    public int getDelta(int index) {
+        return mDeltas[index];
+    }
+
+    public int getType(int index) {
+        return mTypes[index];
+    }
+
+    public int getKeyCode(int index) {
+        return mKeyCodes[index];
+    }
+
+    /**
+     * @return text or null
+     */
+    public String getText(int index) {
+        int textIndex = mTextIndexes[index];
+        return textIndex > 0 ? mStrings[textIndex - 1] : null;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        writeVarInt(out, MAGIC);
+        writeVarInt(out, VERSION);
+
+        writeVarInt(out, mStrings.length);
+        for (String string : mStrings) {
+            byte[] bytes = string.getBytes(UTF_8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+
+        writeVarInt(out, mTypes.length);
+        for (int i = 0; i < mTypes.length; i++) {
+            writeVarInt(out, mDeltas[i]);
+            writeVarInt(out, mTypes[i]);
+            writeVarInt(out, (mKeyCodes[i] << 1) ^ (mKeyCodes[i] >> 31));
+            writeVarInt(out, mTextIndexes[i]);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * @param length size of the macro in bytes (e.g. file length), every length in the file is checked against it
+     * @throws IOException not a macro, truncated or broken file
+     */
+    public static KeyMacro readFrom(InputStream in, long length) throws IOException {
+        Input input = new Input(in, length);
+
+        if (input.readVarInt() != MAGIC) {
+            throw new IOException("Not a macro file");
+        }
+
+        int version = input.readVarInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported macro version: " + version);
+        }
+
+        // every string takes at least its length byte
+        String[] strings = new String[input.readLength(1)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[input.readLength(1)];
+            input.readFully(bytes);
+            strings[i] = new String(bytes, UTF_8);
+        }
+
+        // every event takes at least 4 bytes
+        int count = input.readLength(4);
+        int[] deltas = new int[count];
+        int[] types = new int[count];
+        int[] keyCodes = new int[count];
+        int[] textIndexes = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            deltas[i] = input.readVarInt();
+            types[i] = input.readVarInt();
+            int zigzag = input.readVarInt();
+            keyCodes[i] = (zigzag >>> 1) ^ -(zigzag & 1);
+            textIndexes[i] = input.readVarInt();
+
+            if (textIndexes[i] < 0 || textIndexes[i] > strings.length) {
+                throw new IOException("Broken macro: text index " + textIndexes[i]);
+            }
+        }
+
+        return new KeyMacro(strings, deltas, types, keyCodes, textIndexes);
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    /**
+     * NOTE: Counts the bytes left, so the broken length fails with IOException before anything is allocated
+     */
+    private static final class Input {
+        private final InputStream mIn;
+        private long mRemaining;
+
+        Input(InputStream in, long length) {
+            mIn = in;
+            mRemaining = length;
+        }
+
+        int readVarInt() throws IOException {
+            int result = 0;
+
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = read();
+
+                result |= (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+
+            throw new IOException("Malformed varint");
+        }
+
+        /**
+         * @param minItemSize bytes taken by each of the items
+         * @return number of the items that fit into the rest of the input
+         */
+        int readLength(int minItemSize) throws IOException {
+            int length = readVarInt();
+
+            if (length < 0 || (long) length * minItemSize > mRemaining) {
+                throw new IOException("Broken macro: length " + length + ", bytes left " + mRemaining);
+            }
+
+            return length;
+        }
+
+        void readFully(byte[] buffer) throws IOException {
+            int offset = 0;
+
+            while (offset < buffer.length) {
+                int read = mIn.read(buffer, offset, buffer.length - offset);
+
+                if (read == -1) {
+                    throw new EOFException();
+                }
+
+                offset += read;
+            }
+
+            mRemaining -= buffer.length;
+        }
+
+        private int read() throws IOException {
+            int b = mRemaining > 0 ? mIn.read() : -1;
+
+            if (b == -1) {
+                throw new EOFException();
+            }
+
+            mRemaining--;
+            return b;
+        }
+    }
+
+    /**
+     * NOTE: Collects entries, interns texts
+     */
+    public static final class Builder {
+        private final List<String> mStrings = new ArrayList<>();
+        private final Map<String, Integer> mStringIndexes = new HashMap<>();
+        private int[] mDeltas = new int[64];
+        private int[] mTypes = new int[64];
+        private int[] mKeyCodes = new int[64];
+        private int[] mTextIndexes = new int[64];
+        private int mSize;
+
+        public Builder add(int deltaMs, int type, int keyCode, String text) {
+            if (mSize == mTypes.length) {
+                int capacity = mSize * 2;
+                mDeltas = Arrays.copyOf(mDeltas, capacity);
+                mTypes = Arrays.copyOf(mTypes, capacity);
+                mKeyCodes = Arrays.copyOf(mKeyCodes, capacity);
+                mTextIndexes = Arrays.copyOf(mTextIndexes, capacity);
+            }
+
+            mDeltas[mSize] = Math.max(0, deltaMs);
+            mTypes[mSize] = type;
+            mKeyCodes[mSize] = keyCode;
+            mTextIndexes[mSize] = text != null ? intern(text) + 1 : 0;
+            mSize++;
+
+            return this;
+        }
+
+        public int size() {
+            return mSize;
+        }
+
+        public KeyMacro build() {
+            return new KeyMacro(
+                    mStrings.toArray(new String[0]),
+                    Arrays.copyOf(mDeltas, mSize),
+                    Arrays.copyOf(mTypes, mSize),
+                    Arrays.copyOf(mKeyCodes, mSize),
+                    Arrays.copyOf(mTextIndexes, mSize)
+            );
+        }
+
+        private int intern(String text) {
+            Integer index = mStringIndexes.get(text);
+
+            if (index == null) {
+                index = mStrings.size();
+                mStrings.add(text);
+                mStringIndexes.put(text, index);
+            }
+
+            return index;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.liskovsoft.leankeyboard.addons.macro;
+
+import android.os.Handler;
+import android.os.Looper;
+import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardController.InputListener;
+
+/**
+ * NOTE: Plays {@link KeyMacro} back through the keyboard {@link InputListener}, the same way the keys were typed.<br/>
+ * Full speed mode sends all entries at once, otherwise original timing is kept.
+ */
+public class MacroPlayer {
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final InputListener mListener;
+    private KeyMacro mMacro;
+    private int mPosition;
+    private final Runnable mPlayNext = this::playNext;
+
+    public MacroPlayer(InputListener listener) {
+        mListener = listener;
+    }
+
+    public boolean isPlaying() {
+        return mMacro != null;
+    }
+
+    /**
+     * @param realTime keep original timing between entries
+     */
+    public void play(KeyMacro macro, boolean realTime) {
+        stop();
+
+        if (!realTime) {
+            for (int i = 0; i < macro.size(); i++) {
+                playEntry(macro, i);
+            }
+            return;
+        }
+
+        mMacro = macro;
+        mPosition = 0;
+        scheduleNext();
+    }
+
+    public void stop() {
+        mHandler.removeCallbacks(mPlayNext);
+        mMacro = null;
+    }
+
+    private void scheduleNext() {
+        if (mPosition >= mMacro.size()) {
+            mMacro = null;
+            return;
+        }
+
+        mHandler.postDelayed(mPlayNext, mMacro.getDelta(mPosition));
+    }
+
+    private void playNext() {
+        if (mMacro == null) {
+            return;
+        }
+
+        playEntry(mMacro, mPosition++);
+        scheduleNext();
+    }
+
+    private void playEntry(KeyMacro macro, int index) {
+        mListener.onEntry(macro.getType(index), macro.getKeyCode(index), macro.getText(index));
+    }
+}
@@ -0,0 +1,154 @@
+package com.liskovsoft.leankeyboard.addons.macro;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardController.InputListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * NOTE: Records keyboard entries (typed text, suggestions, deletes, cursor moves) into the named macro.<br/>
+ * Macros are stored in the app files dir in the {@link KeyMacro} format. Files are written on the given executor.
+ */
+public class MacroRecorder {
+    private static final String TAG = MacroRecorder.class.getSimpleName();
+    private static final String MACRO_DIR = "macros";
+    private static final String MACRO_EXT = ".lkm";
+    /**
+     * Typed text of the private field (password) is replaced by this, so the replay shows where the text was
+     */
+    public static final String REDACTED_TEXT = "\u2022\u2022\u2022";
+    private final Context mContext;
+    private final Executor mIoExecutor;
+    private KeyMacro.Builder mBuilder;
+    private String mName;
+    private long mLastEntryTimeMs;
+    private boolean mRedacted;
+
+    public MacroRecorder(Context context, Executor ioExecutor) {
+        mContext = context.getApplicationContext();
+        mIoExecutor = ioExecutor;
+    }
+
+    public boolean isRecording() {
+        return mBuilder != null;
+    }
+
+    public void start(String name) {
+        mName = name;
+        mBuilder = new KeyMacro.Builder();
+        mLastEntryTimeMs = SystemClock.uptimeMillis();
+        mRedacted = false;
+        Log.d(TAG, "Recording macro: " + name);
+    }
+
+    public void onEntry(int type, int keyCode, CharSequence text) {
+        if (mBuilder == null) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        mBuilder.add((int) Math.min(Integer.MAX_VALUE, now - mLastEntryTimeMs), type, keyCode, text != null ? text.toString() : null);
+        mLastEntryTimeMs = now;
+        mRedacted = false;
+    }
+
+    /**
+     * NOTE: Entry of the private field. Text and edits become a single {@link #REDACTED_TEXT} entry,
+     * actions are kept, so the replayed login still submits.
+     */
+    public void onPrivateEntry(int type, int keyCode) {
+        if (mBuilder == null) {
+            return;
+        }
+
+        switch (type) {
+            case InputListener.ENTRY_TYPE_ACTION:
+            case InputListener.ENTRY_TYPE_DISMISS:
+            case InputListener.ENTRY_TYPE_VOICE_DISMISS:
+                onEntry(type, keyCode, null);
+                break;
+            default:
+                if (!mRedacted) {
+                    onEntry(InputListener.ENTRY_TYPE_STRING, 0, REDACTED_TEXT);
+                    mRedacted = true;
+                }
+                break;
+        }
+    }
+
+    /**
+     * Stop recording and save macro in the background
+     * @return recorded macro or null if recording isn't active
+     */
+    public KeyMacro stop() {
+        if (mBuilder == null) {
+            return null;
+        }
+
+        KeyMacro macro = mBuilder.build();
+        String name = mName;
+        mBuilder = null;
+
+        mIoExecutor.execute(() -> {
+            try {
+                save(mContext, name, macro);
+                Log.d(TAG, "Macro saved: " + name + ", entries: " + macro.size());
+            } catch (IOException e) {
+                Log.e(TAG, "Can't save macro " + name + ": " + e.getMessage());
+            }
+        });
+
+        return macro;
+    }
+
+    public static void save(Context context, String name, KeyMacro macro) throws IOException {
+        File file = getMacroFile(context, name);
+        File dir = file.getParentFile();
+
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Can't create dir " + dir);
+        }
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            macro.writeTo(out);
+        }
+    }
+
+    public static boolean exists(Context context, String name) {
+        return getMacroFile(context, name).exists();
+    }
+
+    /**
+     * @return macro or null if there is no such macro
+     */
+    public static KeyMacro load(Context context, String name) {
+        File file = getMacroFile(context, name);
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return KeyMacro.readFrom(in, file.length());
+        } catch (IOException e) {
+            Log.e(TAG, "Can't load macro " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static File getMacroFile(Context context, String name) {
+        // don't let the name escape macro dir
+        String fileName = name.replaceAll("[^\\w\\-]", "_");
+        return new File(new File(context.getFilesDir(), MACRO_DIR), fileName + MACRO_EXT);
+    }
+}
@@ -1,7 +1,6 @@
 package com.liskovsoft.leankeyboard.addons.theme;
 
 import android.content.Context;
-import android.content.res.Resources;
 import android.graphics.drawable.Drawable;
 import android.util.Log;
 import android.view.View;
@@ -9,15 +8,23 @@ import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import androidx.core.content.ContextCompat;
+import com.liskovsoft.leankeyboard.ime.ImeDiagnostics;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardView;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
 import com.liskovsoft.leankeykeyboard.R;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
 public class ThemeManager {
     private static final String TAG = ThemeManager.class.getSimpleName();
+    private static final Map<String, ThemePalette> sPalettes = new HashMap<>();
     private final Context mContext;
     private final RelativeLayout mRootView;
     private final LeanKeyPreferences mPrefs;
+    private final AtomicReference<ThemePalette> mPalette = new AtomicReference<>();
 
     public ThemeManager(Context context, RelativeLayout rootView) {
         mContext = context;
@@ -26,86 +33,102 @@ public class ThemeManager {
     }
 
     public void updateKeyboardTheme() {
+        ThemePalette palette = updatePalette();
+
+        applyKeyboardColors(palette);
+        applyShiftDrawable(palette.shiftLockOnResId);
+    }
+
+    /**
+     * NOTE: Apply theme to the displayed suggestions and to the recycled ones.<br/>
+     * Should be called once per theme change. Newly inflated suggestions use {@link #applySuggestionTheme(Button)}.
+     * @param recycled suggestion views that aren't attached to the layout
+     */
+    public void updateSuggestionsTheme(List<View> recycled) {
+        updatePalette();
+
+        applySuggestionsColors(recycled);
+    }
+
+    /**
+     * NOTE: Apply current theme to the newly created suggestion
+     * @param candidateButton suggestion button
+     */
+    public void applySuggestionTheme(Button candidateButton) {
+        candidateButton.setTextColor(getPalette().candidateFontColor);
+    }
+
+    /**
+     * Palette of the current theme. No resources lookup here.
+     * @return current palette
+     */
+    public ThemePalette getPalette() {
+        ThemePalette palette = mPalette.get();
+
+        return palette != null ? palette : updatePalette();
+    }
+
+    /**
+     * NOTE: Swap current palette if theme has been changed.<br/>
+     * Palettes are resolved once per theme id and shared between instances.
+     */
+    private ThemePalette updatePalette() {
         String currentThemeId = mPrefs.getCurrentTheme();
 
-        if (LeanKeyPreferences.THEME_DEFAULT.equals(currentThemeId)) {
-            applyKeyboardColors(
-                    R.color.keyboard_background,
-                    R.color.candidate_background,
-                    R.color.enter_key_font_color,
-                    R.color.key_text_default
-            );
-            applyShiftDrawable(-1);
-        } else {
-            applyForTheme((String themeId) -> {
-                Resources resources = mContext.getResources();
-                int keyboardBackgroundResId = resources.getIdentifier("keyboard_background_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-                int candidateBackgroundResId = resources.getIdentifier("candidate_background_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-                int enterFontColorResId = resources.getIdentifier("enter_key_font_color_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-                int keyTextColorResId = resources.getIdentifier("key_text_default_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-
-                applyKeyboardColors(
-                        keyboardBackgroundResId,
-                        candidateBackgroundResId,
-                        enterFontColorResId,
-                        keyTextColorResId
-                );
-
-                int shiftLockOnResId = resources.getIdentifier("ic_ime_shift_lock_on_" + themeId.toLowerCase(), "drawable", mContext.getPackageName());
-
-                applyShiftDrawable(shiftLockOnResId);
-            });
+        if (currentThemeId == null) {
+            currentThemeId = LeanKeyPreferences.THEME_DEFAULT;
         }
-    }
 
-    public void updateSuggestionsTheme() {
-        String currentTheme = mPrefs.getCurrentTheme();
-
-        if (LeanKeyPreferences.THEME_DEFAULT.equals(currentTheme)) {
-            applySuggestionsColors(
-                    R.color.candidate_font_color
-            );
-        } else {
-            applyForTheme((String themeId) -> {
-                Resources resources = mContext.getResources();
-                int candidateFontColorResId = resources.getIdentifier("candidate_font_color_" + themeId.toLowerCase(), "color", mContext.getPackageName());
-                applySuggestionsColors(candidateFontColorResId);
-            });
+        ThemePalette palette = mPalette.get();
+
+        if (palette != null && palette.themeId.equals(currentThemeId)) {
+            return palette;
+        }
+
+        synchronized (sPalettes) {
+            palette = sPalettes.get(currentThemeId);
+
+            if (palette == null) {
+                ImeDiagnostics.THEME_PALETTE.miss();
+                palette = ThemePalette.resolve(mContext, currentThemeId);
+                sPalettes.put(currentThemeId, palette);
+            } else {
+                ImeDiagnostics.THEME_PALETTE.hit();
+            }
         }
-    }
 
-    private void applyKeyboardColors(
-            int keyboardBackground,
-            int candidateBackground,
-            int enterFontColor,
-            int keyTextColor) {
+        mPalette.set(palette);
 
+        return palette;
+    }
+
+    private void applyKeyboardColors(ThemePalette palette) {
         RelativeLayout rootLayout = mRootView.findViewById(R.id.root_ime);
 
         if (rootLayout != null) {
-            rootLayout.setBackgroundColor(ContextCompat.getColor(mContext, keyboardBackground));
+            rootLayout.setBackgroundColor(palette.keyboardBackground);
         }
 
         View candidateLayout = mRootView.findViewById(R.id.candidate_background);
 
         if (candidateLayout != null) {
-            candidateLayout.setBackgroundColor(ContextCompat.getColor(mContext, candidateBackground));
+            candidateLayout.setBackgroundColor(palette.candidateBackground);
         }
 
         Button enterButton = mRootView.findViewById(R.id.enter);
 
         if (enterButton != null) {
-            enterButton.setTextColor(ContextCompat.getColor(mContext, enterFontColor));
+            enterButton.setTextColor(palette.enterFontColor);
         }
 
         LeanbackKeyboardView keyboardView = mRootView.findViewById(R.id.main_keyboard);
 
         if (keyboardView != null) {
-            keyboardView.setKeyTextColor(ContextCompat.getColor(mContext, keyTextColor));
+            keyboardView.setKeyTextColor(palette.keyTextColor);
         }
     }
 
-    private void applySuggestionsColors(int candidateFontColor) {
+    private void applySuggestionsColors(List<View> recycled) {
         LinearLayout suggestions = mRootView.findViewById(R.id.suggestions);
 
         if (suggestions != null) {
@@ -114,17 +137,25 @@ public class ThemeManager {
             Log.d(TAG, "Number of suggestions: " + childCount);
 
             for (int i = 0; i < childCount; i++) {
-                View child = suggestions.getChildAt(i);
-
-                Button candidateButton = child.findViewById(R.id.text);
+                applySuggestionColor(suggestions.getChildAt(i));
+            }
+        }
 
-                if (candidateButton != null) {
-                    candidateButton.setTextColor(ContextCompat.getColor(mContext, candidateFontColor));
-                }
+        if (recycled != null) {
+            for (View child : recycled) {
+                applySuggestionColor(child);
             }
         }
     }
 
+    private void applySuggestionColor(View child) {
+        Button candidateButton = child.findViewById(R.id.text);
+
+        if (candidateButton != null) {
+            applySuggestionTheme(candidateButton);
+        }
+    }
+
     private void applyShiftDrawable(int resId) {
         LeanbackKeyboardView keyboardView = mRootView.findViewById(R.id.main_keyboard);
 
@@ -134,26 +165,4 @@ public class ThemeManager {
             keyboardView.setCapsLockDrawable(drawable);
         }
     }
-
-    private void applyForTheme(ThemeCallback callback) {
-        String currentThemeId = mPrefs.getCurrentTheme();
-        Resources resources = mContext.getResources();
-        String[] themes = resources.getStringArray(R.array.keyboard_themes);
-
-        for (String theme : themes) {
-            String[] split = theme.split("\\|");
-            String themeName = split[0];
-            String themeId = split[1];
-
-            if (currentThemeId.equals(themeId)) {
-                callback.onThemeFound(themeId);
-
-                break;
-            }
-        }
-    }
-
-    private interface ThemeCallback {
-        void onThemeFound(String themeId);
-    }
 }
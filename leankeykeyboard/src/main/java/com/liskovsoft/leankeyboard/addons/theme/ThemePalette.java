@@ -0,0 +1,86 @@
+package com.liskovsoft.leankeyboard.addons.theme;
+
+import android.content.Context;
+import android.content.res.Resources;
+import androidx.core.content.ContextCompat;
+import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
+import com.liskovsoft.leankeykeyboard.R;
+
+/**
+ * NOTE: Resolved colors and drawables of the keyboard theme.<br/>
+ * Resources are looked up by name only once, when palette is created.
+ */
+public final class ThemePalette {
+    public final String themeId;
+    public final int keyboardBackground;
+    public final int candidateBackground;
+    public final int enterFontColor;
+    public final int keyTextColor;
+    public final int candidateFontColor;
+    /**
+     * Caps lock drawable resource id or -1 for default one
+     */
+    public final int shiftLockOnResId;
+
+    private ThemePalette(String themeId, int keyboardBackground, int candidateBackground, int enterFontColor,
+                         int keyTextColor, int candidateFontColor, int shiftLockOnResId) {
+        this.themeId = themeId;
+        this.keyboardBackground = keyboardBackground;
+        this.candidateBackground = candidateBackground;
+        this.enterFontColor = enterFontColor;
+        this.keyTextColor = keyTextColor;
+        this.candidateFontColor = candidateFontColor;
+        this.shiftLockOnResId = shiftLockOnResId;
+    }
+
+    /**
+     * Resolve palette of the theme. Unknown theme ids resolve to the default palette.
+     * @param context context
+     * @param themeId id from the {@link R.array#keyboard_themes} array
+     * @return palette
+     */
+    public static ThemePalette resolve(Context context, String themeId) {
+        if (themeId == null || LeanKeyPreferences.THEME_DEFAULT.equals(themeId) || !isKnownTheme(context, themeId)) {
+            return new ThemePalette(
+                    LeanKeyPreferences.THEME_DEFAULT,
+                    ContextCompat.getColor(context, R.color.keyboard_background),
+                    ContextCompat.getColor(context, R.color.candidate_background),
+                    ContextCompat.getColor(context, R.color.enter_key_font_color),
+                    ContextCompat.getColor(context, R.color.key_text_default),
+                    ContextCompat.getColor(context, R.color.candidate_font_color),
+                    -1
+            );
+        }
+
+        String suffix = "_" + themeId.toLowerCase();
+
+        return new ThemePalette(
+                themeId,
+                ContextCompat.getColor(context, getIdentifier(context, "keyboard_background" + suffix, "color")),
+                ContextCompat.getColor(context, getIdentifier(context, "candidate_background" + suffix, "color")),
+                ContextCompat.getColor(context, getIdentifier(context, "enter_key_font_color" + suffix, "color")),
+                ContextCompat.getColor(context, getIdentifier(context, "key_text_default" + suffix, "color")),
+                ContextCompat.getColor(context, getIdentifier(context, "candidate_font_color" + suffix, "color")),
+                getIdentifier(context, "ic_ime_shift_lock_on" + suffix, "drawable")
+        );
+    }
+
+    private static int getIdentifier(Context context, String name, String type) {
+        return context.getResources().getIdentifier(name, type, context.getPackageName());
+    }
+
+    private static boolean isKnownTheme(Context context, String themeId) {
+        Resources resources = context.getResources();
+        String[] themes = resources.getStringArray(R.array.keyboard_themes);
+
+        for (String theme : themes) {
+            String[] split = theme.split("\\|");
+
+            if (split.length > 1 && themeId.equals(split[1])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,15 @@
+package com.liskovsoft.leankeyboard.addons.voice;
+
+import android.content.Intent;
+import android.speech.RecognitionListener;
+
+/**
+ * NOTE: Speech recognizer that lives inside the keyboard and is reused between sessions.<br/>
+ * Partial results are delivered through {@link RecognitionListener#onPartialResults}.
+ */
+public interface StreamingRecognizer {
+    void setRecognitionListener(RecognitionListener listener);
+    void startListening(Intent recognizerIntent);
+    void cancel();
+    void destroy();
+}
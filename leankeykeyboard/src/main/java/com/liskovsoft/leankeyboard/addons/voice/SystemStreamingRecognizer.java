@@ -0,0 +1,37 @@
+package com.liskovsoft.leankeyboard.addons.voice;
+
+import android.content.Context;
+import android.content.Intent;
+import android.speech.RecognitionListener;
+import android.speech.SpeechRecognizer;
+
+/**
+ * Recognizer backed by the system {@link SpeechRecognizer}
+ */
+public class SystemStreamingRecognizer implements StreamingRecognizer {
+    private final SpeechRecognizer mRecognizer;
+
+    public SystemStreamingRecognizer(Context context) {
+        mRecognizer = SpeechRecognizer.createSpeechRecognizer(context);
+    }
+
+    @Override
+    public void setRecognitionListener(RecognitionListener listener) {
+        mRecognizer.setRecognitionListener(listener);
+    }
+
+    @Override
+    public void startListening(Intent recognizerIntent) {
+        mRecognizer.startListening(recognizerIntent);
+    }
+
+    @Override
+    public void cancel() {
+        mRecognizer.cancel();
+    }
+
+    @Override
+    public void destroy() {
+        mRecognizer.destroy();
+    }
+}
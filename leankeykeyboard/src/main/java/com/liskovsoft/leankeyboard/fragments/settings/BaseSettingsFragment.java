@@ -12,6 +12,7 @@ import java.util.Map;
 public class BaseSettingsFragment extends GuidedStepSupportFragment {
     private Map<Long, CheckedAction> mCheckedActions = new LinkedHashMap<>();
     private Map<Long, NextAction> mNextActions = new LinkedHashMap<>();
+    private Map<Long, InfoAction> mInfoActions = new LinkedHashMap<>();
     private long mId;
 
     protected interface OnChecked {
@@ -26,6 +27,10 @@ public class BaseSettingsFragment extends GuidedStepSupportFragment {
         void onClick();
     }
 
+    protected interface GetDesc {
+        String getDesc();
+    }
+
     // Radio action
 
     protected void addRadioAction(int titleResId, int descResId, GetChecked getChecked, OnChecked onChecked) {
@@ -68,12 +73,43 @@ public class BaseSettingsFragment extends GuidedStepSupportFragment {
         mNextActions.put(mId++, new NextAction(resId, onClick));
     }
 
+    // Info action
+
+    /**
+     * NOTE: Read-only item. Description is re-read on resume and on click.
+     */
+    protected void addInfoAction(int titleResId, GetDesc getDesc) {
+        mInfoActions.put(mId++, new InfoAction(getString(titleResId), getDesc));
+    }
+
+    protected void updateInfoActions() {
+        for (long id : mInfoActions.keySet()) {
+            GuidedAction action = findActionById(id);
+
+            if (action != null) {
+                action.setDescription(mInfoActions.get(id).getDesc());
+                notifyActionChanged(findActionPositionById(id));
+            }
+        }
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        updateInfoActions();
+    }
+
     @Override
     public void onCreateActions(@NonNull List<GuidedAction> actions, Bundle savedInstanceState) {
         for (long id : mCheckedActions.keySet()) {
             addCheckedItem(id, mCheckedActions.get(id), actions);
         }
 
+        for (long id : mInfoActions.keySet()) {
+            addInfoItem(id, mInfoActions.get(id), actions);
+        }
+
         for (long id : mNextActions.keySet()) {
             addNextItem(id, mNextActions.get(id), actions);
         }
@@ -92,6 +128,20 @@ public class BaseSettingsFragment extends GuidedStepSupportFragment {
         if (nextAction != null) {
             nextAction.onClick();
         }
+
+        if (mInfoActions.containsKey(action.getId())) {
+            updateInfoActions();
+        }
+    }
+
+    private void addInfoItem(long id, InfoAction infoAction, List<GuidedAction> actions) {
+        GuidedAction action = new GuidedAction.Builder(getActivity())
+                .id(id)
+                .title(infoAction.getTitle())
+                .description(infoAction.getDesc())
+                .multilineDescription(true)
+                .build();
+        actions.add(action);
     }
 
     private void addNextItem(long id, NextAction nextAction, List<GuidedAction> actions) {
@@ -187,4 +237,22 @@ public class BaseSettingsFragment extends GuidedStepSupportFragment {
             mOnClick.onClick();
         }
     }
+
+    private static class InfoAction {
+        private final String mTitle;
+        private final GetDesc mGetDesc;
+
+        public InfoAction(String title, GetDesc getDesc) {
+            mTitle = title;
+            mGetDesc = getDesc;
+        }
+
+        public String getTitle() {
+            return mTitle;
+        }
+
+        public String getDesc() {
+            return mGetDesc.getDesc();
+        }
+    }
 }
@@ -0,0 +1,135 @@
+package com.liskovsoft.leankeyboard.fragments.settings;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.text.format.DateFormat;
+import android.text.format.Formatter;
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.leanback.widget.GuidanceStylist.Guidance;
+import com.liskovsoft.leankeyboard.ime.ImeDiagnostics;
+import com.liskovsoft.leankeyboard.ime.ImeDiagnostics.CacheCounter;
+import com.liskovsoft.leankeyboard.ime.KeystrokeTracer;
+import com.liskovsoft.leankeyboard.ime.LatencyHistogram;
+import com.liskovsoft.leankeykeyboard.R;
+
+import java.util.Locale;
+
+/**
+ * NOTE: Live IME performance numbers for the "keyboard is slow" reports.<br/>
+ * Same numbers are printed by the dumpsys of the {@link com.liskovsoft.leankeyboard.ime.LeanbackImeService}.
+ */
+public class DiagnosticsFragment extends BaseSettingsFragment {
+    private Context mContext;
+
+    @Override
+    public void onAttach(Context context) {
+        super.onAttach(context);
+
+        mContext = context;
+        addInfoAction(R.string.diagnostics_keystroke, () -> getLatency(KeystrokeTracer.getStageHistogram(KeystrokeTracer.STAGE_CONNECTION)));
+        addInfoAction(R.string.diagnostics_suggestion_query, () -> getLatency(KeystrokeTracer.getSuggestionQueryHistogram()));
+        addInfoAction(R.string.diagnostics_cache_hits, this::getCacheHits);
+        addInfoAction(R.string.diagnostics_dpad_frames, this::getDpadFrames);
+        addInfoAction(R.string.diagnostics_glyph_cache, this::getGlyphCache);
+        addInfoAction(R.string.diagnostics_cold_start, this::getColdStart);
+        addInfoAction(R.string.diagnostics_voice_first_text, this::getVoiceTimeToFirstText);
+        addNextAction(R.string.diagnostics_reset, () -> {
+            ImeDiagnostics.reset();
+            updateInfoActions();
+        });
+    }
+
+    @NonNull
+    @Override
+    public Guidance onCreateGuidance(Bundle savedInstanceState) {
+        String title = getActivity().getResources().getString(R.string.diagnostics);
+        String desc = getActivity().getResources().getString(R.string.diagnostics_desc);
+        Drawable icon = ContextCompat.getDrawable(getActivity(), R.drawable.ic_launcher);
+
+        return new Guidance(
+                title,
+                desc,
+                "",
+                icon
+        );
+    }
+
+    private String getLatency(LatencyHistogram histogram) {
+        long count = histogram.getCount();
+
+        if (count == 0) {
+            return mContext.getString(R.string.diagnostics_no_data);
+        }
+
+        return mContext.getString(R.string.diagnostics_latency,
+                toMs(histogram.getPercentileUs(50)), toMs(histogram.getPercentileUs(95)), toMs(histogram.getPercentileUs(99)), count);
+    }
+
+    private String getCacheHits() {
+        StringBuilder result = new StringBuilder();
+
+        for (CacheCounter counter : ImeDiagnostics.getCacheCounters()) {
+            int hitRate = counter.getHitRate();
+
+            if (hitRate == -1) {
+                continue;
+            }
+
+            if (result.length() > 0) {
+                result.append('\n');
+            }
+
+            result.append(counter.getName()).append(": ").append(hitRate).append('%');
+        }
+
+        return result.length() > 0 ? result.toString() : mContext.getString(R.string.diagnostics_no_data);
+    }
+
+    private String getDpadFrames() {
+        long moves = ImeDiagnostics.getDpadMoves();
+
+        if (moves == 0) {
+            return mContext.getString(R.string.diagnostics_no_data);
+        }
+
+        return mContext.getString(R.string.diagnostics_frames, ImeDiagnostics.getDpadJankyFrames(), ImeDiagnostics.getDpadFrames(), moves);
+    }
+
+    private String getGlyphCache() {
+        long bytes = ImeDiagnostics.getGlyphCacheBytes();
+
+        if (bytes == 0) {
+            return mContext.getString(R.string.diagnostics_no_data);
+        }
+
+        return Formatter.formatFileSize(mContext, bytes);
+    }
+
+    private String getColdStart() {
+        long durationMs = ImeDiagnostics.getColdStartDurationMs();
+
+        if (durationMs == -1) {
+            return mContext.getString(R.string.diagnostics_no_data);
+        }
+
+        String time = DateFormat.getTimeFormat(mContext).format(ImeDiagnostics.getColdStartTimeMs());
+
+        return mContext.getString(R.string.diagnostics_cold_start_value, durationMs, time);
+    }
+
+    private String getVoiceTimeToFirstText() {
+        long durationMs = ImeDiagnostics.getVoiceTimeToFirstTextMs();
+
+        if (durationMs == -1) {
+            return mContext.getString(R.string.diagnostics_no_data);
+        }
+
+        return mContext.getString(R.string.diagnostics_duration_ms, durationMs);
+    }
+
+    private static String toMs(long us) {
+        return String.format(Locale.US, "%.1f", us / 1000.0);
+    }
+}
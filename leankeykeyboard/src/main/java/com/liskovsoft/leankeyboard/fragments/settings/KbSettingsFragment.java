@@ -27,6 +27,8 @@ public class KbSettingsFragment extends BaseSettingsFragment {
 
         addNextAction(R.string.misc, () -> startGuidedFragment(new MiscFragment()));
 
+        addNextAction(R.string.diagnostics, () -> startGuidedFragment(new DiagnosticsFragment()));
+
         addNextAction(R.string.about_desc, () -> startGuidedFragment(new AboutFragment()));
     }
 
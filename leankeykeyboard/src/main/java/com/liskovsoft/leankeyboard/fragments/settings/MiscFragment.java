@@ -1,17 +1,27 @@
 package com.liskovsoft.leankeyboard.fragments.settings;
 
+import android.app.Activity;
+import android.content.ActivityNotFoundException;
 import android.content.Context;
+import android.content.Intent;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Build.VERSION;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import androidx.leanback.widget.GuidanceStylist.Guidance;
 import com.liskovsoft.leankeyboard.activity.settings.KbSettingsActivity2;
+import com.liskovsoft.leankeyboard.addons.dictionary.UserDictionary;
+import com.liskovsoft.leankeyboard.addons.macro.MacroRecorder;
 import com.liskovsoft.leankeyboard.helpers.Helpers;
+import com.liskovsoft.leankeyboard.helpers.MessageHelpers;
+import com.liskovsoft.leankeyboard.ime.KeyMapperImeService;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
 import com.liskovsoft.leankeykeyboard.R;
 
 public class MiscFragment extends BaseSettingsFragment {
+    private static final int REQUEST_IMPORT_WORDS = 1;
     private LeanKeyPreferences mPrefs;
     private Context mContext;
 
@@ -26,6 +36,13 @@ public class MiscFragment extends BaseSettingsFragment {
         addCheckedAction(R.string.enable_suggestions, R.string.enable_suggestions_desc, mPrefs::getSuggestionsEnabled, mPrefs::setSuggestionsEnabled);
         addCheckedAction(R.string.show_launcher_icon, R.string.show_launcher_icon_desc, this::getLauncherIconShown, this::setLauncherIconShown);
         addCheckedAction(R.string.enable_cyclic_navigation, R.string.enable_cyclic_navigation_desc, mPrefs::isCyclicNavigationEnabled, mPrefs::setCyclicNavigationEnabled);
+        addCheckedAction(R.string.enable_inline_voice, R.string.enable_inline_voice_desc, mPrefs::isInlineVoiceEnabled, mPrefs::setInlineVoiceEnabled);
+        addCheckedAction(R.string.enable_gesture_typing, R.string.enable_gesture_typing_desc, mPrefs::isGestureTypingEnabled, mPrefs::setGestureTypingEnabled);
+        addCheckedAction(R.string.enable_sentence_delete, R.string.enable_sentence_delete_desc, mPrefs::isSentenceDeleteEnabled, mPrefs::setSentenceDeleteEnabled);
+        addNextAction(R.string.import_words, this::pickWordsFile);
+        addNextAction(R.string.macro_record, this::recordMacro);
+        addNextAction(R.string.macro_stop, this::stopMacro);
+        addNextAction(R.string.macro_play, this::playMacro);
     }
 
     @NonNull
@@ -43,6 +60,72 @@ public class MiscFragment extends BaseSettingsFragment {
         );
     }
 
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (requestCode != REQUEST_IMPORT_WORDS || resultCode != Activity.RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+
+        importWords(data.getData());
+    }
+
+    /**
+     * NOTE: Storage access framework is used, so files on usb drives are available too and no storage permission is needed
+     */
+    private void pickWordsFile() {
+        Intent intent = new Intent(VERSION.SDK_INT >= 19 ? Intent.ACTION_OPEN_DOCUMENT : Intent.ACTION_GET_CONTENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("text/*");
+
+        try {
+            startActivityForResult(intent, REQUEST_IMPORT_WORDS);
+        } catch (ActivityNotFoundException e) {
+            MessageHelpers.showMessage(mContext, getString(R.string.import_words_no_picker));
+        }
+    }
+
+    private void importWords(Uri uri) {
+        Context context = mContext.getApplicationContext();
+        MessageHelpers.showMessage(context, context.getString(R.string.import_words_started));
+
+        UserDictionary.instance(context).importAsync(uri, new UserDictionary.ImportCallback() {
+            @Override
+            public void onImportDone(int totalWords) {
+                MessageHelpers.showMessage(context, context.getString(R.string.import_words_done, totalWords));
+            }
+
+            @Override
+            public void onImportFailed(String reason) {
+                MessageHelpers.showMessage(context, context.getString(R.string.import_words_failed, reason));
+            }
+        });
+    }
+
+    /**
+     * NOTE: Entries typed in the other apps are recorded until the stop
+     */
+    private void recordMacro() {
+        boolean started = KeyMapperImeService.recordMacro(KeyMapperImeService.MACRO_DEFAULT_NAME);
+        MessageHelpers.showMessage(mContext, getString(started ? R.string.macro_recording : R.string.macro_keyboard_inactive));
+    }
+
+    private void stopMacro() {
+        int entries = KeyMapperImeService.stopMacro();
+        MessageHelpers.showMessage(mContext, entries >= 0 ? getString(R.string.macro_saved, entries) : getString(R.string.macro_stopped));
+    }
+
+    private void playMacro() {
+        if (!MacroRecorder.exists(mContext, KeyMapperImeService.MACRO_DEFAULT_NAME)) {
+            MessageHelpers.showMessage(mContext, getString(R.string.macro_not_recorded));
+            return;
+        }
+
+        boolean armed = KeyMapperImeService.playMacroInNextField(KeyMapperImeService.MACRO_DEFAULT_NAME);
+        MessageHelpers.showMessage(mContext, getString(armed ? R.string.macro_play_next_field : R.string.macro_keyboard_inactive));
+    }
+
     private void setLauncherIconShown(boolean shown) {
         Helpers.setLauncherIconShown(mContext, KbSettingsActivity2.class, shown);
     }
@@ -0,0 +1,99 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * NOTE: Caches that could be dropped on memory pressure and rebuilt lazily on the next use.<br/>
+ * Stages are released in order: {@link #STAGE_BITMAPS} first, {@link #STAGE_DICTIONARY} last.
+ * The more severe the trim level, the more stages are released.<br/>
+ * Call from the main thread.
+ */
+public class CacheRegistry {
+    private static final String TAG = CacheRegistry.class.getSimpleName();
+    /**
+     * Rendered keys and recycled views. Skipped while keyboard is on screen.
+     */
+    public static final int STAGE_BITMAPS = 0;
+    /**
+     * Layouts of the non-current languages
+     */
+    public static final int STAGE_LAYOUTS = 1;
+    /**
+     * Dictionary connection and its page cache, gesture trie
+     */
+    public static final int STAGE_DICTIONARY = 2;
+    private static final int STAGE_NONE = -1;
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    public interface Releasable {
+        void release();
+    }
+
+    private static class Entry {
+        final int stage;
+        final String name;
+        final Releasable releasable;
+
+        Entry(int stage, String name, Releasable releasable) {
+            this.stage = stage;
+            this.name = name;
+            this.releasable = releasable;
+        }
+    }
+
+    public void register(int stage, String name, Releasable releasable) {
+        mEntries.add(new Entry(stage, name, releasable));
+    }
+
+    /**
+     * @param level {@link ComponentCallbacks2} TRIM_MEMORY_* level
+     * @param inputViewShown keyboard is on screen
+     */
+    public void onTrimMemory(int level, boolean inputViewShown) {
+        int maxStage = getMaxStage(level);
+
+        if (maxStage == STAGE_NONE) {
+            return;
+        }
+
+        Log.d(TAG, "Trim memory: level " + level + ", stages up to " + maxStage);
+
+        for (Entry entry : mEntries) {
+            if (entry.stage > maxStage || (entry.stage == STAGE_BITMAPS && inputViewShown)) {
+                continue;
+            }
+
+            Log.d(TAG, "Releasing " + entry.name);
+            entry.releasable.release();
+        }
+    }
+
+    private static int getMaxStage(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            return STAGE_DICTIONARY;
+        }
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return STAGE_LAYOUTS;
+        }
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return STAGE_BITMAPS;
+        }
+
+        // process is still in use: RUNNING_* levels
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return STAGE_DICTIONARY;
+        }
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return STAGE_LAYOUTS;
+        }
+
+        return STAGE_BITMAPS;
+    }
+}
@@ -25,6 +25,7 @@ public class DatabaseHelper extends SQLiteAssetHelper {
     private static final int DATABASE_VERSION = 1;
     private static final String COL_WORD = "word";
     private static final String COL_WORD_UNACCENTED = "word_unaccented";
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
 
     public DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
@@ -33,8 +34,36 @@ public class DatabaseHelper extends SQLiteAssetHelper {
 
     public static String removeAccents(String str) {
         String nfdNormalizedString = Normalizer.normalize(str, Normalizer.Form.NFD);
-        Pattern pattern = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
-        return pattern.matcher(nfdNormalizedString).replaceAll("");
+        return COMBINING_MARKS.matcher(nfdNormalizedString).replaceAll("");
+    }
+
+    public interface WordVisitor {
+        /**
+         * @param rank position in the frequency order
+         */
+        void onWord(String unaccented, String word, int rank);
+    }
+
+    /**
+     * Visit all single words (no phrases), most frequent first
+     */
+    public void forEachSingleWord(WordVisitor visitor) {
+        SQLiteDatabase db = getReadableDatabase();
+        if (db == null) return;
+
+        String query = "SELECT " + COL_WORD + ", " + COL_WORD_UNACCENTED + " FROM " + TABLE_NAME +
+                " WHERE instr(" + COL_WORD + ", ' ') = 0 ORDER BY docid";
+
+        try (Cursor cursor = db.rawQuery(query, null)) {
+            if (cursor != null) {
+                int rank = 0;
+                while (cursor.moveToNext()) {
+                    visitor.onWord(cursor.getString(1), cursor.getString(0), rank++);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error when reading words", e);
+        }
     }
 
     public List<String> getSuggestions(String prefix, int searchMode) {
@@ -0,0 +1,353 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.view.KeyEvent;
+import android.view.inputmethod.CompletionInfo;
+import android.view.inputmethod.CorrectionInfo;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputConnectionWrapper;
+
+/**
+ * NOTE: In-memory copy of the editor text around the cursor.<br/>
+ * Own edits of the IME are applied locally, edits of the others come through
+ * {@link #onUpdateSelection(int, int)}.<br/>
+ * Text reads of the {@link #wrap(InputConnection) wrapped} connection are served from memory,
+ * so there is no binder call per key press. Text is re-read only after an unexpected editor change.<br/>
+ * NOTE: Extracted text is requested without the monitor flag: the editor would push the text back on every change.
+ */
+public class EditorMirror {
+    /**
+     * Max number of chars kept at each side of the cursor
+     */
+    private static final int WINDOW_SIZE = 1000;
+    private static final int MAX_PENDING = 16;
+    private final StringBuilder mText = new StringBuilder();
+    private final int[] mPendingSelStarts = new int[MAX_PENDING];
+    private final int[] mPendingSelEnds = new int[MAX_PENDING];
+    private final MirroredConnection mConnection = new MirroredConnection();
+    private InputConnection mTarget;
+    private int mPendingCount;
+    private int mTextStart;
+    private int mSelStart = -1;
+    private int mSelEnd = -1;
+    private boolean mHeadComplete;
+    private boolean mTailComplete;
+    private boolean mValid;
+    private boolean mExtractUnsupported;
+
+    /**
+     * Forget everything about the previous editor
+     * @param selStart initial selection start or -1 if unknown
+     * @param selEnd initial selection end or -1 if unknown
+     */
+    public void reset(int selStart, int selEnd) {
+        mValid = false;
+        mPendingCount = 0;
+        mSelStart = Math.min(selStart, selEnd);
+        mSelEnd = Math.max(selStart, selEnd);
+        mText.setLength(0);
+    }
+
+    /**
+     * Get connection that reads text from the mirror and keeps the mirror in sync with own edits
+     * @param connection current input connection
+     * @return mirrored connection
+     */
+    public InputConnection wrap(InputConnection connection) {
+        if (mTarget != connection) {
+            mTarget = connection;
+            mConnection.setTarget(connection);
+            mExtractUnsupported = false;
+            mValid = false;
+            mPendingCount = 0;
+        }
+
+        return mConnection;
+    }
+
+    /**
+     * @return own edits that the editor hasn't reported yet
+     */
+    public boolean hasPendingEdits() {
+        return mPendingCount > 0;
+    }
+
+    public void onUpdateSelection(int newSelStart, int newSelEnd) {
+        for (int i = 0; i < mPendingCount; i++) {
+            if (mPendingSelStarts[i] == newSelStart && mPendingSelEnds[i] == newSelEnd) {
+                // own edit is confirmed by the editor
+                dropPending(i + 1);
+                return;
+            }
+        }
+
+        // editor is changed by someone else
+        reset(newSelStart, newSelEnd);
+    }
+
+    /**
+     * @return text or null if it is outside of the mirror
+     */
+    private CharSequence getTextBeforeCursor(int n) {
+        if (!ensureValid()) {
+            return null;
+        }
+
+        int cursor = mSelStart - mTextStart;
+
+        if (n > cursor && !mHeadComplete) {
+            return null;
+        }
+
+        return mText.substring(Math.max(0, cursor - n), cursor);
+    }
+
+    /**
+     * @return text or null if it is outside of the mirror
+     */
+    private CharSequence getTextAfterCursor(int n) {
+        if (!ensureValid()) {
+            return null;
+        }
+
+        int cursor = mSelEnd - mTextStart;
+        int available = mText.length() - cursor;
+
+        if (n > available && !mTailComplete) {
+            return null;
+        }
+
+        return mText.substring(cursor, cursor + Math.min(n, available));
+    }
+
+    private void onCommitText(CharSequence text, int newCursorPosition) {
+        if (text == null || newCursorPosition != 1) {
+            invalidate();
+            return;
+        }
+
+        if (mSelStart < 0) {
+            return;
+        }
+
+        if (mValid) {
+            mText.replace(mSelStart - mTextStart, mSelEnd - mTextStart, text.toString());
+        }
+
+        mSelStart += text.length();
+        mSelEnd = mSelStart;
+        expect();
+    }
+
+    private void onDeleteSurroundingText(int beforeLength, int afterLength) {
+        if (mSelStart < 0) {
+            return;
+        }
+
+        if (mValid) {
+            int start = mSelStart - mTextStart;
+            int end = mSelEnd - mTextStart;
+
+            if ((beforeLength > start && !mHeadComplete) || (afterLength > mText.length() - end && !mTailComplete)) {
+                // deleted text is outside of the mirror
+                mValid = false;
+            } else {
+                mText.delete(end, Math.min(mText.length(), end + afterLength));
+                int headStart = Math.max(0, start - beforeLength);
+                mText.delete(headStart, start);
+                beforeLength = start - headStart;
+            }
+        }
+
+        int shift = Math.min(beforeLength, mSelStart);
+        mSelStart -= shift;
+        mSelEnd -= shift;
+        expect();
+    }
+
+    private void onSetSelection(int start, int end) {
+        if (start < 0 || end < start) {
+            invalidate();
+            return;
+        }
+
+        if (mValid && (start < mTextStart || end > mTextStart + mText.length())) {
+            // cursor is moved outside of the mirror
+            mValid = false;
+        }
+
+        mSelStart = start;
+        mSelEnd = end;
+        expect();
+    }
+
+    /**
+     * Result of the edit is unknown. Wait for the next selection update.
+     */
+    private void invalidate() {
+        reset(-1, -1);
+    }
+
+    private void expect() {
+        if (mPendingCount == MAX_PENDING) {
+            dropPending(1);
+        }
+
+        mPendingSelStarts[mPendingCount] = mSelStart;
+        mPendingSelEnds[mPendingCount] = mSelEnd;
+        mPendingCount++;
+    }
+
+    private void dropPending(int count) {
+        int remaining = mPendingCount - count;
+        System.arraycopy(mPendingSelStarts, count, mPendingSelStarts, 0, remaining);
+        System.arraycopy(mPendingSelEnds, count, mPendingSelEnds, 0, remaining);
+        mPendingCount = remaining;
+    }
+
+    private boolean ensureValid() {
+        if (mValid) {
+            return true;
+        }
+
+        if (mTarget == null) {
+            return false;
+        }
+
+        if (!mExtractUnsupported) {
+            ExtractedTextRequest request = new ExtractedTextRequest();
+            request.hintMaxChars = WINDOW_SIZE * 2;
+            ExtractedText extracted = mTarget.getExtractedText(request, 0);
+
+            if (extracted != null) {
+                load(extracted, request.hintMaxChars);
+                return mValid;
+            }
+
+            mExtractUnsupported = true;
+        }
+
+        // editor doesn't support text extraction so absolute cursor position is needed
+        if (mSelStart < 0) {
+            return false;
+        }
+
+        CharSequence before = mTarget.getTextBeforeCursor(WINDOW_SIZE, 0);
+        CharSequence after = mTarget.getTextAfterCursor(WINDOW_SIZE, 0);
+        CharSequence selected = mSelEnd > mSelStart ? mTarget.getSelectedText(0) : null;
+
+        if (before == null || after == null) {
+            return false;
+        }
+
+        mText.setLength(0);
+        mText.append(before);
+        if (selected != null) {
+            mText.append(selected);
+        }
+        mText.append(after);
+        mTextStart = mSelStart - before.length();
+        mSelEnd = mSelStart + (selected != null ? selected.length() : 0);
+        mHeadComplete = before.length() < WINDOW_SIZE;
+        mTailComplete = after.length() < WINDOW_SIZE;
+        mValid = true;
+
+        return true;
+    }
+
+    private void load(ExtractedText extracted, int maxChars) {
+        CharSequence text = extracted.text;
+
+        if (text == null || extracted.selectionStart < 0 || extracted.selectionEnd < 0) {
+            mValid = false;
+            return;
+        }
+
+        int selStart = Math.min(Math.min(extracted.selectionStart, extracted.selectionEnd), text.length());
+        int selEnd = Math.min(Math.max(extracted.selectionStart, extracted.selectionEnd), text.length());
+        int from = Math.max(0, selStart - WINDOW_SIZE);
+        int to = Math.min(text.length(), selEnd + WINDOW_SIZE);
+
+        mText.setLength(0);
+        mText.append(text, from, to);
+        mTextStart = extracted.startOffset + from;
+        mSelStart = extracted.startOffset + selStart;
+        mSelEnd = extracted.startOffset + selEnd;
+        mHeadComplete = mTextStart == 0;
+        mTailComplete = to == text.length() && text.length() < maxChars;
+        mValid = true;
+    }
+
+    private class MirroredConnection extends InputConnectionWrapper {
+        public MirroredConnection() {
+            super(null, true);
+        }
+
+        @Override
+        public CharSequence getTextBeforeCursor(int n, int flags) {
+            CharSequence text = flags == 0 ? EditorMirror.this.getTextBeforeCursor(n) : null;
+            return text != null ? text : super.getTextBeforeCursor(n, flags);
+        }
+
+        @Override
+        public CharSequence getTextAfterCursor(int n, int flags) {
+            CharSequence text = flags == 0 ? EditorMirror.this.getTextAfterCursor(n) : null;
+            return text != null ? text : super.getTextAfterCursor(n, flags);
+        }
+
+        @Override
+        public boolean commitText(CharSequence text, int newCursorPosition) {
+            onCommitText(text, newCursorPosition);
+            return super.commitText(text, newCursorPosition);
+        }
+
+        @Override
+        public boolean deleteSurroundingText(int beforeLength, int afterLength) {
+            onDeleteSurroundingText(beforeLength, afterLength);
+            return super.deleteSurroundingText(beforeLength, afterLength);
+        }
+
+        @Override
+        public boolean setSelection(int start, int end) {
+            onSetSelection(start, end);
+            return super.setSelection(start, end);
+        }
+
+        @Override
+        public boolean setComposingText(CharSequence text, int newCursorPosition) {
+            invalidate();
+            return super.setComposingText(text, newCursorPosition);
+        }
+
+        @Override
+        public boolean finishComposingText() {
+            invalidate();
+            return super.finishComposingText();
+        }
+
+        @Override
+        public boolean commitCompletion(CompletionInfo text) {
+            invalidate();
+            return super.commitCompletion(text);
+        }
+
+        @Override
+        public boolean commitCorrection(CorrectionInfo correctionInfo) {
+            invalidate();
+            return super.commitCorrection(correctionInfo);
+        }
+
+        @Override
+        public boolean sendKeyEvent(KeyEvent event) {
+            invalidate();
+            return super.sendKeyEvent(event);
+        }
+
+        @Override
+        public boolean performContextMenuAction(int id) {
+            invalidate();
+            return super.performContextMenuAction(id);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.util.EventLog;
 public class EventLogTags {
    public static final int TIME_LEANBACK_IME_INPUT = 270900;
    public static final int TOTAL_LEANBACK_IME_BACKSPACE = 270902;
+   public static final int LEANBACK_IME_LATENCY = 270903;
 
    public static void writeTimeLeanbackImeInput(long time, long duration) {
       EventLog.writeEvent(TIME_LEANBACK_IME_INPUT, new Object[]{time, duration});
@@ -13,4 +14,11 @@ public class EventLogTags {
    public static void writeTotalLeanbackImeBackspace(int count) {
       EventLog.writeEvent(TOTAL_LEANBACK_IME_BACKSPACE, count);
    }
+
+   /**
+    * Latency percentiles of the {@link KeystrokeTracer} stage (us)
+    */
+   public static void writeLeanbackImeLatency(int stage, long p50, long p95, long p99, long count) {
+      EventLog.writeEvent(LEANBACK_IME_LATENCY, new Object[]{stage, p50, p95, p99, count});
+   }
 }
@@ -0,0 +1,105 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.WindowManager;
+
+/**
+ * NOTE: Records frame times while the selector moves after a D-pad press.<br/>
+ * Frame that is longer than {@link #JANK_FACTOR} refresh intervals is counted as janky.<br/>
+ * NOTE: Create only on Jelly Bean and above (needs {@link Choreographer}).
+ */
+@TargetApi(16)
+public class FrameTimeRecorder implements Choreographer.FrameCallback {
+    private static final String TAG = FrameTimeRecorder.class.getSimpleName();
+    private static final float JANK_FACTOR = 1.5F;
+    private static final float DEFAULT_REFRESH_RATE = 60.0F;
+    private static final long NANOS_PER_MS = 1_000_000L;
+    private final long mFrameIntervalNanos;
+    private final long mWindowNanos;
+    private boolean mRecording;
+    private long mStartNanos;
+    private long mLastFrameNanos;
+    private int mFrames;
+    private int mJankyFrames;
+    private long mMaxFrameNanos;
+
+    /**
+     * @param context context
+     * @param windowMs how long to record after each move
+     */
+    public FrameTimeRecorder(Context context, long windowMs) {
+        float refreshRate = DEFAULT_REFRESH_RATE;
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+
+        if (windowManager != null) {
+            Display display = windowManager.getDefaultDisplay();
+
+            if (display != null && display.getRefreshRate() > 0) {
+                refreshRate = display.getRefreshRate();
+            }
+        }
+
+        mFrameIntervalNanos = (long) (1_000_000_000L / refreshRate);
+        mWindowNanos = windowMs * NANOS_PER_MS;
+    }
+
+    /**
+     * Start recording of the new D-pad move. Unfinished previous move is reported immediately.
+     */
+    public void onMove() {
+        Choreographer choreographer = Choreographer.getInstance();
+
+        if (mRecording) {
+            choreographer.removeFrameCallback(this);
+            report();
+        }
+
+        mRecording = true;
+        mStartNanos = System.nanoTime();
+        mLastFrameNanos = 0;
+        mFrames = 0;
+        mJankyFrames = 0;
+        mMaxFrameNanos = 0;
+
+        choreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRecording) {
+            return;
+        }
+
+        if (mLastFrameNanos != 0) {
+            long frameNanos = frameTimeNanos - mLastFrameNanos;
+            mFrames++;
+            mMaxFrameNanos = Math.max(mMaxFrameNanos, frameNanos);
+
+            if (frameNanos > mFrameIntervalNanos * JANK_FACTOR) {
+                mJankyFrames++;
+            }
+        }
+
+        mLastFrameNanos = frameTimeNanos;
+
+        if (frameTimeNanos - mStartNanos < mWindowNanos) {
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            report();
+        }
+    }
+
+    private void report() {
+        mRecording = false;
+        ImeDiagnostics.recordDpadMove(mFrames, mJankyFrames);
+
+        if (mJankyFrames > 0) {
+            Log.d(TAG, "D-pad move: janky frames: " + mJankyFrames + " of " + mFrames + ", longest frame: " +
+                    (mMaxFrameNanos / NANOS_PER_MS) + "ms");
+        }
+    }
+}
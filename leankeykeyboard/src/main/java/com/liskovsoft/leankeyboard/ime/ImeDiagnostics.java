@@ -0,0 +1,199 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NOTE: Process wide performance counters that aren't covered by {@link KeystrokeTracer}.<br/>
+ * Settings run in the same process as the IME, so diagnostics page reads them directly.<br/>
+ * Values are reset when the process dies.
+ */
+public final class ImeDiagnostics {
+    private static final String TAG = ImeDiagnostics.class.getSimpleName();
+    public static final CacheCounter SPATIAL_INDEX = new CacheCounter("key spatial index");
+    public static final CacheCounter NAV_GRAPH = new CacheCounter("key navigation graph");
+    public static final CacheCounter THEME_PALETTE = new CacheCounter("theme palette");
+    public static final CacheCounter SUGGESTION_VIEWS = new CacheCounter("suggestion views");
+    private static final CacheCounter[] CACHE_COUNTERS = {SPATIAL_INDEX, NAV_GRAPH, THEME_PALETTE, SUGGESTION_VIEWS};
+    private static final AtomicLong sDpadMoves = new AtomicLong();
+    private static final AtomicLong sDpadFrames = new AtomicLong();
+    private static final AtomicLong sDpadJankyFrames = new AtomicLong();
+    private static volatile long sGlyphCacheBytes;
+    private static volatile long sColdStartBeginMs;
+    private static volatile long sColdStartDurationMs = -1;
+    private static volatile long sColdStartTimeMs;
+    private static volatile long sVoiceTimeToFirstTextMs = -1;
+
+    private ImeDiagnostics() {
+    }
+
+    /**
+     * NOTE: Hit/miss counter of the lookup cache
+     */
+    public static final class CacheCounter {
+        private final String mName;
+        private final AtomicLong mHits = new AtomicLong();
+        private final AtomicLong mMisses = new AtomicLong();
+
+        private CacheCounter(String name) {
+            mName = name;
+        }
+
+        public void hit() {
+            mHits.incrementAndGet();
+        }
+
+        public void miss() {
+            mMisses.incrementAndGet();
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getHits() {
+            return mHits.get();
+        }
+
+        public long getMisses() {
+            return mMisses.get();
+        }
+
+        /**
+         * @return hit rate 0-100 or -1 if there were no lookups
+         */
+        public int getHitRate() {
+            long hits = mHits.get();
+            long total = hits + mMisses.get();
+
+            return total == 0 ? -1 : (int) (hits * 100 / total);
+        }
+
+        private void reset() {
+            mHits.set(0);
+            mMisses.set(0);
+        }
+    }
+
+    public static CacheCounter[] getCacheCounters() {
+        return CACHE_COUNTERS.clone();
+    }
+
+    /**
+     * Totals of the finished D-pad move (see {@link FrameTimeRecorder})
+     */
+    public static void recordDpadMove(int frames, int jankyFrames) {
+        sDpadMoves.incrementAndGet();
+        sDpadFrames.addAndGet(frames);
+        sDpadJankyFrames.addAndGet(jankyFrames);
+    }
+
+    public static long getDpadMoves() {
+        return sDpadMoves.get();
+    }
+
+    public static long getDpadFrames() {
+        return sDpadFrames.get();
+    }
+
+    public static long getDpadJankyFrames() {
+        return sDpadJankyFrames.get();
+    }
+
+    /**
+     * Memory of the rendered key bitmaps of the current keyboard
+     */
+    public static void setGlyphCacheBytes(long bytes) {
+        sGlyphCacheBytes = bytes;
+    }
+
+    public static long getGlyphCacheBytes() {
+        return sGlyphCacheBytes;
+    }
+
+    /**
+     * Service has been created
+     */
+    public static void beginColdStart() {
+        sColdStartBeginMs = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * @return cold start has begun but the first keyboard frame isn't drawn yet
+     */
+    public static boolean isColdStartPending() {
+        return sColdStartBeginMs != 0;
+    }
+
+    /**
+     * First keyboard frame is about to be drawn. Following calls are ignored until the next {@link #beginColdStart()}.
+     */
+    public static void endColdStart() {
+        if (sColdStartBeginMs == 0) {
+            return;
+        }
+
+        sColdStartDurationMs = SystemClock.uptimeMillis() - sColdStartBeginMs;
+        sColdStartTimeMs = System.currentTimeMillis();
+        sColdStartBeginMs = 0;
+        Log.d(TAG, "Time to first keyboard: " + sColdStartDurationMs + "ms");
+    }
+
+    /**
+     * @return time from the service creation to the first shown keyboard or -1 if unknown
+     */
+    public static long getColdStartDurationMs() {
+        return sColdStartDurationMs;
+    }
+
+    /**
+     * @return wall time of the last cold start
+     */
+    public static long getColdStartTimeMs() {
+        return sColdStartTimeMs;
+    }
+
+    /**
+     * Time from the start of listening to the first recognized text of the inline voice session
+     */
+    public static void recordVoiceTimeToFirstText(long durationMs) {
+        sVoiceTimeToFirstTextMs = durationMs;
+        Log.d(TAG, "Voice: time to first text: " + durationMs + "ms");
+    }
+
+    /**
+     * @return time of the last voice session or -1 if nothing was recognized yet
+     */
+    public static long getVoiceTimeToFirstTextMs() {
+        return sVoiceTimeToFirstTextMs;
+    }
+
+    /**
+     * Clear counters of the diagnostics page. Cold start is kept: it happens once per process.
+     */
+    public static void reset() {
+        for (CacheCounter counter : CACHE_COUNTERS) {
+            counter.reset();
+        }
+
+        sDpadMoves.set(0);
+        sDpadFrames.set(0);
+        sDpadJankyFrames.set(0);
+        sVoiceTimeToFirstTextMs = -1;
+        KeystrokeTracer.reset();
+    }
+
+    public static void dump(PrintWriter pw) {
+        pw.println("Cold start: " + sColdStartDurationMs + "ms");
+        pw.println("D-pad moves: " + sDpadMoves.get() + ", frames: " + sDpadFrames.get() + ", janky: " + sDpadJankyFrames.get());
+        pw.println("Glyph cache: " + sGlyphCacheBytes + " bytes");
+        pw.println("Voice time to first text: " + sVoiceTimeToFirstTextMs + "ms");
+
+        for (CacheCounter counter : CACHE_COUNTERS) {
+            pw.println(String.format("Cache %s: hits=%s misses=%s", counter.getName(), counter.getHits(), counter.getMisses()));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.text.InputType;
+import android.view.inputmethod.EditorInfo;
+
+/**
+ * NOTE: What text processing is allowed in the current field.<br/>
+ * Computed once per field in {@link LeanbackImeService#onStartInput(EditorInfo, boolean)}.<br/>
+ * Passwords, emails, urls and numbers are committed as is: no Telex, no dictionary lookups.
+ * Only passwords and fields with IME_FLAG_NO_PERSONALIZED_LEARNING are private: their text is never remembered.
+ */
+public final class InputPolicy {
+    /**
+     * Same as EditorInfo.IME_FLAG_NO_PERSONALIZED_LEARNING (api 26)
+     */
+    private static final int IME_FLAG_NO_PERSONALIZED_LEARNING = 0x1000000;
+    public static final InputPolicy DEFAULT = new InputPolicy(true, true, true);
+    public static final InputPolicy RAW = new InputPolicy(false, false, true);
+    public static final InputPolicy PRIVATE = new InputPolicy(false, false, false);
+    /**
+     * Telex composition of the Vietnamese words
+     */
+    public final boolean engineEnabled;
+    /**
+     * Dictionary suggestions
+     */
+    public final boolean suggestionsEnabled;
+    /**
+     * Typed text may be remembered (e.g. recorded into a macro)
+     */
+    public final boolean learningEnabled;
+
+    private InputPolicy(boolean engineEnabled, boolean suggestionsEnabled, boolean learningEnabled) {
+        this.engineEnabled = engineEnabled;
+        this.suggestionsEnabled = suggestionsEnabled;
+        this.learningEnabled = learningEnabled;
+    }
+
+    public static InputPolicy from(EditorInfo info) {
+        if (info == null) {
+            return DEFAULT;
+        }
+
+        boolean learningEnabled = (info.imeOptions & IME_FLAG_NO_PERSONALIZED_LEARNING) == 0;
+        int inputClass = LeanbackUtils.getInputTypeClass(info);
+
+        if (inputClass == InputType.TYPE_CLASS_NUMBER && LeanbackUtils.getInputTypeVariation(info) == InputType.TYPE_NUMBER_VARIATION_PASSWORD) {
+            // pin
+            return PRIVATE;
+        }
+
+        if (inputClass != InputType.TYPE_CLASS_TEXT) {
+            // numbers, phones, dates
+            return learningEnabled ? RAW : PRIVATE;
+        }
+
+        switch (LeanbackUtils.getInputTypeVariation(info)) {
+            case InputType.TYPE_TEXT_VARIATION_PASSWORD:
+            case InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD:
+            case InputType.TYPE_TEXT_VARIATION_WEB_PASSWORD:
+                return PRIVATE;
+            case InputType.TYPE_TEXT_VARIATION_EMAIL_ADDRESS:
+            case InputType.TYPE_TEXT_VARIATION_WEB_EMAIL_ADDRESS:
+            case InputType.TYPE_TEXT_VARIATION_URI:
+                return learningEnabled ? RAW : PRIVATE;
+        }
+
+        boolean suggestionsEnabled = (info.inputType & InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS) == 0;
+
+        if (suggestionsEnabled && learningEnabled) {
+            return DEFAULT;
+        }
+
+        return new InputPolicy(true, suggestionsEnabled, learningEnabled);
+    }
+}
@@ -0,0 +1,101 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.BadParcelableException;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Parcelable;
+import android.os.RemoteException;
+import android.util.Log;
+import com.liskovsoft.leankeykeyboard.BuildConfig;
+
+/**
+ * NOTE: Bound alternative to the KeyMapper broadcasts of the {@link KeyMapperImeService}.<br/>
+ * Client sends {@link #MSG_INJECT_BATCH} messages with many key and text events at once.
+ * Messages are handled in the order of arrival, events of the batch are applied inside one batch edit.<br/>
+ * IME service itself can't be bound by other apps (BIND_INPUT_METHOD permission), so this service forwards to it.<br/>
+ * NOTE: Binding requires the runtime permission {@link #PERMISSION_INJECT_INPUT}, granted by the user to the automation app
+ * (or with adb shell pm grant). KeyMapper and macro broadcasts require the same permission.
+ */
+public class KeyMapperAutomationService extends Service {
+    private static final String TAG = KeyMapperAutomationService.class.getSimpleName();
+    public static final String PERMISSION_INJECT_INPUT = BuildConfig.APPLICATION_ID + ".permission.INJECT_INPUT";
+    public static final int MSG_INJECT_BATCH = 1;
+    /**
+     * Reply to {@link Message#replyTo}: arg1 - number of applied events or -1 if keyboard isn't active
+     */
+    public static final int MSG_BATCH_RESULT = 2;
+    /**
+     * int[] of the {@link KeyMapperImeService} BATCH_EVENT_* constants
+     */
+    public static final String EXTRA_BATCH_TYPES = BuildConfig.APPLICATION_ID + ".inputmethod.EXTRA_BATCH_TYPES";
+    /**
+     * long[] of the event times, events are applied in this order
+     */
+    public static final String EXTRA_BATCH_TIMESTAMPS = BuildConfig.APPLICATION_ID + ".inputmethod.EXTRA_BATCH_TIMESTAMPS";
+    /**
+     * KeyEvent[] (null for text events)
+     */
+    public static final String EXTRA_BATCH_KEY_EVENTS = BuildConfig.APPLICATION_ID + ".inputmethod.EXTRA_BATCH_KEY_EVENTS";
+    /**
+     * String[] (null for key events)
+     */
+    public static final String EXTRA_BATCH_TEXTS = BuildConfig.APPLICATION_ID + ".inputmethod.EXTRA_BATCH_TEXTS";
+
+    private final Messenger mMessenger = new Messenger(new Handler(Looper.getMainLooper()) {
+        @Override
+        public void handleMessage(Message msg) {
+            if (msg.what != MSG_INJECT_BATCH) {
+                super.handleMessage(msg);
+                return;
+            }
+
+            int applied = injectBatch(msg.getData());
+
+            if (msg.replyTo != null) {
+                try {
+                    msg.replyTo.send(Message.obtain(null, MSG_BATCH_RESULT, applied, 0));
+                } catch (RemoteException e) {
+                    Log.d(TAG, "Client is gone: " + e.getMessage());
+                }
+            }
+        }
+    });
+
+    private static int injectBatch(Bundle data) {
+        KeyMapperImeService service = KeyMapperImeService.getRunningInstance();
+
+        if (service == null || data == null) {
+            return -1;
+        }
+
+        int[] types;
+        long[] timestamps;
+        Parcelable[] keyEvents;
+        String[] texts;
+
+        // NOTE: bundle is unparcelled on the first read, malformed message must not crash the keyboard
+        try {
+            data.setClassLoader(KeyMapperAutomationService.class.getClassLoader());
+            types = data.getIntArray(EXTRA_BATCH_TYPES);
+            timestamps = data.getLongArray(EXTRA_BATCH_TIMESTAMPS);
+            keyEvents = data.getParcelableArray(EXTRA_BATCH_KEY_EVENTS);
+            texts = data.getStringArray(EXTRA_BATCH_TEXTS);
+        } catch (BadParcelableException | ClassCastException e) {
+            Log.w(TAG, "Malformed batch: " + e.getMessage());
+            return -1;
+        }
+
+        return service.injectBatch(types, timestamps, keyEvents, texts);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mMessenger.getBinder();
+    }
+}
@@ -1,6 +1,8 @@
 package com.liskovsoft.leankeyboard.ime;
 
 import android.content.BroadcastReceiver;
+import android.content.ClipData;
+import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -9,36 +11,106 @@ import android.os.Build;
 import android.os.Build.VERSION;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Parcelable;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
 import android.view.inputmethod.InputConnection;
+import com.liskovsoft.leankeyboard.addons.macro.KeyMacro;
+import com.liskovsoft.leankeyboard.addons.macro.MacroPlayer;
+import com.liskovsoft.leankeyboard.addons.macro.MacroRecorder;
+import com.liskovsoft.leankeyboard.helpers.MessageHelpers;
+import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardController.InputListener;
 import com.liskovsoft.leankeykeyboard.BuildConfig;
+import com.liskovsoft.leankeykeyboard.R;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class KeyMapperImeService extends InputMethodService {
+    private static final String TAG = KeyMapperImeService.class.getSimpleName();
     private static final String KEY_MAPPER_INPUT_METHOD_ACTION_INPUT_DOWN_UP = BuildConfig.APPLICATION_ID + ".inputmethod.ACTION_INPUT_DOWN_UP";
     private static final String KEY_MAPPER_INPUT_METHOD_ACTION_INPUT_DOWN = BuildConfig.APPLICATION_ID + ".inputmethod.ACTION_INPUT_DOWN";
     private static final String KEY_MAPPER_INPUT_METHOD_ACTION_INPUT_UP = BuildConfig.APPLICATION_ID + ".inputmethod.ACTION_INPUT_UP";
     private static final String KEY_MAPPER_INPUT_METHOD_ACTION_TEXT = BuildConfig.APPLICATION_ID + ".inputmethod.ACTION_INPUT_TEXT";
     private static final String KEY_MAPPER_INPUT_METHOD_EXTRA_TEXT = BuildConfig.APPLICATION_ID + ".inputmethod.EXTRA_TEXT";
     private static final String KEY_MAPPER_INPUT_METHOD_EXTRA_KEY_EVENT = BuildConfig.APPLICATION_ID +  ".inputmethod.EXTRA_KEY_EVENT";
+    private static final String MACRO_ACTION_RECORD = BuildConfig.APPLICATION_ID + ".inputmethod.ACTION_MACRO_RECORD";
+    private static final String MACRO_ACTION_STOP = BuildConfig.APPLICATION_ID + ".inputmethod.ACTION_MACRO_STOP";
+    private static final String MACRO_ACTION_PLAY = BuildConfig.APPLICATION_ID + ".inputmethod.ACTION_MACRO_PLAY";
+    private static final String MACRO_EXTRA_NAME = BuildConfig.APPLICATION_ID + ".inputmethod.EXTRA_MACRO_NAME";
+    private static final String MACRO_EXTRA_REAL_TIME = BuildConfig.APPLICATION_ID + ".inputmethod.EXTRA_MACRO_REAL_TIME";
+    /**
+     * Macro of the settings page
+     */
+    public static final String MACRO_DEFAULT_NAME = "default";
+
+    /**
+     * Types of the batched automation events, see {@link #injectBatch}
+     */
+    public static final int BATCH_EVENT_KEY_DOWN_UP = 0;
+    public static final int BATCH_EVENT_KEY_DOWN = 1;
+    public static final int BATCH_EVENT_KEY_UP = 2;
+    public static final int BATCH_EVENT_TEXT = 3;
+    private static WeakReference<KeyMapperImeService> sRunningInstance = new WeakReference<>(null);
 
     private final Handler mHandler = new Handler(Looper.getMainLooper());
 
     private static final String ACTION_VOICE_TO_TEXT = "inputmethod.ACTION_VOICE_TO_TEXT";
     private static final String EXTRA_VOICE_TO_TEXT = "inputmethod.EXTRA_VOICE_TO_TEXT";
+    /**
+     * Time to wait for the field of the voice result. After that result goes to any field or to the clipboard.
+     */
+    private static final long VOICE_COMMIT_TIMEOUT_MS = 3_000;
     protected String pendingVoiceText = null;
+    private String mQueuedVoiceText;
+    private boolean mVoiceTargetKnown;
+    private int mVoiceTargetFieldId;
+    private String mVoiceTargetPackage;
+    private final Runnable mCommitQueuedVoice = this::commitQueuedVoice;
+    private MacroRecorder mMacroRecorder;
+    private MacroPlayer mMacroPlayer;
+    /**
+     * Macro files. Single thread so the macro is loaded after its save.
+     */
+    private ExecutorService mMacroExecutor;
+    /**
+     * Macro to play in the next field of the other app
+     */
+    private String mPendingMacroName;
+    private final Runnable mDropQueuedVoice = this::onQueuedVoiceTimeout;
 
 
     private final BroadcastReceiver mBroadcastReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-            if (intent == null) {
+            // get result from GoogleVoiceInputActivity
+            if (intent == null || !ACTION_VOICE_TO_TEXT.equals(intent.getAction())) {
                 return;
             }
 
-            String action = intent.getAction();
+            String voiceToText = intent.getStringExtra(EXTRA_VOICE_TO_TEXT);
+
+            if (!TextUtils.isEmpty(voiceToText)) {
+                queueVoiceText(voiceToText);
+                pendingVoiceText = voiceToText;
+            }
+        }
+    };
+
+    /**
+     * NOTE: KeyMapper broadcasts. Same permission as the bound {@link KeyMapperAutomationService}.
+     */
+    private final BroadcastReceiver mInputReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent != null ? intent.getAction() : null;
             InputConnection currentInputConnection = getCurrentInputConnection();
 
             if (currentInputConnection == null || action == null) {
@@ -49,43 +121,6 @@ public class KeyMapperImeService extends InputMethodService {
             KeyEvent upEvent;
 
             switch (action) {
-
-
-                // get result from GoogleVoiceInputActivity
-                case ACTION_VOICE_TO_TEXT:
-                    String voiceToText = intent.getStringExtra(EXTRA_VOICE_TO_TEXT);
-
-
-                    if (!TextUtils.isEmpty(voiceToText)) {
-                        mHandler.postDelayed(new Runnable() {
-                            @Override
-                            public void run() {
-                                InputConnection ic = getCurrentInputConnection();
-                                EditorInfo editorInfo = getCurrentInputEditorInfo();
-
-                                if (ic != null && editorInfo != null) {
-                                    String textToCommit = voiceToText;
-
-                                    CharSequence textBefore = ic.getTextBeforeCursor(1, 0);
-                                    if (textBefore != null && textBefore.length() > 0 && !textBefore.toString().equals(" ")) {
-                                        textToCommit = " " + textToCommit;
-                                    }
-
-                                    ic.commitText(textToCommit, 1);
-
-                                    int actionId = editorInfo.imeOptions & EditorInfo.IME_MASK_ACTION;
-                                    ic.performEditorAction(actionId);
-
-                                }
-                            }
-                        }, 200);
-
-
-                        pendingVoiceText = voiceToText;
-                    }
-                    break;
-
-
                 case KEY_MAPPER_INPUT_METHOD_ACTION_TEXT:
                     String text = intent.getStringExtra(KEY_MAPPER_INPUT_METHOD_EXTRA_TEXT);
                     if (text == null) {
@@ -129,26 +164,504 @@ public class KeyMapperImeService extends InputMethodService {
         }
     };
 
+    /**
+     * NOTE: Remember the field that should receive the voice result.<br/>
+     * Call before voice activity is started (the field loses focus after that).
+     */
+    public void expectVoiceResult() {
+        EditorInfo editorInfo = getCurrentInputEditorInfo();
+
+        mVoiceTargetKnown = editorInfo != null;
+
+        if (mVoiceTargetKnown) {
+            mVoiceTargetFieldId = editorInfo.fieldId;
+            mVoiceTargetPackage = editorInfo.packageName;
+        }
+    }
+
+    @Override
+    public void onStartInput(EditorInfo attribute, boolean restarting) {
+        super.onStartInput(attribute, restarting);
+
+        if (mQueuedVoiceText != null && isVoiceTarget(attribute)) {
+            // commit after the whole start input chain is done
+            mHandler.post(mCommitQueuedVoice);
+        }
+
+        if (mPendingMacroName != null && attribute != null && !getPackageName().equals(attribute.packageName)) {
+            loadAndPlayMacro(mPendingMacroName, false);
+            mPendingMacroName = null;
+        }
+    }
+
+    /**
+     * NOTE: Commit voice result as soon as the target field gets its connection back
+     */
+    private void queueVoiceText(String text) {
+        mQueuedVoiceText = text;
+        mHandler.removeCallbacks(mDropQueuedVoice);
+        mHandler.postDelayed(mDropQueuedVoice, VOICE_COMMIT_TIMEOUT_MS);
+
+        if (isVoiceTarget(getCurrentInputEditorInfo())) {
+            // field is already restored
+            mHandler.post(mCommitQueuedVoice);
+        }
+    }
+
+    private boolean isVoiceTarget(EditorInfo editorInfo) {
+        if (editorInfo == null || getPackageName().equals(editorInfo.packageName)) {
+            // voice activity window is still on top
+            return false;
+        }
+
+        // unknown target never matches, the result goes to the clipboard on timeout
+        return mVoiceTargetKnown &&
+                editorInfo.fieldId == mVoiceTargetFieldId && TextUtils.equals(editorInfo.packageName, mVoiceTargetPackage);
+    }
+
+    private void commitQueuedVoice() {
+        InputConnection ic = getCurrentInputConnection();
+        EditorInfo editorInfo = getCurrentInputEditorInfo();
+
+        if (mQueuedVoiceText == null || ic == null || !isVoiceTarget(editorInfo)) {
+            return;
+        }
+
+        commitVoiceText(ic, takeQueuedVoice());
+
+        int actionId = editorInfo.imeOptions & EditorInfo.IME_MASK_ACTION;
+        ic.performEditorAction(actionId);
+    }
+
+    /**
+     * NOTE: Field of the voice result isn't restored in time (e.g. app has recreated it).<br/>
+     * Don't lose the dictation, but don't type it into a field the user didn't dictate to (other app, password):
+     * put it to the clipboard.
+     */
+    private void onQueuedVoiceTimeout() {
+        if (mQueuedVoiceText == null) {
+            return;
+        }
+
+        String text = takeQueuedVoice();
+
+        Log.d(TAG, "Voice field isn't restored in time, copying result to the clipboard");
+
+        ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+
+        if (clipboard != null) {
+            clipboard.setPrimaryClip(ClipData.newPlainText(null, text));
+            MessageHelpers.showMessage(this, getString(R.string.voice_result_copied, text));
+        }
+    }
+
+    private String takeQueuedVoice() {
+        String text = mQueuedVoiceText;
+        mQueuedVoiceText = null;
+        mVoiceTargetKnown = false;
+        mHandler.removeCallbacks(mDropQueuedVoice);
+
+        return text;
+    }
+
+    private static void commitVoiceText(InputConnection ic, String text) {
+        CharSequence textBefore = ic.getTextBeforeCursor(1, 0);
+        if (textBefore != null && textBefore.length() > 0 && !textBefore.toString().equals(" ")) {
+            text = " " + text;
+        }
+
+        ic.commitText(text, 1);
+    }
+
+    /**
+     * NOTE: Macro actions are accepted only from the apps that hold the permission
+     * {@link KeyMapperAutomationService#PERMISSION_INJECT_INPUT}: recorded macro may contain typed text.
+     */
+    private final BroadcastReceiver mMacroReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent != null && intent.getAction() != null) {
+                handleMacroAction(intent.getAction(), intent);
+            }
+        }
+    };
+
+    private void handleMacroAction(String action, Intent intent) {
+        String name = intent.getStringExtra(MACRO_EXTRA_NAME);
+
+        switch (action) {
+            case MACRO_ACTION_RECORD:
+                if (name != null) {
+                    mMacroRecorder.start(name);
+                }
+                break;
+            case MACRO_ACTION_STOP:
+                stopMacroInternal();
+                break;
+            case MACRO_ACTION_PLAY:
+                if (name != null) {
+                    loadAndPlayMacro(name, intent.getBooleanExtra(MACRO_EXTRA_REAL_TIME, false));
+                }
+                break;
+        }
+    }
+
+    /**
+     * NOTE: Macro controls of the settings page (same process as the keyboard, no permission needed)
+     * @return false if the keyboard isn't running (not the current input method)
+     */
+    public static boolean recordMacro(String name) {
+        KeyMapperImeService service = getRunningInstance();
+
+        if (service == null) {
+            return false;
+        }
+
+        service.mMacroRecorder.start(name);
+        return true;
+    }
+
+    /**
+     * Stop recording and playback
+     * @return number of the recorded entries or -1 if nothing was recorded
+     */
+    public static int stopMacro() {
+        KeyMapperImeService service = getRunningInstance();
+        KeyMacro macro = service != null ? service.stopMacroInternal() : null;
+
+        return macro != null ? macro.size() : -1;
+    }
+
+    /**
+     * NOTE: Settings page has no text field, so the macro is played when the user opens a field of the other app
+     * @return false if the keyboard isn't running (not the current input method)
+     */
+    public static boolean playMacroInNextField(String name) {
+        KeyMapperImeService service = getRunningInstance();
+
+        if (service == null) {
+            return false;
+        }
+
+        service.mPendingMacroName = name;
+        return true;
+    }
+
+    private KeyMacro stopMacroInternal() {
+        mPendingMacroName = null;
+
+        if (mMacroPlayer != null) {
+            mMacroPlayer.stop();
+        }
+
+        return mMacroRecorder.stop();
+    }
+
+    private void loadAndPlayMacro(String name, boolean realTime) {
+        mMacroExecutor.execute(() -> {
+            KeyMacro macro = MacroRecorder.load(this, name);
+            if (macro != null) {
+                mHandler.post(() -> playMacro(macro, realTime));
+            }
+        });
+    }
+
+    private void playMacro(KeyMacro macro, boolean realTime) {
+        if (sRunningInstance.get() != this) {
+            // service is destroyed while the macro was loading
+            return;
+        }
+
+        if (mMacroPlayer == null) {
+            mMacroPlayer = new MacroPlayer(getMacroInputListener());
+        }
+        mMacroPlayer.play(macro, realTime);
+    }
+
+    /**
+     * NOTE: Record keyboard entry if macro recording is active. Entries of the playing macro aren't recorded.
+     * @param privateField text is replaced by the placeholder (see {@link MacroRecorder#onPrivateEntry(int, int)})
+     */
+    protected void recordMacroEntry(int type, int keyCode, CharSequence text, boolean privateField) {
+        if (mMacroRecorder == null || !mMacroRecorder.isRecording() || (mMacroPlayer != null && mMacroPlayer.isPlaying())) {
+            return;
+        }
+
+        if (privateField) {
+            mMacroRecorder.onPrivateEntry(type, keyCode);
+        } else {
+            mMacroRecorder.onEntry(type, keyCode, text);
+        }
+    }
+
+    /**
+     * Macro playback target. Plain text commit by default.
+     */
+    protected InputListener getMacroInputListener() {
+        return (type, keyCode, text) -> {
+            InputConnection ic = getCurrentInputConnection();
+
+            if (ic != null && text != null) {
+                ic.commitText(text, 1);
+            }
+        };
+    }
+
+    /**
+     * NOTE: Used by {@link KeyMapperAutomationService} to reach the running keyboard
+     * @return service or null if keyboard isn't running
+     */
+    static KeyMapperImeService getRunningInstance() {
+        return sRunningInstance.get();
+    }
+
+    /**
+     * NOTE: Apply automation events in timestamp order inside one batch edit.<br/>
+     * Events with equal timestamps keep their order. Must be called on the main thread.
+     * @param types BATCH_EVENT_* constants
+     * @param timestamps event times of the sender (any monotonic clock)
+     * @param keyEvents key events (null for text events)
+     * @param texts texts (null for key events)
+     * @return number of applied events or -1 if there is no input connection
+     */
+    public int injectBatch(int[] types, long[] timestamps, Parcelable[] keyEvents, String[] texts) {
+        InputConnection ic = getCurrentInputConnection();
+
+        if (ic == null || types == null) {
+            return -1;
+        }
+
+        return applyBatch(ic, types, timestamps, keyEvents, texts);
+    }
+
+    /**
+     * NOTE: App re-posts key events through its view root, while the connection edits go straight to the editor.
+     * So text, delete and cursor keys are applied as the connection edits (in order with the texts).
+     * Other keys (enter, tab, d-pad up/down) are sent as key events, batch edit is closed around them.
+     */
+    static int applyBatch(InputConnection ic, int[] types, long[] timestamps, Parcelable[] keyEvents, String[] texts) {
+        int count = types.length;
+        Integer[] order = new Integer[count];
+
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+
+        if (timestamps != null && timestamps.length == count) {
+            // stable sort
+            Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+        }
+
+        int applied = 0;
+
+        ic.beginBatchEdit();
+        try {
+            for (int i : order) {
+                if (types[i] == BATCH_EVENT_TEXT) {
+                    String text = texts != null && i < texts.length ? texts[i] : null;
+
+                    if (text != null) {
+                        ic.commitText(text, 1);
+                        applied++;
+                    }
+
+                    continue;
+                }
+
+                Parcelable parcelable = keyEvents != null && i < keyEvents.length ? keyEvents[i] : null;
+
+                if (!(parcelable instanceof KeyEvent)) {
+                    continue;
+                }
+
+                KeyEvent event = (KeyEvent) parcelable;
+
+                switch (types[i]) {
+                    case BATCH_EVENT_KEY_DOWN_UP:
+                        if (!applyKeyAsEdit(ic, event)) {
+                            sendKeyEvents(ic, event, true, true);
+                        }
+                        applied++;
+                        break;
+                    case BATCH_EVENT_KEY_DOWN:
+                        if (!applyKeyAsEdit(ic, event)) {
+                            sendKeyEvents(ic, event, true, false);
+                        }
+                        applied++;
+                        break;
+                    case BATCH_EVENT_KEY_UP:
+                        // up of the key applied as an edit has nothing to do
+                        if (!isEditKey(event)) {
+                            sendKeyEvents(ic, event, false, true);
+                        }
+                        applied++;
+                        break;
+                }
+            }
+        } finally {
+            ic.endBatchEdit();
+        }
+
+        return applied;
+    }
+
+    /**
+     * NOTE: Key event may be applied by the app after the edits that follow it, so the batch is closed first
+     */
+    private static void sendKeyEvents(InputConnection ic, KeyEvent event, boolean down, boolean up) {
+        ic.endBatchEdit();
+
+        if (down) {
+            ic.sendKeyEvent(KeyEvent.changeAction(event, KeyEvent.ACTION_DOWN));
+        }
+
+        if (up) {
+            ic.sendKeyEvent(KeyEvent.changeAction(event, KeyEvent.ACTION_UP));
+        }
+
+        ic.beginBatchEdit();
+    }
+
+    /**
+     * @return true if the key is applied with {@link #applyKeyAsEdit(InputConnection, KeyEvent)}
+     */
+    private static boolean isEditKey(KeyEvent event) {
+        if ((event.getMetaState() & (KeyEvent.META_CTRL_ON | KeyEvent.META_ALT_ON | KeyEvent.META_META_ON)) != 0) {
+            return false;
+        }
+
+        switch (event.getKeyCode()) {
+            case KeyEvent.KEYCODE_DEL:
+            case KeyEvent.KEYCODE_FORWARD_DEL:
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                // shift extends the selection, only the app knows how
+                return !event.isShiftPressed();
+        }
+
+        int unicodeChar = event.getUnicodeChar();
+
+        return unicodeChar != 0 && (unicodeChar & KeyCharacterMap.COMBINING_ACCENT) == 0 && !Character.isISOControl(unicodeChar);
+    }
+
+    /**
+     * NOTE: Whole key press (down and up) is applied for the edit keys, their up events are skipped
+     * @return false if the key should be sent as a key event
+     */
+    private static boolean applyKeyAsEdit(InputConnection ic, KeyEvent event) {
+        if (!isEditKey(event)) {
+            return false;
+        }
+
+        switch (event.getKeyCode()) {
+            case KeyEvent.KEYCODE_DEL:
+                deleteChar(ic, true);
+                return true;
+            case KeyEvent.KEYCODE_FORWARD_DEL:
+                deleteChar(ic, false);
+                return true;
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+                if (!moveCursor(ic, event.getKeyCode() == KeyEvent.KEYCODE_DPAD_RIGHT)) {
+                    // unknown cursor position, let the app move it
+                    sendKeyEvents(ic, event, true, true);
+                }
+                return true;
+        }
+
+        ic.commitText(new String(Character.toChars(event.getUnicodeChar())), 1);
+        return true;
+    }
+
+    private static void deleteChar(InputConnection ic, boolean beforeCursor) {
+        if (!TextUtils.isEmpty(ic.getSelectedText(0))) {
+            ic.commitText("", 1);
+            return;
+        }
+
+        CharSequence text = beforeCursor ? ic.getTextBeforeCursor(2, 0) : ic.getTextAfterCursor(2, 0);
+
+        if (TextUtils.isEmpty(text)) {
+            return;
+        }
+
+        // don't split the surrogate pair
+        int length = text.length() == 2 && Character.isSurrogatePair(text.charAt(0), text.charAt(1)) ? 2 : 1;
+
+        ic.deleteSurroundingText(beforeCursor ? length : 0, beforeCursor ? 0 : length);
+    }
+
+    /**
+     * Collapse the selection or move the cursor by one char
+     * @return false if the editor doesn't report its text
+     */
+    private static boolean moveCursor(InputConnection ic, boolean forward) {
+        ExtractedText extracted = ic.getExtractedText(new ExtractedTextRequest(), 0);
+
+        if (extracted == null || extracted.text == null) {
+            return false;
+        }
+
+        CharSequence text = extracted.text;
+        int start = Math.min(extracted.selectionStart, extracted.selectionEnd);
+        int end = Math.max(extracted.selectionStart, extracted.selectionEnd);
+        int cursor;
+
+        if (start != end) {
+            cursor = forward ? end : start;
+        } else if (forward) {
+            cursor = Math.min(text.length(), end + 1);
+
+            if (cursor < text.length() && Character.isSurrogatePair(text.charAt(cursor - 1), text.charAt(cursor))) {
+                cursor++;
+            }
+        } else {
+            cursor = Math.max(0, start - 1);
+
+            if (cursor > 0 && Character.isSurrogatePair(text.charAt(cursor - 1), text.charAt(cursor))) {
+                cursor--;
+            }
+        }
+
+        ic.setSelection(extracted.startOffset + cursor, extracted.startOffset + cursor);
+        return true;
+    }
+
     @SuppressWarnings("UnspecifiedRegisterReceiverFlag")
     @Override
     public void onCreate() {
         super.onCreate();
 
-        IntentFilter intentFilter = new IntentFilter();
-        intentFilter.addAction(KEY_MAPPER_INPUT_METHOD_ACTION_INPUT_DOWN);
-        intentFilter.addAction(KEY_MAPPER_INPUT_METHOD_ACTION_INPUT_DOWN_UP);
-        intentFilter.addAction(KEY_MAPPER_INPUT_METHOD_ACTION_INPUT_UP);
-        intentFilter.addAction(KEY_MAPPER_INPUT_METHOD_ACTION_TEXT);
+        sRunningInstance = new WeakReference<>(this);
+        mMacroExecutor = Executors.newSingleThreadExecutor();
+        mMacroRecorder = new MacroRecorder(this, mMacroExecutor);
 
+        IntentFilter inputFilter = new IntentFilter();
+        inputFilter.addAction(KEY_MAPPER_INPUT_METHOD_ACTION_INPUT_DOWN);
+        inputFilter.addAction(KEY_MAPPER_INPUT_METHOD_ACTION_INPUT_DOWN_UP);
+        inputFilter.addAction(KEY_MAPPER_INPUT_METHOD_ACTION_INPUT_UP);
+        inputFilter.addAction(KEY_MAPPER_INPUT_METHOD_ACTION_TEXT);
 
         //add action to listen to GoogleVoiceInputActivity
+        IntentFilter intentFilter = new IntentFilter();
         intentFilter.addAction(ACTION_VOICE_TO_TEXT);
 
+        IntentFilter macroFilter = new IntentFilter();
+        macroFilter.addAction(MACRO_ACTION_RECORD);
+        macroFilter.addAction(MACRO_ACTION_STOP);
+        macroFilter.addAction(MACRO_ACTION_PLAY);
+
+        // same permission for all the injection paths, see KeyMapperAutomationService
+        String permission = KeyMapperAutomationService.PERMISSION_INJECT_INPUT;
 
         if (VERSION.SDK_INT < 33) {
             registerReceiver(mBroadcastReceiver, intentFilter);
+            registerReceiver(mInputReceiver, inputFilter, permission, null);
+            registerReceiver(mMacroReceiver, macroFilter, permission, null);
         } else {
             registerReceiver(mBroadcastReceiver, intentFilter, RECEIVER_EXPORTED);
+            registerReceiver(mInputReceiver, inputFilter, permission, null, RECEIVER_EXPORTED);
+            registerReceiver(mMacroReceiver, macroFilter, permission, null, RECEIVER_EXPORTED);
         }
     }
 
@@ -156,6 +669,21 @@ public class KeyMapperImeService extends InputMethodService {
     public void onDestroy() {
         super.onDestroy();
 
+        mHandler.removeCallbacks(mCommitQueuedVoice);
+        mHandler.removeCallbacks(mDropQueuedVoice);
+
+        if (mMacroPlayer != null) {
+            mMacroPlayer.stop();
+        }
+
+        if (sRunningInstance.get() == this) {
+            sRunningInstance.clear();
+        }
+
         unregisterReceiver(mBroadcastReceiver);
+        unregisterReceiver(mInputReceiver);
+        unregisterReceiver(mMacroReceiver);
+        // pending save of the recorded macro still completes
+        mMacroExecutor.shutdown();
     }
 }
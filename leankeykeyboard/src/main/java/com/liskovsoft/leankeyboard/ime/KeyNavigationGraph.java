@@ -0,0 +1,134 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.Keyboard.Key;
+
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * NOTE: D-pad neighbour table of the {@link Keyboard}.<br/>
+ * Built once per layout from the {@link KeySpatialIndex}, so every D-pad press is an array lookup.<br/>
+ * Besides key indexes the table contains links to the action button and the suggestion row.
+ */
+public class KeyNavigationGraph {
+    /**
+     * There is no neighbour in this direction (focus stays on the same key)
+     */
+    public static final int NAV_NONE = -1;
+    /**
+     * Neighbour is the action button (Go, Send, Search etc)
+     */
+    public static final int NAV_ACTION = -2;
+    /**
+     * Neighbour is the suggestion row
+     */
+    public static final int NAV_SUGGESTIONS = -3;
+    private static final int SLOT_UP = 0;
+    private static final int SLOT_DOWN = 1;
+    private static final int SLOT_LEFT = 2;
+    private static final int SLOT_RIGHT = 3;
+    private static final int SLOT_COUNT = 4;
+    private static final Map<Keyboard, KeyNavigationGraph> sCache = new WeakHashMap<>();
+    private final int[] mNeighbours;
+    private final int[] mCyclicNeighbours;
+    private final int mKeyCount;
+
+    /**
+     * Get graph for the keyboard. Graph is built once and cached while keyboard is alive.
+     * @param keyboard source keyboard
+     * @return navigation graph
+     */
+    public static KeyNavigationGraph forKeyboard(Keyboard keyboard) {
+        synchronized (sCache) {
+            KeyNavigationGraph graph = sCache.get(keyboard);
+
+            if (graph == null) {
+                ImeDiagnostics.NAV_GRAPH.miss();
+                graph = new KeyNavigationGraph(keyboard.getKeys(), KeySpatialIndex.forKeyboard(keyboard));
+                sCache.put(keyboard, graph);
+            } else {
+                ImeDiagnostics.NAV_GRAPH.hit();
+            }
+
+            return graph;
+        }
+    }
+
+    public KeyNavigationGraph(List<Key> keys, KeySpatialIndex index) {
+        mKeyCount = index.getKeyCount();
+        mNeighbours = new int[mKeyCount * SLOT_COUNT];
+        mCyclicNeighbours = new int[mKeyCount * SLOT_COUNT];
+
+        final int lastRow = index.getRowCount() - 1;
+
+        for (int i = 0; i < mKeyCount; i++) {
+            Key key = keys.get(i);
+            final float centerX = key.x + key.width / 2.0F;
+            final int row = index.getRow(i);
+            final int col = index.getCol(i);
+            final int lastCol = index.getRowSize(row) - 1;
+            final int base = i * SLOT_COUNT;
+
+            mNeighbours[base + SLOT_UP] = row > 0 ? index.getKeyIndex(row - 1, index.getNearestCol(row - 1, centerX)) : NAV_SUGGESTIONS;
+            mNeighbours[base + SLOT_DOWN] = row < lastRow ? index.getKeyIndex(row + 1, index.getNearestCol(row + 1, centerX)) : NAV_NONE;
+            mNeighbours[base + SLOT_LEFT] = col > 0 ? index.getKeyIndex(row, col - 1) : NAV_NONE;
+            mNeighbours[base + SLOT_RIGHT] = col < lastCol ? index.getKeyIndex(row, col + 1) : NAV_ACTION;
+
+            // cyclic navigation: jump to the opposite edge of the keyboard
+            mCyclicNeighbours[base + SLOT_UP] = index.getKeyIndex(lastRow, index.getNearestCol(lastRow, centerX));
+            mCyclicNeighbours[base + SLOT_DOWN] = index.getKeyIndex(0, index.getNearestCol(0, centerX));
+            mCyclicNeighbours[base + SLOT_LEFT] = index.getKeyIndex(row, lastCol);
+            mCyclicNeighbours[base + SLOT_RIGHT] = index.getKeyIndex(row, 0);
+        }
+    }
+
+    /**
+     * Get neighbour of the key
+     * @param keyIndex key index
+     * @param direction constant e.g. {@link LeanbackKeyboardContainer#DIRECTION_UP LeanbackKeyboardContainer.DIRECTION_UP}
+     * @return key index or one of the {@link #NAV_NONE NAV_NONE}, {@link #NAV_ACTION NAV_ACTION},
+     * {@link #NAV_SUGGESTIONS NAV_SUGGESTIONS} constants
+     */
+    public int getNeighbour(int keyIndex, int direction) {
+        return lookup(mNeighbours, keyIndex, direction);
+    }
+
+    /**
+     * Get key at the opposite edge of the keyboard (used by cyclic navigation)
+     * @param keyIndex key index
+     * @param direction constant e.g. {@link LeanbackKeyboardContainer#DIRECTION_UP LeanbackKeyboardContainer.DIRECTION_UP}
+     * @return key index or {@link #NAV_NONE NAV_NONE}
+     */
+    public int getCyclicNeighbour(int keyIndex, int direction) {
+        return lookup(mCyclicNeighbours, keyIndex, direction);
+    }
+
+    private int lookup(int[] table, int keyIndex, int direction) {
+        if (keyIndex < 0 || keyIndex >= mKeyCount) {
+            return NAV_NONE;
+        }
+
+        int slot;
+
+        switch (direction) {
+            case LeanbackKeyboardContainer.DIRECTION_UP:
+                slot = SLOT_UP;
+                break;
+            case LeanbackKeyboardContainer.DIRECTION_DOWN:
+                slot = SLOT_DOWN;
+                break;
+            case LeanbackKeyboardContainer.DIRECTION_LEFT:
+                slot = SLOT_LEFT;
+                break;
+            case LeanbackKeyboardContainer.DIRECTION_RIGHT:
+                slot = SLOT_RIGHT;
+                break;
+            default:
+                return NAV_NONE;
+        }
+
+        return table[keyIndex * SLOT_COUNT + slot];
+    }
+}
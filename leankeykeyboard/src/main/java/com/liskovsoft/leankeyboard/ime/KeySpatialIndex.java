@@ -0,0 +1,208 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.Keyboard.Key;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * NOTE: Nearest key lookup built from the real key rects of the {@link Keyboard}.<br/>
+ * Keys are bucketed into rows by their top edge and every row is sorted by the left edge.<br/>
+ * Lookup is two binary searches, so it works for any key widths (azerty, ko_kr, th, add-on layouts).
+ */
+public class KeySpatialIndex {
+    private static final Map<Keyboard, KeySpatialIndex> sCache = new WeakHashMap<>();
+    private final int[] mRowTops;
+    private final int[] mRowBottoms;
+    private final int[][] mRowLefts;
+    private final int[][] mRowRights;
+    private final int[][] mRowKeys;
+    private final int[] mKeyRows;
+    private final int[] mKeyCols;
+
+    /**
+     * Get index for the keyboard. Index is built once and cached while keyboard is alive.
+     * @param keyboard source keyboard
+     * @return spatial index
+     */
+    public static KeySpatialIndex forKeyboard(Keyboard keyboard) {
+        synchronized (sCache) {
+            KeySpatialIndex index = sCache.get(keyboard);
+
+            if (index == null) {
+                ImeDiagnostics.SPATIAL_INDEX.miss();
+                index = new KeySpatialIndex(keyboard.getKeys());
+                sCache.put(keyboard, index);
+            } else {
+                ImeDiagnostics.SPATIAL_INDEX.hit();
+            }
+
+            return index;
+        }
+    }
+
+    public KeySpatialIndex(List<Key> keys) {
+        final int total = keys.size();
+        Integer[] order = new Integer[total];
+
+        for (int i = 0; i < total; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (a, b) -> {
+            Key keyA = keys.get(a);
+            Key keyB = keys.get(b);
+            return keyA.y != keyB.y ? Integer.compare(keyA.y, keyB.y) : Integer.compare(keyA.x, keyB.x);
+        });
+
+        List<List<Integer>> rows = new ArrayList<>();
+        List<Integer> row = null;
+        int rowTop = Integer.MIN_VALUE;
+
+        for (Integer keyIndex : order) {
+            Key key = keys.get(keyIndex);
+            if (row == null || key.y != rowTop) {
+                row = new ArrayList<>();
+                rows.add(row);
+                rowTop = key.y;
+            }
+            row.add(keyIndex);
+        }
+
+        final int rowCount = rows.size();
+        mRowTops = new int[rowCount];
+        mRowBottoms = new int[rowCount];
+        mRowLefts = new int[rowCount][];
+        mRowRights = new int[rowCount][];
+        mRowKeys = new int[rowCount][];
+        mKeyRows = new int[total];
+        mKeyCols = new int[total];
+
+        for (int r = 0; r < rowCount; r++) {
+            List<Integer> rowKeys = rows.get(r);
+            final int size = rowKeys.size();
+            mRowLefts[r] = new int[size];
+            mRowRights[r] = new int[size];
+            mRowKeys[r] = new int[size];
+            mRowTops[r] = keys.get(rowKeys.get(0)).y;
+
+            int bottom = mRowTops[r];
+
+            for (int c = 0; c < size; c++) {
+                int keyIndex = rowKeys.get(c);
+                Key key = keys.get(keyIndex);
+                mRowLefts[r][c] = key.x;
+                mRowRights[r][c] = key.x + key.width;
+                mRowKeys[r][c] = keyIndex;
+                mKeyRows[keyIndex] = r;
+                mKeyCols[keyIndex] = c;
+                bottom = Math.max(bottom, key.y + key.height);
+            }
+
+            mRowBottoms[r] = bottom;
+        }
+    }
+
+    /**
+     * Get index of the key nearest to the point
+     * @param x x position relative to the keyboard content
+     * @param y y position relative to the keyboard content
+     * @return key index or -1 if keyboard is empty
+     */
+    public int getNearestIndex(final float x, final float y) {
+        int row = getNearestRow(y);
+
+        if (row == -1) {
+            return -1;
+        }
+
+        return mRowKeys[row][getNearestCol(row, x)];
+    }
+
+    /**
+     * Get row which is nearest to the y position
+     * @param y y position relative to the keyboard content
+     * @return row number or -1 if keyboard is empty
+     */
+    public int getNearestRow(final float y) {
+        return nearest(mRowTops, mRowBottoms, y);
+    }
+
+    /**
+     * Get position inside the row which is nearest to the x position
+     * @param row row number
+     * @param x x position relative to the keyboard content
+     * @return position inside the row
+     */
+    public int getNearestCol(final int row, final float x) {
+        return nearest(mRowLefts[row], mRowRights[row], x);
+    }
+
+    public int getRowCount() {
+        return mRowTops.length;
+    }
+
+    public int getRowSize(int row) {
+        return mRowKeys[row].length;
+    }
+
+    public int getKeyIndex(int row, int col) {
+        return mRowKeys[row][col];
+    }
+
+    public int getRow(int keyIndex) {
+        return mKeyRows[keyIndex];
+    }
+
+    public int getCol(int keyIndex) {
+        return mKeyCols[keyIndex];
+    }
+
+    public int getKeyCount() {
+        return mKeyRows.length;
+    }
+
+    /**
+     * Binary search over sorted intervals
+     * @return index of the interval nearest to the value or -1 if there are no intervals
+     */
+    private static int nearest(int[] starts, int[] ends, float value) {
+        if (starts.length == 0) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = starts.length - 1;
+
+        // find last interval that starts before the value
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= value) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        if (low + 1 < starts.length &&
+                distance(value, starts[low + 1], ends[low + 1]) < distance(value, starts[low], ends[low])) {
+            return low + 1;
+        }
+
+        return low;
+    }
+
+    private static float distance(float value, int start, int end) {
+        if (value < start) {
+            return start - value;
+        } else if (value > end) {
+            return value - end;
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,83 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.content.Context;
+import android.text.TextUtils;
+import com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards.ResKeyboardInfo;
+import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
+
+/**
+ * NOTE: Settings the keyboards were built from.<br/>
+ * Compare with the fresh copy to find out what should be rebuilt after the settings screen.
+ */
+public final class KeyboardSettings {
+    public static final int CHANGED_NONE = 0;
+    /**
+     * Colors only, keyboards stay the same
+     */
+    public static final int CHANGED_THEME = 1;
+    /**
+     * Enabled layouts or keys size: keyboards should be rebuilt
+     */
+    public static final int CHANGED_LAYOUTS = 1 << 1;
+    /**
+     * Flags of the service (suggestions, keep on screen, gesture typing)
+     */
+    public static final int CHANGED_FLAGS = 1 << 2;
+    public static final int CHANGED_ALL = CHANGED_THEME | CHANGED_LAYOUTS | CHANGED_FLAGS;
+    private final String mThemeId;
+    private final int mLayoutsVersion;
+    private final boolean mEnlargeKeyboard;
+    private final boolean mSuggestionsEnabled;
+    private final boolean mForceShowKeyboard;
+    private final boolean mGestureTypingEnabled;
+
+    private KeyboardSettings(String themeId, int layoutsVersion, boolean enlargeKeyboard, boolean suggestionsEnabled,
+                             boolean forceShowKeyboard, boolean gestureTypingEnabled) {
+        mThemeId = themeId;
+        mLayoutsVersion = layoutsVersion;
+        mEnlargeKeyboard = enlargeKeyboard;
+        mSuggestionsEnabled = suggestionsEnabled;
+        mForceShowKeyboard = forceShowKeyboard;
+        mGestureTypingEnabled = gestureTypingEnabled;
+    }
+
+    public static KeyboardSettings read(Context context) {
+        LeanKeyPreferences.Snapshot prefs = LeanKeyPreferences.instance(context).getSnapshot();
+
+        return new KeyboardSettings(
+                prefs.currentTheme,
+                ResKeyboardInfo.getLayoutsVersion(),
+                prefs.enlargeKeyboard,
+                prefs.suggestionsEnabled,
+                prefs.forceShowKeyboard,
+                prefs.gestureTypingEnabled
+        );
+    }
+
+    /**
+     * @param old settings the keyboards were built from or null if unknown
+     * @return {@link #CHANGED_NONE} or combination of the CHANGED_* flags
+     */
+    public int diff(KeyboardSettings old) {
+        if (old == null) {
+            return CHANGED_ALL;
+        }
+
+        int changes = CHANGED_NONE;
+
+        if (!TextUtils.equals(mThemeId, old.mThemeId)) {
+            changes |= CHANGED_THEME;
+        }
+
+        if (mLayoutsVersion != old.mLayoutsVersion || mEnlargeKeyboard != old.mEnlargeKeyboard) {
+            changes |= CHANGED_LAYOUTS;
+        }
+
+        if (mSuggestionsEnabled != old.mSuggestionsEnabled || mForceShowKeyboard != old.mForceShowKeyboard ||
+                mGestureTypingEnabled != old.mGestureTypingEnabled) {
+            changes |= CHANGED_FLAGS;
+        }
+
+        return changes;
+    }
+}
@@ -0,0 +1,236 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.os.SystemClock;
+import com.liskovsoft.leankeykeyboard.BuildConfig;
+
+import java.io.PrintWriter;
+
+/**
+ * NOTE: Per keystroke latency tracing: from the key event time to the candidates update.<br/>
+ * Stage times go into the preallocated ring buffer, latencies of every stage (counted from the key event)
+ * into the {@link LatencyHistogram histograms}.<br/>
+ * Percentiles are written to the EventLog ({@link EventLogTags}) on dump, per keystroke totals in debug builds only
+ * (every EventLog entry boxes its values). Dump: <br/>
+ * adb shell dumpsys activity service com.liskovsoft.leankeykeyboard/com.liskovsoft.leankeyboard.ime.LeanbackImeService<br/>
+ * NOTE: Stages are marked on the main thread only.<br/>
+ * NOTE: Candidates come from the background query, so the trace is {@link #defer() deferred}
+ * and finished by the posted update.
+ */
+public final class KeystrokeTracer {
+    public static final int STAGE_KEY_EVENT = 0;
+    public static final int STAGE_COMMIT_KEY = 1;
+    public static final int STAGE_TEXT_ENTRY = 2;
+    /**
+     * Includes the Vietnamese engine: it edits the field itself
+     */
+    public static final int STAGE_CONNECTION = 3;
+    public static final int STAGE_CANDIDATES = 4;
+    private static final int STAGE_COUNT = 5;
+    private static final String[] STAGE_NAMES = {"key event", "commit key", "text entry", "input connection", "candidates"};
+    private static final int CAPACITY = 256;
+    private static final int DUMP_TRACES = 20;
+    private static final long NANOS_PER_MS = 1_000_000L;
+    private static final long NANOS_PER_US = 1_000L;
+    private static final long[] sStageNanos = new long[CAPACITY * STAGE_COUNT];
+    private static final LatencyHistogram[] sStageHistograms = new LatencyHistogram[STAGE_COUNT];
+    private static final long[] sTraceIds = new long[CAPACITY];
+    private static final LatencyHistogram sSuggestionQueryHistogram = new LatencyHistogram();
+    private static int sHead;
+    private static long sLastTraceId;
+    private static long sTraceCount;
+    private static boolean sActive;
+    private static boolean sDeferred;
+
+    static {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            sStageHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    private KeystrokeTracer() {
+    }
+
+    /**
+     * Start new trace
+     * @param eventTimeMs {@link android.view.KeyEvent#getEventTime()} (uptime based)
+     */
+    public static void begin(long eventTimeMs) {
+        long nowNanos = System.nanoTime();
+        long eventNanos = nowNanos - (SystemClock.uptimeMillis() - eventTimeMs) * NANOS_PER_MS;
+
+        if (!sActive || sDeferred) {
+            // unfinished trace (e.g. D-pad move) is overwritten
+            sLastTraceId++;
+            sHead = (int) (sLastTraceId % CAPACITY);
+            sTraceIds[sHead] = sLastTraceId;
+        }
+
+        int base = sHead * STAGE_COUNT;
+
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            sStageNanos[base + i] = 0;
+        }
+
+        sStageNanos[base + STAGE_KEY_EVENT] = Math.min(eventNanos, nowNanos);
+        sActive = true;
+        sDeferred = false;
+    }
+
+    /**
+     * Mark the end of the stage. Trace is started if there's no key event (e.g. touch input).
+     */
+    public static void mark(int stage) {
+        if (!sActive) {
+            begin(SystemClock.uptimeMillis());
+        }
+
+        sStageNanos[sHead * STAGE_COUNT + stage] = System.nanoTime();
+    }
+
+    /**
+     * Mark the end of the stage of the {@link #defer() deferred} trace
+     */
+    public static void mark(long traceId, int stage) {
+        if (isRecording(traceId)) {
+            sStageNanos[(int) (traceId % CAPACITY) * STAGE_COUNT + stage] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Keep current trace open after {@link #end()}, e.g. till the candidates from the background query are shown
+     * @return trace id or 0 if there's no trace
+     */
+    public static long defer() {
+        if (!sActive) {
+            return 0;
+        }
+
+        sDeferred = true;
+        return sTraceIds[sHead];
+    }
+
+    /**
+     * Finish current trace and record its latencies
+     */
+    public static void end() {
+        if (!sActive) {
+            return;
+        }
+
+        sActive = false;
+
+        if (sDeferred) {
+            sDeferred = false;
+            return;
+        }
+
+        record(sHead);
+    }
+
+    /**
+     * Finish the {@link #defer() deferred} trace. Does nothing if it's already finished or overwritten.
+     */
+    public static void end(long traceId) {
+        if (isRecording(traceId)) {
+            record((int) (traceId % CAPACITY));
+        }
+    }
+
+    private static boolean isRecording(long traceId) {
+        return traceId != 0 && sTraceIds[(int) (traceId % CAPACITY)] == traceId;
+    }
+
+    private static void record(int slot) {
+        sTraceIds[slot] = 0;
+        sTraceCount++;
+
+        int base = slot * STAGE_COUNT;
+        long startNanos = sStageNanos[base + STAGE_KEY_EVENT];
+        long lastNanos = startNanos;
+
+        for (int i = STAGE_KEY_EVENT + 1; i < STAGE_COUNT; i++) {
+            long stageNanos = sStageNanos[base + i];
+
+            if (stageNanos != 0) {
+                sStageHistograms[i].record((stageNanos - startNanos) / NANOS_PER_US);
+                lastNanos = Math.max(lastNanos, stageNanos);
+            }
+        }
+
+        if (BuildConfig.DEBUG) {
+            EventLogTags.writeTimeLeanbackImeInput(startNanos / NANOS_PER_MS, (lastNanos - startNanos) / NANOS_PER_MS);
+        }
+    }
+
+    /**
+     * Latency of the dictionary query (any thread)
+     */
+    public static void recordSuggestionQuery(long durationNanos) {
+        sSuggestionQueryHistogram.record(durationNanos / NANOS_PER_US);
+    }
+
+    /**
+     * Latency from the key event to the end of the stage
+     */
+    public static LatencyHistogram getStageHistogram(int stage) {
+        return sStageHistograms[stage];
+    }
+
+    public static LatencyHistogram getSuggestionQueryHistogram() {
+        return sSuggestionQueryHistogram;
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : sStageHistograms) {
+            histogram.reset();
+        }
+
+        sSuggestionQueryHistogram.reset();
+        sTraceCount = 0;
+    }
+
+    /**
+     * Print percentiles and the last traces, write percentiles to the EventLog
+     */
+    public static void dump(PrintWriter pw) {
+        pw.println("Keystroke latency (from key event, us), traces: " + sTraceCount);
+
+        for (int i = STAGE_KEY_EVENT + 1; i < STAGE_COUNT; i++) {
+            dumpHistogram(pw, i, STAGE_NAMES[i], sStageHistograms[i]);
+        }
+
+        dumpHistogram(pw, STAGE_COUNT, "suggestion query", sSuggestionQueryHistogram);
+
+        pw.println("Last traces (us from key event):");
+
+        int traces = (int) Math.min(DUMP_TRACES, Math.min(sTraceCount, CAPACITY));
+
+        for (int t = 0; t < traces; t++) {
+            int base = ((sHead - t + CAPACITY) % CAPACITY) * STAGE_COUNT;
+            long startNanos = sStageNanos[base + STAGE_KEY_EVENT];
+            StringBuilder line = new StringBuilder("  ");
+
+            for (int i = STAGE_KEY_EVENT + 1; i < STAGE_COUNT; i++) {
+                long stageNanos = sStageNanos[base + i];
+                line.append(STAGE_NAMES[i]).append('=')
+                    .append(stageNanos != 0 ? String.valueOf((stageNanos - startNanos) / NANOS_PER_US) : "-")
+                    .append(' ');
+            }
+
+            pw.println(line);
+        }
+    }
+
+    private static void dumpHistogram(PrintWriter pw, int stage, String name, LatencyHistogram histogram) {
+        long p50 = histogram.getPercentileUs(50);
+        long p95 = histogram.getPercentileUs(95);
+        long p99 = histogram.getPercentileUs(99);
+
+        pw.println(String.format("  %s: count=%s p50=%s p95=%s p99=%s max=%s",
+                name, histogram.getCount(), p50, p95, p99, histogram.getMaxUs()));
+
+        if (histogram.getCount() > 0) {
+            EventLogTags.writeLeanbackImeLatency(stage, p50, p95, p99, histogram.getCount());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.liskovsoft.leankeyboard.ime;
+
+/**
+ * NOTE: Fixed size log-linear histogram of latencies in microseconds (HDR style).<br/>
+ * Each power of two range is split into {@link #SUB_BUCKETS} buckets, so relative error is below 12.5%.<br/>
+ * No allocations after creation.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Values below this are counted exactly
+     */
+    private static final int LINEAR_LIMIT = SUB_BUCKETS << 1;
+    private static final int MAX_SHIFT = 34;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + MAX_SHIFT * SUB_BUCKETS;
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mTotalCount;
+    private long mMaxUs;
+
+    public synchronized void record(long valueUs) {
+        if (valueUs < 0) {
+            return;
+        }
+
+        mCounts[getBucketIndex(valueUs)]++;
+        mTotalCount++;
+        mMaxUs = Math.max(mMaxUs, valueUs);
+    }
+
+    public synchronized long getCount() {
+        return mTotalCount;
+    }
+
+    public synchronized long getMaxUs() {
+        return mMaxUs;
+    }
+
+    /**
+     * @param percentile 0-100
+     * @return upper bound of the bucket that contains the percentile or 0 if empty
+     */
+    public synchronized long getPercentileUs(double percentile) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(mTotalCount * percentile / 100));
+        long count = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += mCounts[i];
+
+            if (count >= target) {
+                return Math.min(getBucketUpperBound(i), mMaxUs);
+            }
+        }
+
+        return mMaxUs;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+
+        mTotalCount = 0;
+        mMaxUs = 0;
+    }
+
+    private static int getBucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = Math.min(msb - SUB_BUCKET_BITS, MAX_SHIFT);
+        int subBucket = (int) Math.min((value >>> shift) & (SUB_BUCKETS - 1), SUB_BUCKETS - 1);
+
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long getBucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+
+        return ((long) (SUB_BUCKETS | subBucket) << shift) + (1L << shift) - 1;
+    }
+}
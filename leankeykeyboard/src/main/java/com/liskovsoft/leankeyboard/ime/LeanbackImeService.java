@@ -10,27 +10,39 @@ import android.os.Build.VERSION;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.text.TextUtils;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.InputDevice;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.inputmethod.CompletionInfo;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputConnection;
 import android.widget.Toast;
 
+import androidx.core.os.TraceCompat;
 import androidx.core.text.BidiFormatter;
 
+import com.liskovsoft.leankeyboard.addons.dictionary.DictionaryPacks;
+import com.liskovsoft.leankeyboard.addons.dictionary.MappedWordList;
+import com.liskovsoft.leankeyboard.addons.dictionary.UserDictionary;
 import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardManager;
 import com.liskovsoft.leankeyboard.addons.keyboards.intkeyboards.ResKeyboardInfo;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardController.InputListener;
+import com.liskovsoft.leankeyboard.ime.gesture.GestureDictionary;
 import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -41,10 +53,20 @@ public class LeanbackImeService extends KeyMapperImeService {
     public static final String IME_CLOSE = "com.google.android.athome.action.IME_CLOSE";
     public static final String IME_OPEN = "com.google.android.athome.action.IME_OPEN";
     public static final int MAX_SUGGESTIONS = 10;
+    private static final int MAX_DICTIONARY_SUGGESTIONS = 8;
+    /**
+     * Rank of the add-on pack words for the gesture decoder: packs don't have frequencies
+     */
+    private static final int GESTURE_PACK_RANK = 1000;
     static final int MODE_FREE_MOVEMENT = 1;
     static final int MODE_TRACKPAD_NAVIGATION = 0;
     private static final int MSG_SUGGESTIONS_CLEAR = 123;
     private static final int SUGGESTIONS_CLEAR_DELAY = 1000;
+    /**
+     * Fallback for editors that don't report the selection. Longer than the key repeat interval (~50 ms).
+     */
+    private static final long PENDING_EDITS_TIMEOUT_MS = 100;
+    private static final long SUGGESTIONS_REFRESH_DELAY_MS = 150;
     private boolean mEnterSpaceBeforeCommitting;
     private View mInputView;
     private LeanbackKeyboardController mKeyboardController;
@@ -53,9 +75,35 @@ public class LeanbackImeService extends KeyMapperImeService {
     public static final String COMMAND_RESTART = "restart";
     private boolean mForceShowKbd;
     private DatabaseHelper dbHelper;
+    private DictionaryPacks mDictionaryPacks;
     private ExecutorService executorService;
     private Handler mainThreadHandler;
     private Future<?> suggestionFuture;
+    private long mSuggestionTraceId;
+    private final EditorMirror mEditorMirror = new EditorMirror();
+    private final CacheRegistry mCacheRegistry = new CacheRegistry();
+    /**
+     * Language of the gesture dictionary passed to the controller
+     */
+    private String mGestureLangCode;
+    /**
+     * Gesture dictionary has been dropped on memory pressure
+     */
+    private boolean mGestureDictionaryReleased;
+    private InputPolicy mInputPolicy = InputPolicy.DEFAULT;
+    private KeyboardSettings mKeyboardSettings;
+    /**
+     * Partial voice result is shown as composing text
+     */
+    private boolean mVoiceComposing;
+    private String mVoicePrefix = "";
+    private int mSessionBackspaces;
+    private int mPendingDeletes;
+    private int mPendingCursorMoves;
+    private boolean mPendingEditsScheduled;
+    private boolean mRefreshAfterDelete;
+    private final Runnable mFlushPendingEdits = this::flushPendingEdits;
+    private final Runnable mRefreshAfterRepeat = this::refreshSuggestionsAfterRepeat;
     LeanbackKeyboardContainer mContainer;
 
     @SuppressLint("HandlerLeak")
@@ -71,6 +119,7 @@ public class LeanbackImeService extends KeyMapperImeService {
     };
 
     private InputListener mInputListener = this::handleTextEntry;
+    private final UserDictionary.OnImportListener mUserWordsListener = this::rebuildGestureDictionary;
 
     @SuppressLint("NewApi")
     @SuppressWarnings("deprecation")
@@ -86,10 +135,175 @@ public class LeanbackImeService extends KeyMapperImeService {
         super.onCreate();
 
         Log.d(TAG, "onCreate");
+        ImeDiagnostics.beginColdStart();
+        TraceCompat.beginSection("LeanKey.onCreate");
         initSettings();
+        // NOTE: no disk access here, database is opened by the deferred stage
         dbHelper = new DatabaseHelper(this);
+        mDictionaryPacks = new DictionaryPacks(this);
         executorService = Executors.newSingleThreadExecutor();
         mainThreadHandler = new Handler(Looper.getMainLooper());
+        registerCaches();
+        UserDictionary.instance(this).addOnImportListener(mUserWordsListener);
+        TraceCompat.endSection();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        UserDictionary.instance(this).removeOnImportListener(mUserWordsListener);
+        mainThreadHandler.removeCallbacksAndMessages(null);
+
+        if (suggestionFuture != null) {
+            suggestionFuture.cancel(true);
+        }
+
+        // queued tasks still use the dictionaries, so they're closed on the query thread after them
+        executorService.execute(() -> {
+            mDictionaryPacks.release();
+            dbHelper.close();
+        });
+        executorService.shutdown();
+    }
+
+    /**
+     * NOTE: Startup work that isn't needed for the first keyboard frame.<br/>
+     * Dictionary opens on the query thread (first run copies it from the assets),
+     * non-current layouts are built on the shared background pool.
+     */
+    private void runDeferredStartup() {
+        executorService.execute(() -> {
+            TraceCompat.beginSection("LeanKey.openDictionary");
+            try {
+                dbHelper.getReadableDatabase();
+            } catch (Exception e) {
+                Log.e(TAG, "Can't open dictionary", e);
+            }
+            TraceCompat.endSection();
+        });
+
+        if (mKeyboardController != null) {
+            mKeyboardController.preloadKeyboards();
+        }
+
+        updateGestureTyping();
+    }
+
+    /**
+     * NOTE: Gesture dictionary is built on the query thread (owner of the database and packs) once per language
+     */
+    private void updateGestureTyping() {
+        if (mKeyboardController == null) {
+            return;
+        }
+
+        boolean enabled = LeanKeyPreferences.instance(this).isGestureTypingEnabled();
+        mKeyboardController.setGestureTypingEnabled(enabled);
+
+        final String langCode = KeyboardManager.getGlobalCurrentLangCode();
+
+        if (!enabled) {
+            // free the trie, it's rebuilt when enabled again
+            mGestureLangCode = null;
+            mKeyboardController.setGestureDictionary(null);
+            return;
+        }
+
+        if (Objects.equals(langCode, mGestureLangCode)) {
+            return;
+        }
+
+        mGestureLangCode = langCode;
+
+        executorService.execute(() -> {
+            TraceCompat.beginSection("LeanKey.buildGestureDictionary");
+            GestureDictionary dictionary = buildGestureDictionary(langCode);
+            TraceCompat.endSection();
+
+            mainThreadHandler.post(() -> {
+                if (mKeyboardController != null && Objects.equals(langCode, mGestureLangCode)) {
+                    mKeyboardController.setGestureDictionary(dictionary);
+                }
+            });
+        });
+    }
+
+    /**
+     * NOTE: Imported user words are copied into the trie, so it's built again (current one is used until then)
+     */
+    private void rebuildGestureDictionary() {
+        mGestureLangCode = null;
+        updateGestureTyping();
+    }
+
+    /**
+     * User words, then installed pack or bundled database (same sources as the suggestions)
+     */
+    private GestureDictionary buildGestureDictionary(String langCode) {
+        long startMs = System.currentTimeMillis();
+        GestureDictionary dictionary = new GestureDictionary();
+        MappedWordList userWords = UserDictionary.instance(this).getWordList();
+
+        if (userWords != null) {
+            for (int i = 0; i < userWords.size(); i++) {
+                dictionary.add(userWords.getKeyAt(i), userWords.getWordAt(i), 0);
+            }
+        }
+
+        MappedWordList pack = mDictionaryPacks.get(langCode);
+
+        if (pack != null) {
+            for (int i = 0; i < pack.size(); i++) {
+                dictionary.add(pack.getKeyAt(i), pack.getWordAt(i), GESTURE_PACK_RANK);
+            }
+        } else {
+            dbHelper.forEachSingleWord(dictionary::add);
+        }
+
+        Log.d(TAG, "Gesture dictionary " + langCode + ": " + dictionary.getWordCount() + " words in " +
+                (System.currentTimeMillis() - startMs) + " ms");
+
+        return dictionary;
+    }
+
+    /**
+     * NOTE: Everything here is rebuilt lazily: keys on the next show, layouts on switch, dictionary on the next query.
+     */
+    private void registerCaches() {
+        mCacheRegistry.register(CacheRegistry.STAGE_BITMAPS, "key images", () -> {
+            if (mKeyboardController != null) {
+                mKeyboardController.releaseKeyImages();
+            }
+        });
+        mCacheRegistry.register(CacheRegistry.STAGE_LAYOUTS, "inactive layouts", () -> {
+            if (mKeyboardController != null) {
+                mKeyboardController.releaseInactiveKeyboards();
+            }
+        });
+        // same thread as the queries, so connection isn't closed in the middle of one
+        mCacheRegistry.register(CacheRegistry.STAGE_DICTIONARY, "dictionary", () -> executorService.execute(() -> {
+            dbHelper.close();
+            mDictionaryPacks.release();
+            UserDictionary.instance(this).release();
+            SQLiteDatabase.releaseMemory();
+        }));
+        mCacheRegistry.register(CacheRegistry.STAGE_DICTIONARY, "gesture dictionary", () -> {
+            // rebuilt by the next input view if gesture typing is still on
+            mGestureLangCode = null;
+            mGestureDictionaryReleased = true;
+
+            if (mKeyboardController != null) {
+                mKeyboardController.setGestureDictionary(null);
+            }
+        });
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        mCacheRegistry.onTrimMemory(level, isInputViewShown());
     }
 
     private void setupDensity() {
@@ -108,6 +322,7 @@ public class LeanbackImeService extends KeyMapperImeService {
 
         if (mKeyboardController != null) {
             mKeyboardController.setSuggestionsEnabled(prefs.getSuggestionsEnabled());
+            updateGestureTyping();
         }
     }
 
@@ -120,10 +335,42 @@ public class LeanbackImeService extends KeyMapperImeService {
 
     }
 
+    /**
+     * NOTE: Connection that serves text reads from the {@link EditorMirror} (no binder calls)
+     * @return connection or null
+     */
+    private InputConnection getMirroredInputConnection() {
+        InputConnection connection = getCurrentInputConnection();
+        return connection != null ? mEditorMirror.wrap(connection) : null;
+    }
+
+    /**
+     * NOTE: Vietnamese Telex and dictionary are used only in the ordinary text fields
+     */
+    private boolean isVietnameseEngineEnabled() {
+        return mInputPolicy.engineEnabled && KeyboardManager.getGlobalCurrentLangCode().equals("vi");
+    }
+
     public void handleTextEntry(final int type, final int keyCode, final CharSequence text) {
-        final InputConnection connection = getCurrentInputConnection();
+        // passwords and private fields never end up in a macro file, a placeholder is recorded instead
+        recordMacroEntry(type, keyCode, text, !mInputPolicy.learningEnabled);
+
+        boolean traced = type != InputListener.ENTRY_TYPE_VOICE && type != InputListener.ENTRY_TYPE_VOICE_PARTIAL &&
+                type != InputListener.ENTRY_TYPE_VOICE_DISMISS;
+
+        if (traced) {
+            KeystrokeTracer.mark(KeystrokeTracer.STAGE_TEXT_ENTRY);
+        }
+
+        if (type != InputListener.ENTRY_TYPE_BACKSPACE && type != InputListener.ENTRY_TYPE_LEFT && type != InputListener.ENTRY_TYPE_RIGHT) {
+            // keep order of the edits
+            flushPendingEdits();
+        }
+
+        final InputConnection connection = getMirroredInputConnection();
         if (connection != null) {
             boolean updateSuggestions = true;
+            boolean connectionUsed = true;
             switch (type) {
                 case InputListener.ENTRY_TYPE_STRING:
                     clearSuggestionsDelayed();
@@ -136,9 +383,8 @@ public class LeanbackImeService extends KeyMapperImeService {
                     }
 
                     // user input from keyboard
-                    String langCode = KeyboardManager.getGlobalCurrentLangCode();
-                    if (langCode.equals("vi")) {
-                        TelexProcessor.processCurrentWord(getCurrentInputConnection(),text);
+                    if (isVietnameseEngineEnabled()) {
+                        TelexProcessor.processCurrentWord(connection, text);
                         fetchAutocompleteSuggestions();
                     } else {
                         connection.commitText(text, 1);
@@ -152,20 +398,31 @@ public class LeanbackImeService extends KeyMapperImeService {
                     break;
                 case InputListener.ENTRY_TYPE_BACKSPACE:
                     clearSuggestionsDelayed();
-                    connection.deleteSurroundingText(1, 0);
-                    String langCode3 = KeyboardManager.getGlobalCurrentLangCode();
-                    if (langCode3.equals("vi")) {
-                        fetchAutocompleteSuggestions();
+                    if (mPendingCursorMoves != 0) {
+                        flushPendingEdits();
                     }
+                    mPendingDeletes++;
+                    mSessionBackspaces++;
+                    connectionUsed = schedulePendingEdits(true);
                     mEnterSpaceBeforeCommitting = false;
-                    updateSuggestions = true;
+                    updateSuggestions = false;
+                    break;
+                case InputListener.ENTRY_TYPE_VOICE_PARTIAL:
+                    updateVoiceComposingText(connection, text);
+                    updateSuggestions = false;
                     break;
                 case InputListener.ENTRY_TYPE_SUGGESTION:
                 case InputListener.ENTRY_TYPE_VOICE:
                     clearSuggestionsDelayed();
 
-                    String langCode2 = KeyboardManager.getGlobalCurrentLangCode();
-                    if (langCode2.equals("vi")) {
+                    if (type == InputListener.ENTRY_TYPE_VOICE && mVoiceComposing) {
+                        // final result replaces the composing text
+                        mVoiceComposing = false;
+                        connection.commitText(mVoicePrefix + text + " ", 1);
+                        break;
+                    }
+
+                    if (isVietnameseEngineEnabled()) {
 
                         String beforeCursor = Objects.requireNonNull(connection.getTextBeforeCursor(30, 0)).toString();
                         if (beforeCursor.isEmpty()) {
@@ -200,6 +457,15 @@ public class LeanbackImeService extends KeyMapperImeService {
                         mEnterSpaceBeforeCommitting = true;
                     }
                     break;
+                case InputListener.ENTRY_TYPE_GESTURE:
+                    clearSuggestionsDelayed();
+                    // word is complete, it doesn't go through the Telex engine
+                    CharSequence charBefore = connection.getTextBeforeCursor(1, 0);
+                    boolean needSpace = charBefore != null && charBefore.length() > 0 && !Character.isWhitespace(charBefore.charAt(0));
+                    connection.commitText((needSpace ? " " : "") + text + " ", 1);
+                    mEnterSpaceBeforeCommitting = false;
+                    fetchAutocompleteSuggestions();
+                    break;
                 case InputListener.ENTRY_TYPE_ACTION:  // User presses Go, Send, Search etc
                     boolean result = sendDefaultEditorAction(true);
 
@@ -213,69 +479,12 @@ public class LeanbackImeService extends KeyMapperImeService {
                     break;
                 case InputListener.ENTRY_TYPE_LEFT:
                 case InputListener.ENTRY_TYPE_RIGHT:
-                    BidiFormatter formatter = BidiFormatter.getInstance();
-
-                    CharSequence textBeforeCursor = connection.getTextBeforeCursor(1000, 0);
-                    int lenBefore = 0;
-                    boolean isRtlBefore = false;
-                    //int rtlLenBefore = 0;
-                    if (textBeforeCursor != null) {
-                        lenBefore = textBeforeCursor.length();
-                        isRtlBefore = formatter.isRtl(textBeforeCursor);
-                        //rtlLenBefore = LeanbackUtils.getRtlLenBeforeCursor(textBeforeCursor);
-                    }
-
-                    CharSequence textAfterCursor = connection.getTextAfterCursor(1000, 0);
-                    int lenAfter = 0;
-                    //int rtlLenAfter = 0;
-                    boolean isRtlAfter = false;
-                    if (textAfterCursor != null) {
-                        lenAfter = textAfterCursor.length();
-                        isRtlAfter = formatter.isRtl(textAfterCursor);
-                        //rtlLenAfter = LeanbackUtils.getRtlLenAfterCursor(textAfterCursor);
-                    }
-
-                    int index = lenBefore;
-                    if (type == InputListener.ENTRY_TYPE_LEFT) {
-                        if (lenBefore > 0) {
-                            if (!isRtlBefore) {
-                                index = lenBefore - 1;
-                            } else {
-                                if (lenAfter == 0) {
-                                    index = 1;
-                                } else if (lenAfter == 1) {
-                                    index = 0;
-                                } else {
-                                    index = lenBefore + 1;
-                                }
-                            }
-                        }
-
-                        //Log.d(TAG, String.format("direction key: before: lenBefore=%s, lenAfter=%s, rtlLenBefore=%s, rtlLenAfter=%s", lenBefore, lenAfter, rtlLenBefore, rtlLenAfter));
-                        Log.d(TAG, String.format("direction key: before: lenBefore=%s, lenAfter=%s, isRtlBefore=%s", lenBefore, lenAfter, isRtlBefore));
-                    } else {
-                        if (lenAfter > 0) {
-                            if (!isRtlAfter) {
-                                index = lenBefore + 1;
-                            } else {
-                                if (lenBefore == 0) {
-                                    index = lenAfter - 1;
-                                } else if (lenBefore == 1) {
-                                    index = lenAfter + 1;
-                                } else {
-                                    index = lenBefore - 1;
-                                }
-                            }
-                        }
-
-                        //Log.d(TAG, String.format("direction key: after: lenBefore=%s, lenAfter=%s, rtlLenBefore=%s, rtlLenAfter=%s", lenBefore, lenAfter, rtlLenBefore, rtlLenAfter));
-                        Log.d(TAG, String.format("direction key: after: lenBefore=%s, lenAfter=%s, isRtlAfter=%s", lenBefore, lenAfter, isRtlAfter));
+                    if (mPendingDeletes > 0) {
+                        flushPendingEdits();
                     }
-
-                    Log.d(TAG, "direction key: index: " + index);
-
-                    connection.setSelection(index, index);
-                    updateSuggestions = true;
+                    mPendingCursorMoves += type == InputListener.ENTRY_TYPE_LEFT ? -1 : 1;
+                    connectionUsed = schedulePendingEdits(false);
+                    updateSuggestions = false;
                     break;
                 case InputListener.ENTRY_TYPE_DISMISS:
                     connection.performEditorAction(EditorInfo.IME_ACTION_NONE);
@@ -286,22 +495,226 @@ public class LeanbackImeService extends KeyMapperImeService {
                     updateSuggestions = false;
                     break;
                 case InputListener.ENTRY_TYPE_DELETE_WORD:
-
-                    CharSequence textDelete = connection.getTextBeforeCursor(Integer.MAX_VALUE, 0);
-                    if (textDelete == null || textDelete == null) {
-                        break;
+                    if (TextDeleter.deleteWordBeforeCursor(connection) > 0) {
+                        fetchAutocompleteSuggestions();
+                    }
+                    break;
+                case InputListener.ENTRY_TYPE_DELETE_SENTENCE:
+                    if (TextDeleter.deleteSentenceBeforeCursor(connection) > 0) {
+                        fetchAutocompleteSuggestions();
                     }
-                    connection.deleteSurroundingText(textDelete.length(), 0);
-                    fetchAutocompleteSuggestions();
                     break;
                 default:
                     updateSuggestions = true;
             }
 
+            if (traced && connectionUsed) {
+                KeystrokeTracer.mark(KeystrokeTracer.STAGE_CONNECTION);
+            }
+
             if (mKeyboardController.areSuggestionsEnabled() && updateSuggestions) {
                 mKeyboardController.updateSuggestions(mSuggestionsFactory.getSuggestions());
             }
         }
+
+        if (traced) {
+            // deferred trace (new candidates are being fetched) stays open
+            KeystrokeTracer.end();
+        }
+    }
+
+    /**
+     * NOTE: Show partial voice result in the field. Empty text removes it.
+     */
+    private void updateVoiceComposingText(InputConnection connection, CharSequence text) {
+        if (TextUtils.isEmpty(text)) {
+            if (mVoiceComposing) {
+                mVoiceComposing = false;
+                connection.setComposingText("", 1);
+                connection.finishComposingText();
+            }
+            return;
+        }
+
+        if (!mVoiceComposing) {
+            mVoiceComposing = true;
+            CharSequence textBefore = connection.getTextBeforeCursor(1, 0);
+            mVoicePrefix = textBefore != null && textBefore.length() > 0 && !Character.isWhitespace(textBefore.charAt(0)) ? " " : "";
+        }
+
+        connection.setComposingText(mVoicePrefix + text, 1);
+    }
+
+    /**
+     * NOTE: Merge repeated deletes and cursor moves while the editor is applying the previous edit.<br/>
+     * Merged edit is sent once the editor reports the selection (see {@link #onUpdateSelection}),
+     * so there's at most one edit in flight and no backlog after the key is released.<br/>
+     * Suggestions are refreshed once the key repeat stops.
+     * @return edits are sent to the editor now
+     */
+    private boolean schedulePendingEdits(boolean deleted) {
+        mRefreshAfterDelete |= deleted;
+        mainThreadHandler.removeCallbacks(mRefreshAfterRepeat);
+        mainThreadHandler.postDelayed(mRefreshAfterRepeat, SUGGESTIONS_REFRESH_DELAY_MS);
+
+        if (!mEditorMirror.hasPendingEdits()) {
+            return flushPendingEdits();
+        }
+
+        if (!mPendingEditsScheduled) {
+            mPendingEditsScheduled = true;
+            mainThreadHandler.postDelayed(mFlushPendingEdits, PENDING_EDITS_TIMEOUT_MS);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return edits are sent to the editor
+     */
+    private boolean flushPendingEdits() {
+        if (mPendingEditsScheduled) {
+            mainThreadHandler.removeCallbacks(mFlushPendingEdits);
+            mPendingEditsScheduled = false;
+        }
+
+        int deletes = mPendingDeletes;
+        int moves = mPendingCursorMoves;
+        mPendingDeletes = 0;
+        mPendingCursorMoves = 0;
+
+        if (deletes == 0 && moves == 0) {
+            return false;
+        }
+
+        InputConnection connection = getMirroredInputConnection();
+
+        if (connection == null) {
+            return false;
+        }
+
+        if (deletes > 0) {
+            connection.deleteSurroundingText(deletes, 0);
+        }
+
+        if (moves != 0) {
+            moveCursor(connection, moves);
+        }
+
+        return true;
+    }
+
+    private void refreshSuggestionsAfterRepeat() {
+        if (mRefreshAfterDelete && isVietnameseEngineEnabled()) {
+            fetchAutocompleteSuggestions();
+        }
+
+        mRefreshAfterDelete = false;
+
+        if (mKeyboardController.areSuggestionsEnabled()) {
+            mKeyboardController.updateSuggestions(mSuggestionsFactory.getSuggestions());
+        }
+    }
+
+    /**
+     * Move cursor by the number of chars
+     * @param steps negative - left, positive - right
+     */
+    private void moveCursor(InputConnection connection, int steps) {
+        BidiFormatter formatter = BidiFormatter.getInstance();
+        CharSequence textBeforeCursor = connection.getTextBeforeCursor(1000, 0);
+        CharSequence textAfterCursor = connection.getTextAfterCursor(1000, 0);
+        int lenBefore = textBeforeCursor != null ? textBeforeCursor.length() : 0;
+        int lenAfter = textAfterCursor != null ? textAfterCursor.length() : 0;
+
+        if ((textBeforeCursor == null || !formatter.isRtl(textBeforeCursor)) &&
+            (textAfterCursor == null || !formatter.isRtl(textAfterCursor))) {
+            int index = lenBefore + Math.max(-lenBefore, Math.min(steps, lenAfter));
+            connection.setSelection(index, index);
+            return;
+        }
+
+        // bidi text: move char by char
+        for (int i = 0; i < Math.abs(steps); i++) {
+            moveCursorOneStep(connection, steps < 0);
+        }
+    }
+
+    private void moveCursorOneStep(InputConnection connection, boolean left) {
+        BidiFormatter formatter = BidiFormatter.getInstance();
+
+        CharSequence textBeforeCursor = connection.getTextBeforeCursor(1000, 0);
+        int lenBefore = 0;
+        boolean isRtlBefore = false;
+        //int rtlLenBefore = 0;
+        if (textBeforeCursor != null) {
+            lenBefore = textBeforeCursor.length();
+            isRtlBefore = formatter.isRtl(textBeforeCursor);
+            //rtlLenBefore = LeanbackUtils.getRtlLenBeforeCursor(textBeforeCursor);
+        }
+
+        CharSequence textAfterCursor = connection.getTextAfterCursor(1000, 0);
+        int lenAfter = 0;
+        //int rtlLenAfter = 0;
+        boolean isRtlAfter = false;
+        if (textAfterCursor != null) {
+            lenAfter = textAfterCursor.length();
+            isRtlAfter = formatter.isRtl(textAfterCursor);
+            //rtlLenAfter = LeanbackUtils.getRtlLenAfterCursor(textAfterCursor);
+        }
+
+        int index = lenBefore;
+        if (left) {
+            if (lenBefore > 0) {
+                if (!isRtlBefore) {
+                    index = lenBefore - 1;
+                } else {
+                    if (lenAfter == 0) {
+                        index = 1;
+                    } else if (lenAfter == 1) {
+                        index = 0;
+                    } else {
+                        index = lenBefore + 1;
+                    }
+                }
+            }
+
+            //Log.d(TAG, String.format("direction key: before: lenBefore=%s, lenAfter=%s, rtlLenBefore=%s, rtlLenAfter=%s", lenBefore, lenAfter, rtlLenBefore, rtlLenAfter));
+            Log.d(TAG, String.format("direction key: before: lenBefore=%s, lenAfter=%s, isRtlBefore=%s", lenBefore, lenAfter, isRtlBefore));
+        } else {
+            if (lenAfter > 0) {
+                if (!isRtlAfter) {
+                    index = lenBefore + 1;
+                } else {
+                    if (lenBefore == 0) {
+                        index = lenAfter - 1;
+                    } else if (lenBefore == 1) {
+                        index = lenAfter + 1;
+                    } else {
+                        index = lenBefore - 1;
+                    }
+                }
+            }
+
+            //Log.d(TAG, String.format("direction key: after: lenBefore=%s, lenAfter=%s, rtlLenBefore=%s, rtlLenAfter=%s", lenBefore, lenAfter, rtlLenBefore, rtlLenAfter));
+            Log.d(TAG, String.format("direction key: after: lenBefore=%s, lenAfter=%s, isRtlAfter=%s", lenBefore, lenAfter, isRtlAfter));
+        }
+
+        Log.d(TAG, "direction key: index: " + index);
+
+        connection.setSelection(index, index);
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter fout, String[] args) {
+        super.dump(fd, fout, args);
+        KeystrokeTracer.dump(fout);
+        ImeDiagnostics.dump(fout);
+    }
+
+    @Override
+    protected InputListener getMacroInputListener() {
+        return mInputListener;
     }
 
     @Override
@@ -322,6 +735,17 @@ public class LeanbackImeService extends KeyMapperImeService {
 
     }
 
+    @Override
+    public void onUpdateSelection(int oldSelStart, int oldSelEnd, int newSelStart, int newSelEnd, int candidatesStart, int candidatesEnd) {
+        super.onUpdateSelection(oldSelStart, oldSelEnd, newSelStart, newSelEnd, candidatesStart, candidatesEnd);
+        mEditorMirror.onUpdateSelection(newSelStart, newSelEnd);
+
+        if (mPendingEditsScheduled && !mEditorMirror.hasPendingEdits()) {
+            // previous edit is applied, send the merged one
+            flushPendingEdits();
+        }
+    }
+
     @Override
     public boolean onEvaluateFullscreenMode() {
         return false; // don't change it (true shows edit dialog above kbd)
@@ -347,12 +771,26 @@ public class LeanbackImeService extends KeyMapperImeService {
 
     @Override
     public void onFinishInputView(boolean finishingInput) {
+        flushPendingEdits();
+        mainThreadHandler.removeCallbacks(mRefreshAfterRepeat);
+        mRefreshAfterDelete = false;
+
+        if (mSessionBackspaces > 0) {
+            EventLogTags.writeTotalLeanbackImeBackspace(mSessionBackspaces);
+            mSessionBackspaces = 0;
+        }
+
         super.onFinishInputView(finishingInput);
         sendBroadcast(new Intent(IME_CLOSE));
         mSuggestionsFactory.clearSuggestions();
 
-        // NOTE: Trying to fix kbd without UI bug (telegram)
-        reInitKeyboard();
+        if (mInputView != null && (mInputView.getWidth() == 0 || mInputView.getHeight() == 0)) {
+            // NOTE: Trying to fix kbd without UI bug (telegram): keyboard was shown without a layout
+            reInitKeyboard();
+            return;
+        }
+
+        updateChangedSettings();
     }
 
     @SuppressLint("NewApi")
@@ -369,11 +807,17 @@ public class LeanbackImeService extends KeyMapperImeService {
 
     @Override
     public void onInitializeInterface() {
+        TraceCompat.beginSection("LeanKey.onInitializeInterface");
         mKeyboardController = new LeanbackKeyboardController(this, mInputListener);
         mKeyboardController.setHideWhenPhysicalKeyboardUsed(!mForceShowKbd);
         mEnterSpaceBeforeCommitting = false;
         mSuggestionsFactory = new LeanbackSuggestionsFactory();
         mContainer = mKeyboardController.getContainer();
+        mKeyboardSettings = KeyboardSettings.read(this);
+        TraceCompat.endSection();
+
+        // after the messages that show the keyboard
+        mainThreadHandler.post(this::runDeferredStartup);
     }
 
     @Override
@@ -437,16 +881,49 @@ public class LeanbackImeService extends KeyMapperImeService {
     @Override
     public void onStartInput(EditorInfo info, boolean restarting) {
         super.onStartInput(info, restarting);
+        mEditorMirror.reset(info.initialSelStart, info.initialSelEnd);
+        mInputPolicy = InputPolicy.from(info);
+        // gestures commit dictionary words
+        mKeyboardController.setGestureInputAllowed(mInputPolicy.engineEnabled && mInputPolicy.suggestionsEnabled);
+        mVoiceComposing = false;
         mEnterSpaceBeforeCommitting = false;
 //        mSuggestionsFactory.onStartInput(info);
         mKeyboardController.onStartInput(info);
     }
 
+    /**
+     * NOTE: Time to first keyboard ends at the first drawn frame of the input view, not when the view is started
+     */
+    private void endColdStartOnFirstFrame() {
+        if (!ImeDiagnostics.isColdStartPending() || mInputView == null) {
+            return;
+        }
+
+        final View inputView = mInputView;
+        inputView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                inputView.getViewTreeObserver().removeOnPreDrawListener(this);
+                ImeDiagnostics.endColdStart();
+                return true;
+            }
+        });
+    }
+
     @Override
     public void onStartInputView(EditorInfo info, boolean restarting) {
         super.onStartInputView(info, restarting);
 
+        TraceCompat.beginSection("LeanKey.onStartInputView");
         mKeyboardController.onStartInputView();
+        TraceCompat.endSection();
+
+        if (mGestureDictionaryReleased) {
+            mGestureDictionaryReleased = false;
+            updateGestureTyping();
+        }
+
+        endColdStartOnFirstFrame();
         sendBroadcast(new Intent(IME_OPEN));
         if (mKeyboardController.areSuggestionsEnabled()) {
 //            mSuggestionsFactory.createSuggestions();
@@ -489,7 +966,11 @@ public class LeanbackImeService extends KeyMapperImeService {
     }
 
     private void fetchAutocompleteSuggestions() {
-        InputConnection connection = getCurrentInputConnection();
+        if (!mInputPolicy.suggestionsEnabled) {
+            return;
+        }
+
+        InputConnection connection = getMirroredInputConnection();
         if (connection == null) return;
 
         CharSequence textBeforeCursor = connection.getTextBeforeCursor(20, 0);
@@ -501,6 +982,8 @@ public class LeanbackImeService extends KeyMapperImeService {
 
         if (suggestionFuture != null && !suggestionFuture.isDone()) {
             suggestionFuture.cancel(true);
+            // candidates of the superseded keystroke are never shown
+            KeystrokeTracer.end(mSuggestionTraceId);
         }
 
         if (text.trim().isEmpty()) {
@@ -522,18 +1005,46 @@ public class LeanbackImeService extends KeyMapperImeService {
 
         final String wordToSuggest = currentWord;
         final int finalMode = mode;
+        final String langCode = KeyboardManager.getGlobalCurrentLangCode();
+        final long traceId = KeystrokeTracer.defer();
+        mSuggestionTraceId = traceId;
 
         suggestionFuture = executorService.submit(() -> {
-            final List<String> suggestions = dbHelper.getSuggestions(wordToSuggest, finalMode);
+            long queryStartNanos = System.nanoTime();
+            // installed dictionary pack takes precedence over the bundled database
+            MappedWordList pack = mDictionaryPacks.get(langCode);
+            List<String> dictionarySuggestions = pack != null ?
+                    pack.getSuggestions(wordToSuggest, finalMode) : dbHelper.getSuggestions(wordToSuggest, finalMode);
+            final List<String> suggestions = mergeSuggestions(
+                    UserDictionary.instance(this).getSuggestions(wordToSuggest, finalMode), dictionarySuggestions);
+            KeystrokeTracer.recordSuggestionQuery(System.nanoTime() - queryStartNanos);
             Log.d(TAG, "fetchAutocompleteSuggestions: " + suggestions);
             mainThreadHandler.post(() -> {
                 if (Thread.currentThread().isInterrupted()) return;
                 mSuggestionsFactory.setSuggestions(suggestions);
                 mKeyboardController.updateSuggestions(mSuggestionsFactory.getSuggestions());
+                KeystrokeTracer.mark(traceId, KeystrokeTracer.STAGE_CANDIDATES);
+                KeystrokeTracer.end(traceId);
             });
         });
     }
 
+    /**
+     * User words go first, duplicates are dropped
+     */
+    private static List<String> mergeSuggestions(List<String> userSuggestions, List<String> suggestions) {
+        if (userSuggestions.isEmpty()) {
+            return suggestions;
+        }
+
+        Set<String> merged = new LinkedHashSet<>(userSuggestions);
+        merged.addAll(suggestions);
+
+        List<String> result = new ArrayList<>(merged);
+
+        return result.size() > MAX_DICTIONARY_SUGGESTIONS ? result.subList(0, MAX_DICTIONARY_SUGGESTIONS) : result;
+    }
+
     public void onLanguageChanged() {
         Log.d(TAG, "Language changed, clearing suggestions.");
 
@@ -545,13 +1056,39 @@ public class LeanbackImeService extends KeyMapperImeService {
             mSuggestionsFactory.clearSuggestions();
             mKeyboardController.updateSuggestions(mSuggestionsFactory.getSuggestions());
         }
+
+        updateGestureTyping();
     }
 
     private void reInitKeyboard() {
+        mKeyboardSettings = KeyboardSettings.read(this);
         initSettings();
 
         if (mKeyboardController != null) {
             mKeyboardController.initKeyboards();
         }
     }
+
+    /**
+     * NOTE: Field focus changes constantly on TV. Don't rebuild keyboards if settings are the same.
+     */
+    private void updateChangedSettings() {
+        KeyboardSettings settings = KeyboardSettings.read(this);
+        int changes = settings.diff(mKeyboardSettings);
+        mKeyboardSettings = settings;
+
+        if (changes == KeyboardSettings.CHANGED_NONE) {
+            return;
+        }
+
+        Log.d(TAG, "Settings changed: " + changes);
+
+        if ((changes & KeyboardSettings.CHANGED_FLAGS) != 0) {
+            initSettings();
+        }
+
+        if (mKeyboardController != null) {
+            mKeyboardController.updateKeyboards(changes);
+        }
+    }
 }
@@ -16,6 +16,7 @@ import android.inputmethodservice.Keyboard;
 import android.inputmethodservice.Keyboard.Key;
 import android.os.Build.VERSION;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.speech.RecognitionListener;
 import android.speech.RecognizerIntent;
 import android.speech.SpeechRecognizer;
@@ -27,10 +28,8 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewGroup.MarginLayoutParams;
 import android.view.animation.AccelerateInterpolator;
-import android.view.animation.Animation;
 import android.view.animation.DecelerateInterpolator;
 import android.view.animation.Interpolator;
-import android.view.animation.Transformation;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputConnection;
 import android.widget.Button;
@@ -46,9 +45,13 @@ import androidx.core.content.ContextCompat;
 import com.liskovsoft.leankeyboard.addons.keyboards.KeyboardManager.KeyboardData;
 import com.liskovsoft.leankeyboard.addons.theme.ThemeManager;
 import com.liskovsoft.leankeyboard.addons.voice.RecognizerIntentWrapper;
+import com.liskovsoft.leankeyboard.addons.voice.StreamingRecognizer;
+import com.liskovsoft.leankeyboard.addons.voice.SystemStreamingRecognizer;
 import com.liskovsoft.leankeyboard.helpers.PermissionHelpers;
+import com.liskovsoft.leankeyboard.activity.GoogleVoiceInputActivity;
 import com.liskovsoft.leankeyboard.activity.PermissionsActivity;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardController.InputListener;
+import com.liskovsoft.leankeyboard.ime.gesture.GestureKeyLayout;
 import com.liskovsoft.leankeyboard.ime.voice.RecognizerView;
 import com.liskovsoft.leankeyboard.ime.voice.SpeechLevelSource;
 import com.liskovsoft.leankeyboard.activity.settings.KbLayoutActivity;
@@ -68,7 +71,7 @@ public class LeanbackKeyboardContainer {
     public static final double DIRECTION_STEP_MULTIPLIER = 1.25D;
     private static final String IME_PRIVATE_OPTIONS_ESCAPE_NORTH = "EscapeNorth=1";
     private static final String IME_PRIVATE_OPTIONS_VOICE_DISMISS = "VoiceDismiss=1";
-    private static final long MOVEMENT_ANIMATION_DURATION = 150L;
+    public static final long MOVEMENT_ANIMATION_DURATION = 150L;
     private static final int MSG_START_INPUT_VIEW = 0;
     protected static final float PHYSICAL_HEIGHT_CM = 5.0F;
     protected static final float PHYSICAL_WIDTH_CM = 12.0F;
@@ -112,25 +115,52 @@ public class LeanbackKeyboardContainer {
     private LeanbackKeyboardView mPrevView;
     private Intent mRecognizerIntent;
     private Rect mRect = new Rect();
+    private final Rect mKeyboardRect = new Rect();
+    private final Rect mActionRect = new Rect();
+    private final Rect mSuggestionsRect = new Rect();
     private RelativeLayout mRootView;
     private View mSelector;
     private ImageView mKeySelector;
     private Drawable mKeySelectorSquare;
     private Drawable mKeySelectorStretched;
     private ThemeManager mThemeManager;
-    private ScaleAnimation mSelectorAnimation;
+    private SelectorAnimation mSelectorAnimation;
     private ValueAnimator mSelectorAnimator;
     private SpeechLevelSource mSpeechLevelSource;
-    private SpeechRecognizer mSpeechRecognizer;
+    private StreamingRecognizer mSpeechRecognizer;
+    private final MyVoiceRecognitionListener mRecognitionListener = new MyVoiceRecognitionListener();
+    private long mVoiceStartTimeMs;
+    private boolean mVoiceFirstTextReceived;
+    private boolean mVoicePartialShown;
     private RecognizerIntentWrapper mRecognizerIntentWrapper;
     private LinearLayout mSuggestions;
+    private final List<View> mSuggestionsPool = new ArrayList<>();
+    private final View.OnClickListener mSuggestionClickListener = v -> {
+        v.requestFocus();
+
+        v.setPressed(true);
+        v.refreshDrawableState();
+
+        v.postDelayed(() -> {
+            v.setPressed(false);
+
+            // pressed state delay isn't a part of the keystroke latency
+            KeystrokeTracer.begin(SystemClock.uptimeMillis());
+
+            String suggestionText = ((Button) v).getText().toString();
+            mContext.handleTextEntry(
+                    InputListener.ENTRY_TYPE_SUGGESTION,
+                    LeanbackKeyboardView.NOT_A_KEY,
+                    suggestionText
+            );
+        }, 150);
+    };
     private View mSuggestionsBg;
     private HorizontalScrollView mSuggestionsContainer;
     private boolean mSuggestionsEnabled;
     private boolean mForceDisableSuggestions;
     private Keyboard mSymKeyboard;
     private KeyFocus mTempKeyInfo = new KeyFocus();
-    private PointF mTempPoint = new PointF();
     private boolean mTouchDown = false;
     private int mTouchState = TOUCH_STATE_NO_TOUCH;
     private final int mVoiceAnimDur;
@@ -140,8 +170,8 @@ public class LeanbackKeyboardContainer {
     private boolean mVoiceKeyDismissesEnabled;
     private VoiceListener mVoiceListener;
     private boolean mVoiceOn;
-    private Float mX;
-    private Float mY;
+    private float mX;
+    private float mY;
     private String mLabel;
 
     private AnimatorListener mVoiceEnterListener = new AnimatorListener() {
@@ -184,6 +214,12 @@ public class LeanbackKeyboardContainer {
             mSpeechRecognizer.cancel();
             mSpeechRecognizer.setRecognitionListener(null);
             mVoiceOn = false;
+
+            if (mVoicePartialShown) {
+                // recognition is cancelled: remove unfinished text
+                mVoicePartialShown = false;
+                mVoiceListener.onVoicePartialResult("");
+            }
         }
     };
 
@@ -207,7 +243,7 @@ public class LeanbackKeyboardContainer {
         mKeySelectorSquare = ContextCompat.getDrawable(mContext, R.drawable.key_selector_square);
         mKeySelectorStretched = ContextCompat.getDrawable(mContext, R.drawable.key_selector);
         mThemeManager = new ThemeManager(mContext, mRootView);
-        mSelectorAnimation = new ScaleAnimation((FrameLayout) mSelector);
+        mSelectorAnimation = new SelectorAnimation((FrameLayout) mSelector, mKeySelector);
         mOverestimate = mContext.getResources().getFraction(R.fraction.focused_scale, 1, 1);
         final float scale = context.getResources().getFraction(R.fraction.clicked_scale, 1, 1);
         mClickAnimDur = context.getResources().getInteger(R.integer.clicked_anim_duration);
@@ -220,7 +256,8 @@ public class LeanbackKeyboardContainer {
         });
         mSpeechLevelSource = new SpeechLevelSource();
         mVoiceButtonView.setSpeechLevelSource(mSpeechLevelSource);
-        mSpeechRecognizer = SpeechRecognizer.createSpeechRecognizer(mContext);
+        // NOTE: created once and reused, so the next voice session starts without delay
+        mSpeechRecognizer = new SystemStreamingRecognizer(mContext);
         mRecognizerIntentWrapper = new RecognizerIntentWrapper(mContext);
         mVoiceButtonView.setCallback(new RecognizerView.Callback() {
             @Override
@@ -239,6 +276,9 @@ public class LeanbackKeyboardContainer {
             }
         });
         mKeyboardManager = new KeyboardManager(mContext);
+        // keep navigation rects in sync with the layout instead of recalculating them on every key press
+        mRootView.addOnLayoutChangeListener(
+                (view, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) -> updateNavigationRects());
         initKeyboards();
     }
 
@@ -307,6 +347,42 @@ public class LeanbackKeyboardContainer {
         updateAddonKeyboard();
     }
 
+    /**
+     * NOTE: Rebuild only what has been changed in the settings
+     * @param changes combination of the {@link KeyboardSettings} CHANGED_* flags
+     */
+    public void updateKeyboards(int changes) {
+        if ((changes & KeyboardSettings.CHANGED_LAYOUTS) != 0) {
+            updateAddonKeyboard();
+            preloadKeyboards();
+        } else if ((changes & KeyboardSettings.CHANGED_THEME) != 0) {
+            mThemeManager.updateKeyboardTheme();
+            mThemeManager.updateSuggestionsTheme(mSuggestionsPool);
+        }
+    }
+
+    /**
+     * NOTE: Build layouts of the non-current languages in background
+     */
+    public void preloadKeyboards() {
+        mKeyboardManager.preloadInactive();
+    }
+
+    /**
+     * NOTE: Drop rendered keys and recycled suggestions. Keys are rendered again in {@link #onStartInputView()}.
+     */
+    public void releaseKeyImages() {
+        mMainKeyboardView.releaseKeyImages();
+        mSuggestionsPool.clear();
+    }
+
+    /**
+     * NOTE: Drop layouts of the non-current languages. They're rebuilt on switch.
+     */
+    public void releaseInactiveKeyboards() {
+        mKeyboardManager.releaseInactive();
+    }
+
     private boolean isMatch(Locale var1, Locale[] var2) {
         int var4 = var2.length;
 
@@ -328,14 +404,13 @@ public class LeanbackKeyboardContainer {
      */
     public void moveFocusToIndex(int index, int type) {
         Key key = mMainKeyboardView.getKey(index);
-        configureFocus(mTempKeyInfo, mRect, index, key, type);
+        configureFocus(mTempKeyInfo, mKeyboardRect, index, key, type);
         setTouchState(TOUCH_STATE_NO_TOUCH);
         setKbFocus(mTempKeyInfo, true, true);
     }
 
     public void focusActionButton() {
-        offsetRect(mRect, mActionButtonView);
-        configureFocus(mTempKeyInfo, mRect, 0, KeyFocus.TYPE_ACTION);
+        configureFocus(mTempKeyInfo, mActionRect, 0, KeyFocus.TYPE_ACTION);
         setTouchState(TOUCH_STATE_NO_TOUCH);
         setKbFocus(mTempKeyInfo, true, true);
     }
@@ -362,6 +437,16 @@ public class LeanbackKeyboardContainer {
         mRootView.offsetDescendantRectToMyCoords(view, rect);
     }
 
+    /**
+     * NOTE: Cache positions of the keyboard, action button and suggestions.<br/>
+     * Called after every layout pass, so D-pad navigation doesn't need to walk the view tree.
+     */
+    private void updateNavigationRects() {
+        offsetRect(mKeyboardRect, mMainKeyboardView);
+        offsetRect(mActionRect, mActionButtonView);
+        offsetRect(mSuggestionsRect, mSuggestions);
+    }
+
     private void onToggleCapsLock() {
         onShiftDoubleClick(isCapsLockOn());
     }
@@ -561,12 +646,7 @@ public class LeanbackKeyboardContainer {
         if ((PermissionHelpers.hasStoragePermissions(context) || VERSION.SDK_INT >= 34) &&
             PermissionHelpers.hasMicPermissions(context)) {
             if (SpeechRecognizer.isRecognitionAvailable(context)) {
-                mRecognizerIntent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
-                mRecognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
-                mRecognizerIntent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
-                mSpeechRecognizer.setRecognitionListener(new MyVoiceRecognitionListener());
-
-                mSpeechRecognizer.startListening(mRecognizerIntent);
+                startStreamingRecognition();
             } else {
                 mRecognizerIntentWrapper.setListener(searchText -> mVoiceListener.onVoiceResult(searchText));
                 mRecognizerIntentWrapper.startListening();
@@ -582,6 +662,23 @@ public class LeanbackKeyboardContainer {
         }
     }
 
+    /**
+     * NOTE: Recognition inside the keyboard. Partial results are shown as composing text.
+     */
+    void startStreamingRecognition() {
+        mRecognizerIntent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+        mRecognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
+        mRecognizerIntent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
+        mRecognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE,
+                GoogleVoiceInputActivity.normalizeLanguageCode(KeyboardManager.getGlobalCurrentLangCode()));
+        mRecognitionListener.reset();
+        mSpeechRecognizer.setRecognitionListener(mRecognitionListener);
+
+        mVoiceStartTimeMs = SystemClock.uptimeMillis();
+        mVoiceFirstTextReceived = false;
+        mSpeechRecognizer.startListening(mRecognizerIntent);
+    }
+
     public void alignSelector(final float x, final float y, final boolean playAnimation) {
         final float translatedX = x - (float) (mSelector.getWidth() / 2);
         final float translatedY = y - (float) (mSelector.getHeight() / 2);
@@ -612,7 +709,7 @@ public class LeanbackKeyboardContainer {
     }
 
     public void clearSuggestions() {
-        mSuggestions.removeAllViews();
+        recycleSuggestions(0);
         if (getCurrFocus().type == KeyFocus.TYPE_SUGGESTION) {
             resetFocusCursor();
         }
@@ -633,55 +730,53 @@ public class LeanbackKeyboardContainer {
      * @param focus result focus
      * @return whether focus is found or not
      */
-    public boolean getBestFocus(final Float x, final Float y, final KeyFocus focus) {
-        offsetRect(mRect, mActionButtonView);
-        int actionLeft = mRect.left;
-        offsetRect(mRect, mMainKeyboardView);
-        int keyboardTop = mRect.top;
-        Float newX = x;
-        if (x == null) {
-            newX = mX;
-        }
-
-        Float newY = y;
-        if (y == null) {
-            newY = mY;
-        }
+    public boolean getBestFocus(final float x, final float y, final KeyFocus focus) {
+        int actionLeft = mActionRect.left;
+        int keyboardTop = mKeyboardRect.top;
 
         int count = mSuggestions.getChildCount();
-        if (newY < (float) keyboardTop && count > 0 && mSuggestionsEnabled) {
-            for (actionLeft = 0; actionLeft < count; ++actionLeft) {
-                View view = mSuggestions.getChildAt(actionLeft);
+        if (y < (float) keyboardTop && count > 0 && mSuggestionsEnabled) {
+            for (int i = 0; i < count; ++i) {
+                View view = mSuggestions.getChildAt(i);
                 offsetRect(mRect, view);
-                if (newX < (float) mRect.right || actionLeft + 1 == count) {
+                if (x < (float) mRect.right || i + 1 == count) {
                     view.requestFocus();
                     LeanbackUtils.sendAccessibilityEvent(view.findViewById(R.id.text), true);
-                    configureFocus(focus, mRect, actionLeft, KeyFocus.TYPE_SUGGESTION);
+                    configureFocus(focus, mRect, i, KeyFocus.TYPE_SUGGESTION);
                     break;
                 }
             }
 
             return true;
-        } else if (newY < (float) keyboardTop && mEscapeNorthEnabled) {
+        } else if (y < (float) keyboardTop && mEscapeNorthEnabled) {
             escapeNorth();
             return false;
-        } else if (newX > (float) actionLeft) {
-            offsetRect(mRect, mActionButtonView);
-            configureFocus(focus, mRect, 0, KeyFocus.TYPE_ACTION);
+        } else if (x > (float) actionLeft) {
+            configureFocus(focus, mActionRect, 0, KeyFocus.TYPE_ACTION);
             return true;
         } else {
-            mX = newX;
-            mY = newY;
-            offsetRect(mRect, mMainKeyboardView);
-            final float left = (float) mRect.left;
-            final float top = (float) mRect.top;
-            int keyIdx = mMainKeyboardView.getNearestIndex(newX - left, newY - top);
+            mX = x;
+            mY = y;
+            int keyIdx = mMainKeyboardView.getNearestIndex(x - mKeyboardRect.left, y - mKeyboardRect.top);
             Key key = mMainKeyboardView.getKey(keyIdx);
-            configureFocus(focus, mRect, keyIdx, key, 0);
+            configureFocus(focus, mKeyboardRect, keyIdx, key, KeyFocus.TYPE_MAIN);
             return true;
         }
     }
 
+    /**
+     * NOTE: Letter keys of the current keyboard in the container coordinates (the coordinates of {@link #getBestFocus})
+     * @return layout or null if keyboard isn't ready
+     */
+    public GestureKeyLayout getGestureKeyLayout() {
+        if (mMainKeyboardView == null || mMainKeyboardView.getKeyboard() == null) {
+            return null;
+        }
+
+        return new GestureKeyLayout(mMainKeyboardView.getKeyboard(), mKeyboardRect.left + mMainKeyboardView.getPaddingLeft(),
+                mKeyboardRect.top + mMainKeyboardView.getPaddingTop());
+    }
+
     public LeanbackKeyboardContainer.KeyFocus getCurrFocus() {
         return mCurrKeyInfo;
     }
@@ -708,29 +803,31 @@ public class LeanbackKeyboardContainer {
         if (oldFocus.equals(newFocus) || LeanbackUtils.isSubmitButton(newFocus)) {
             if (LeanKeyPreferences.instance(mContext).isCyclicNavigationEnabled()) {
                 if (dir == DIRECTION_RIGHT || dir == DIRECTION_LEFT) {
-                    Rect actionRect = new Rect();
-                    offsetRect(actionRect, mActionButtonView);
-                    boolean onSameRow = Math.abs(oldFocus.rect.top - actionRect.top) < 20;
+                    boolean onSameRow = Math.abs(oldFocus.rect.top - mActionRect.top) < 20;
 
                     if (onSameRow && !LeanbackUtils.isSubmitButton(oldFocus)) {
                         // move focus to submit button
-                        offsetRect(mRect, mActionButtonView);
-                        configureFocus(newFocus, mRect, 0, KeyFocus.TYPE_ACTION);
+                        configureFocus(newFocus, mActionRect, 0, KeyFocus.TYPE_ACTION);
                     } else {
-                        offsetRect(mRect, mMainKeyboardView);
-                        float x = dir == DIRECTION_RIGHT ? 0 : mRect.right; // 0 - rightmost position, right - leftmost
-                        int keyIdx = mMainKeyboardView.getNearestIndex(x, oldFocus.rect.top - mRect.top);
-                        Key key = mMainKeyboardView.getKey(keyIdx);
-                        configureFocus(newFocus, mRect, keyIdx, key, 0);
+                        int keyIdx;
+                        if (oldFocus.type == KeyFocus.TYPE_MAIN) {
+                            keyIdx = mMainKeyboardView.getNavigationGraph().getCyclicNeighbour(oldFocus.index, dir);
+                        } else {
+                            float x = dir == DIRECTION_RIGHT ? 0 : mKeyboardRect.right; // 0 - leftmost position, right - rightmost
+                            keyIdx = mMainKeyboardView.getNearestIndex(x, oldFocus.rect.top - mKeyboardRect.top);
+                        }
+                        configureKeyFocus(newFocus, keyIdx);
                     }
                 } else if (dir == DIRECTION_DOWN || dir == DIRECTION_UP) {
                     if (!LeanbackUtils.isSubmitButton(oldFocus)) {
-                        offsetRect(mRect, mMainKeyboardView);
-                        float y = dir == DIRECTION_DOWN ? 0 : mRect.bottom; // 0 - topmost position, bottom - downmost
-                        int delta = (oldFocus.rect.right - oldFocus.rect.left) / 2; // fix space position
-                        int keyIdx = mMainKeyboardView.getNearestIndex(oldFocus.rect.left + delta - mRect.left, y);
-                        Key key = mMainKeyboardView.getKey(keyIdx);
-                        configureFocus(newFocus, mRect, keyIdx, key, 0);
+                        int keyIdx;
+                        if (oldFocus.type == KeyFocus.TYPE_MAIN) {
+                            keyIdx = mMainKeyboardView.getNavigationGraph().getCyclicNeighbour(oldFocus.index, dir);
+                        } else {
+                            float y = dir == DIRECTION_DOWN ? 0 : mKeyboardRect.height(); // 0 - topmost position, height - downmost
+                            keyIdx = mMainKeyboardView.getNearestIndex(oldFocus.rect.centerX() - mKeyboardRect.left, y);
+                        }
+                        configureKeyFocus(newFocus, keyIdx);
                     }
                 }
             } else if (dir == DIRECTION_UP) {
@@ -762,56 +859,22 @@ public class LeanbackKeyboardContainer {
     public boolean getNextFocusInDirection(int direction, KeyFocus startFocus, KeyFocus nextFocus) {
         switch (startFocus.type) {
             case KeyFocus.TYPE_MAIN:
-                Key key = getKey(startFocus.type, startFocus.index);
-                float centerDelta = (float) startFocus.rect.height() / 2.0F;
-                float centerX = (float) startFocus.rect.centerX();
-                float centerY = (float) startFocus.rect.centerY();
-                if (startFocus.code == LeanbackKeyboardView.ASCII_SPACE) {
-                    centerX = mX;
-                }
-
-                if ((direction & DIRECTION_LEFT) != 0) {
-                    if ((key.edgeFlags & Keyboard.EDGE_LEFT) == 0) {
-                        centerX = (float) startFocus.rect.left - centerDelta;
-                    }
-                } else if ((direction & DIRECTION_RIGHT) != 0) {
-                    if ((key.edgeFlags & Keyboard.EDGE_RIGHT) != 0) {
-                        offsetRect(mRect, mActionButtonView);
-                        centerX = (float) mRect.centerX();
-                    } else {
-                        centerX = (float) startFocus.rect.right + centerDelta;
-                    }
-                }
-
-                if ((direction & DIRECTION_UP) != 0) {
-                    centerDelta = (float) ((double) centerY - (double) startFocus.rect.height() * DIRECTION_STEP_MULTIPLIER);
-                } else {
-                    centerDelta = centerY;
-                    if ((direction & DIRECTION_DOWN) != 0) {
-                        centerDelta = (float) ((double) centerY + (double) startFocus.rect.height() * DIRECTION_STEP_MULTIPLIER);
-                    }
-                }
-
-                getPhysicalPosition(centerX, centerDelta, mTempPoint);
-                return getBestFocus(centerX, centerDelta, nextFocus);
+                return getNextKeyFocus(direction, startFocus, nextFocus);
             case KeyFocus.TYPE_VOICE:
             default:
                 break;
             case KeyFocus.TYPE_ACTION:
-                offsetRect(mRect, mMainKeyboardView);
                 if ((direction & DIRECTION_LEFT) != 0) {
-                    return getBestFocus((float) mRect.right, null, nextFocus);
+                    return getBestFocus((float) mKeyboardRect.right, mY, nextFocus);
                 }
 
                 if ((direction & DIRECTION_UP) != 0) {
-                    offsetRect(mRect, mSuggestions);
-                    return getBestFocus((float) startFocus.rect.centerX(), (float) mRect.centerY(), nextFocus);
+                    return getBestFocus((float) startFocus.rect.centerX(), (float) mSuggestionsRect.centerY(), nextFocus);
                 }
                 break;
             case KeyFocus.TYPE_SUGGESTION:
                 if ((direction & DIRECTION_DOWN) != 0) {
-                    offsetRect(mRect, mMainKeyboardView);
-                    return getBestFocus((float) startFocus.rect.centerX(), (float) mRect.top, nextFocus);
+                    return getBestFocus((float) startFocus.rect.centerX(), (float) mKeyboardRect.top, nextFocus);
                 }
 
                 if ((direction & DIRECTION_UP) != 0) {
@@ -864,6 +927,46 @@ public class LeanbackKeyboardContainer {
         return true;
     }
 
+    /**
+     * NOTE: Move between main keys using precomputed {@link KeyNavigationGraph}
+     */
+    private boolean getNextKeyFocus(int direction, KeyFocus startFocus, KeyFocus nextFocus) {
+        KeyNavigationGraph graph = mMainKeyboardView.getNavigationGraph();
+        boolean vertical = (direction & (DIRECTION_UP | DIRECTION_DOWN)) != 0;
+        // wide space key remembers the column it was entered from
+        boolean restoreColumn = vertical && startFocus.code == LeanbackKeyboardView.ASCII_SPACE;
+        float centerX = restoreColumn ? mX : (float) startFocus.rect.centerX();
+        int keyIdx = graph.getNeighbour(startFocus.index, direction);
+
+        switch (keyIdx) {
+            case KeyNavigationGraph.NAV_NONE:
+                nextFocus.set(startFocus);
+                return true;
+            case KeyNavigationGraph.NAV_ACTION:
+                configureFocus(nextFocus, mActionRect, 0, KeyFocus.TYPE_ACTION);
+                return true;
+            case KeyNavigationGraph.NAV_SUGGESTIONS:
+                return getBestFocus(centerX, (float) (mKeyboardRect.top - 1), nextFocus);
+        }
+
+        if (restoreColumn) {
+            KeySpatialIndex index = mMainKeyboardView.getSpatialIndex();
+            int row = index.getRow(keyIdx);
+            int col = index.getNearestCol(row, centerX - mKeyboardRect.left - mMainKeyboardView.getPaddingLeft());
+            keyIdx = index.getKeyIndex(row, col);
+        }
+
+        configureKeyFocus(nextFocus, keyIdx);
+        mX = vertical ? centerX : (float) nextFocus.rect.centerX();
+        mY = (float) nextFocus.rect.centerY();
+        return true;
+    }
+
+    private void configureKeyFocus(KeyFocus focus, int keyIdx) {
+        Key key = mMainKeyboardView.getKey(keyIdx);
+        configureFocus(focus, mKeyboardRect, keyIdx, key, KeyFocus.TYPE_MAIN);
+    }
+
     public CharSequence getSuggestionText(int idx) {
         CharSequence result = null;
         if (idx >= 0) {
@@ -1058,9 +1161,9 @@ public class LeanbackKeyboardContainer {
     }
 
     public void resetFocusCursor() {
-        offsetRect(mRect, mMainKeyboardView);
-        mX = (float) ((double) mRect.left + (double) mRect.width() * 0.45D);
-        mY = (float) ((double) mRect.top + (double) mRect.height() * 0.375D);
+        updateNavigationRects();
+        mX = (float) ((double) mKeyboardRect.left + (double) mKeyboardRect.width() * 0.45D);
+        mY = (float) ((double) mKeyboardRect.top + (double) mKeyboardRect.height() * 0.375D);
         getBestFocus(mX, mY, mTempKeyInfo);
         setKbFocus(mTempKeyInfo, true, false);
         setTouchStateInternal(0);
@@ -1128,9 +1231,7 @@ public class LeanbackKeyboardContainer {
             }
 
             if (animate) {
-                mSelectorAnimation.reset();
-                mSelectorAnimation.setAnimationBounds(x, y, deltaX, deltaY);
-                mSelector.startAnimation(mSelectorAnimation);
+                mSelectorAnimation.animateTo(x, y, deltaX, deltaY);
             } else {
                 mSelectorAnimation.setValues(x, y, deltaX, deltaY);
             }
@@ -1174,6 +1275,21 @@ public class LeanbackKeyboardContainer {
         mVoiceListener = listener;
     }
 
+    /**
+     * NOTE: Replace system recognizer, e.g. to test voice input offline
+     */
+    public void setSpeechRecognizer(StreamingRecognizer recognizer) {
+        mSpeechRecognizer.destroy();
+        mSpeechRecognizer = recognizer;
+    }
+
+    private void onVoiceText() {
+        if (!mVoiceFirstTextReceived) {
+            mVoiceFirstTextReceived = true;
+            ImeDiagnostics.recordVoiceTimeToFirstText(SystemClock.uptimeMillis() - mVoiceStartTimeMs);
+        }
+    }
+
     public void startVoiceRecording() {
         if (mVoiceEnabled) {
             if (!mVoiceKeyDismissesEnabled) {
@@ -1218,6 +1334,7 @@ public class LeanbackKeyboardContainer {
         mNumKeyboard = keyboard.numKeyboard;
 
         mThemeManager.updateKeyboardTheme();
+        mThemeManager.updateSuggestionsTheme(mSuggestionsPool);
     }
 
     public void updateSuggestions(ArrayList<String> suggestions) {
@@ -1226,47 +1343,60 @@ public class LeanbackKeyboardContainer {
         int oldCount = mSuggestions.getChildCount();
         int newCount = suggestions.size();
         if (newCount < oldCount) {
-            mSuggestions.removeViews(newCount, oldCount - newCount);
+            recycleSuggestions(newCount);
         } else if (newCount > oldCount) {
             while (oldCount < newCount) {
-                View suggestion = mContext.getLayoutInflater().inflate(R.layout.candidate, null);
-                mSuggestions.addView(suggestion);
+                mSuggestions.addView(obtainSuggestion());
                 ++oldCount;
             }
         }
 
-        for (oldCount = 0; oldCount < newCount; ++oldCount) {
-            Button suggestion = mSuggestions.getChildAt(oldCount).findViewById(R.id.text);
-            suggestion.setText(suggestions.get(oldCount));
-            suggestion.setContentDescription(suggestions.get(oldCount));
+        for (int i = 0; i < newCount; ++i) {
+            Button suggestion = mSuggestions.getChildAt(i).findViewById(R.id.text);
+            String text = suggestions.get(i);
 
-            suggestion.setEnabled(true);
-            suggestion.setOnClickListener(v -> {
+            // rebind only changed slots
+            if (!TextUtils.equals(suggestion.getText(), text)) {
+                suggestion.setText(text);
+                suggestion.setContentDescription(text);
+            }
+        }
 
-                v.requestFocus();
+        if (getCurrFocus().type == KeyFocus.TYPE_SUGGESTION) {
+            resetFocusCursor();
+        }
+    }
 
-                v.setPressed(true);
-                v.refreshDrawableState();
+    /**
+     * NOTE: Take candidate view from the pool or inflate new one
+     */
+    private View obtainSuggestion() {
+        int poolSize = mSuggestionsPool.size();
 
-                v.postDelayed(() -> {
-                    v.setPressed(false);
+        if (poolSize > 0) {
+            ImeDiagnostics.SUGGESTION_VIEWS.hit();
+            return mSuggestionsPool.remove(poolSize - 1);
+        }
 
-                    String suggestionText = ((Button) v).getText().toString();
-                    mContext.handleTextEntry(
-                            InputListener.ENTRY_TYPE_SUGGESTION,
-                            LeanbackKeyboardView.NOT_A_KEY,
-                            suggestionText
-                    );
-                }, 150);
+        ImeDiagnostics.SUGGESTION_VIEWS.miss();
 
-            });
-        }
+        View suggestion = mContext.getLayoutInflater().inflate(R.layout.candidate, null);
+        Button button = suggestion.findViewById(R.id.text);
+        button.setEnabled(true);
+        button.setOnClickListener(mSuggestionClickListener);
+        mThemeManager.applySuggestionTheme(button);
+        return suggestion;
+    }
 
-        if (getCurrFocus().type == KeyFocus.TYPE_SUGGESTION) {
-            resetFocusCursor();
+    /**
+     * NOTE: Detach candidate views starting from the position and put them into the pool
+     */
+    private void recycleSuggestions(int start) {
+        for (int i = mSuggestions.getChildCount() - 1; i >= start; i--) {
+            View suggestion = mSuggestions.getChildAt(i);
+            mSuggestions.removeViewAt(i);
+            mSuggestionsPool.add(suggestion);
         }
-
-        mThemeManager.updateSuggestionsTheme();
     }
 
     public void onLangKeyClick() {
@@ -1372,54 +1502,74 @@ public class LeanbackKeyboardContainer {
         }
     }
 
-    private class ScaleAnimation extends Animation {
-        private float mEndHeight;
-        private float mEndWidth;
-        private float mEndX;
-        private float mEndY;
+    /**
+     * NOTE: Moves selector through {@link android.view.ViewPropertyAnimator} (translation and scale only).<br/>
+     * Layout params are changed once per move and only when the size of the selector is changed.
+     */
+    private class SelectorAnimation {
         private final ViewGroup.LayoutParams mParams;
-        private float mStartHeight;
-        private float mStartWidth;
-        private float mStartX;
-        private float mStartY;
         private final View mView;
+        private final View mContent;
 
-        public ScaleAnimation(FrameLayout view) {
+        public SelectorAnimation(FrameLayout view, View content) {
             mView = view;
+            mContent = content;
             mParams = view.getLayoutParams();
-            setDuration(MOVEMENT_ANIMATION_DURATION);
-            setInterpolator(sMovementInterpolator);
         }
 
-        @Override
-        protected void applyTransformation(float interpolatedTime, Transformation transformation) {
-            if (interpolatedTime == 0.0F) {
-                mStartX = mView.getX();
-                mStartY = mView.getY();
-                mStartWidth = (float) mParams.width;
-                mStartHeight = (float) mParams.height;
-            } else {
-                setValues((mEndX - mStartX) * interpolatedTime + mStartX,
-                            (mEndY - mStartY) * interpolatedTime + mStartY,
-                            (float) ((int) ((mEndWidth - mStartWidth) * interpolatedTime + mStartWidth)),
-                            (float) ((int) ((mEndHeight - mStartHeight) * interpolatedTime + mStartHeight)));
-            }
+        public void cancel() {
+            mView.animate().cancel();
+            mContent.animate().cancel();
         }
 
-        public void setAnimationBounds(float x, float y, float width, float height) {
-            mEndX = x;
-            mEndY = y;
-            mEndWidth = width;
-            mEndHeight = height;
+        public void animateTo(float x, float y, float width, float height) {
+            cancel();
+
+            final float currentWidth = (float) mParams.width * mContent.getScaleX();
+            final float currentHeight = (float) mParams.height * mContent.getScaleY();
+            final float centerX = mView.getX() + (float) mParams.width / 2.0F;
+            final float centerY = mView.getY() + (float) mParams.height / 2.0F;
+
+            if (resize(width, height)) {
+                // keep selector visually unchanged and morph it into the new size
+                mContent.setScaleX(currentWidth / (float) mParams.width);
+                mContent.setScaleY(currentHeight / (float) mParams.height);
+                mView.setX(centerX - (float) mParams.width / 2.0F);
+                mView.setY(centerY - (float) mParams.height / 2.0F);
+            }
+
+            mView.animate()
+                 .x(x)
+                 .y(y)
+                 .setInterpolator(sMovementInterpolator)
+                 .setDuration(MOVEMENT_ANIMATION_DURATION)
+                 .start();
+            mContent.animate()
+                    .scaleX(1.0F)
+                    .scaleY(1.0F)
+                    .setInterpolator(sMovementInterpolator)
+                    .setDuration(MOVEMENT_ANIMATION_DURATION)
+                    .start();
         }
 
         public void setValues(float x, float y, float width, float height) {
+            cancel();
+            resize(width, height);
+            mContent.setScaleX(1.0F);
+            mContent.setScaleY(1.0F);
             mView.setX(x);
             mView.setY(y);
+        }
+
+        private boolean resize(float width, float height) {
+            if (mParams.width == (int) width && mParams.height == (int) height) {
+                return false;
+            }
+
             mParams.width = (int) width;
             mParams.height = (int) height;
             mView.setLayoutParams(mParams);
-            mView.requestLayout();
+            return true;
         }
     }
 
@@ -1503,12 +1653,23 @@ public class LeanbackKeyboardContainer {
 
     public interface VoiceListener {
         void onVoiceResult(String result);
+
+        /**
+         * Recognition isn't finished, text may change
+         * @param partial recognized text or empty string to remove previous one
+         */
+        void onVoicePartialResult(String partial);
     }
 
     private class MyVoiceRecognitionListener implements RecognitionListener {
         float peakRmsLevel = 0.0F;
         int rmsCounter = 0;
 
+        void reset() {
+            peakRmsLevel = 0.0F;
+            rmsCounter = 0;
+        }
+
         @Override
         public void onBeginningOfSpeech() {
             mVoiceButtonView.showRecording();
@@ -1560,7 +1721,13 @@ public class LeanbackKeyboardContainer {
 
         @Override
         public void onPartialResults(Bundle bundle) {
-            // NOP
+            List<String> results = bundle.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+
+            if (results != null && !results.isEmpty() && !TextUtils.isEmpty(results.get(0)) && mVoiceListener != null) {
+                onVoiceText();
+                mVoicePartialShown = true;
+                mVoiceListener.onVoicePartialResult(results.get(0));
+            }
         }
 
         @Override
@@ -1572,7 +1739,9 @@ public class LeanbackKeyboardContainer {
         public void onResults(Bundle bundle) {
             List<String> results = bundle.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
 
-            if (results != null && mVoiceListener != null) {
+            if (results != null && !results.isEmpty() && mVoiceListener != null) {
+                onVoiceText();
+                mVoicePartialShown = false;
                 mVoiceListener.onVoiceResult(results.get(0));
             }
 
@@ -6,6 +6,7 @@ import android.graphics.PointF;
 import android.graphics.Rect;
 import android.inputmethodservice.InputMethodService;
 import android.inputmethodservice.Keyboard.Key;
+import android.os.Build.VERSION;
 import android.os.Handler;
 import android.text.InputType;
 import android.util.Log;
@@ -22,10 +23,15 @@ import androidx.annotation.NonNull;
 
 import com.liskovsoft.leankeyboard.activity.GoogleVoiceInputActivity;
 import com.liskovsoft.leankeyboard.ime.LeanbackKeyboardContainer.KeyFocus;
+import com.liskovsoft.leankeyboard.ime.gesture.GestureDecoder;
+import com.liskovsoft.leankeyboard.ime.gesture.GestureDictionary;
+import com.liskovsoft.leankeyboard.ime.gesture.GestureKeyLayout;
 import com.liskovsoft.leankeyboard.ime.pano.util.TouchNavSpaceTracker;
+import com.liskovsoft.leankeyboard.utils.LeanKeyPreferences;
 import com.liskovsoft.leankeykeyboard.R;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class LeanbackKeyboardController implements LeanbackKeyboardContainer.VoiceListener,
                                                    LeanbackKeyboardContainer.DismissListener,
@@ -34,10 +40,15 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
     private static final boolean DEBUG = false;
     private static final int KEY_CHANGE_HISTORY_SIZE = 10;
     private static final long KEY_CHANGE_REVERT_TIME_MS = 100L;
+    /**
+     * Next long press on delete within this time removes the whole sentence (if enabled in settings)
+     */
+    private static final long DELETE_SENTENCE_TIMEOUT_MS = 1000L;
     private static final String TAG = "LbKbController";
     public static final String TAG_GO = "Go";
     private boolean mClickConsumed;
     private long mLastClickTime;
+    private long mLastDeleteWordTime;
     private LeanbackKeyboardContainer mContainer;
     private InputMethodService mContext;
     private DoubleClickDetector mDoubleClickDetector;
@@ -59,6 +70,11 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
     private boolean mShowInput;
     private int mLastEditorIdPhysicalKeyboardWasUsed;
     private boolean mHideKeyboardWhenPhysicalKeyboardUsed = true;
+    private FrameTimeRecorder mFrameTimeRecorder;
+    private final GestureDecoder mGestureDecoder = new GestureDecoder();
+    private final GestureListener mGestureListener = new GestureListener();
+    private boolean mGestureTypingEnabled;
+    private boolean mGestureInputAllowed = true;
     public LeanbackKeyboardController(final InputMethodService context,
                                       final InputListener listener) {
         this(context, listener, new TouchNavSpaceTracker(), new LeanbackKeyboardContainer(context));
@@ -94,6 +110,9 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         mResizeSquareDistance = context.getResources().getDimension(R.dimen.resize_move_distance);
         mResizeSquareDistance *= mResizeSquareDistance;
         mInputListener = listener;
+        if (VERSION.SDK_INT >= 16) {
+            mFrameTimeRecorder = new FrameTimeRecorder(context, LeanbackKeyboardContainer.MOVEMENT_ANIMATION_DURATION);
+        }
         setSpaceTracker(tracker);
         setKeyboardContainer(container);
         mContainer.setVoiceListener(this);
@@ -163,6 +182,8 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
      * @param focus current key
      */
     private void commitKey(KeyFocus focus) {
+        KeystrokeTracer.mark(KeystrokeTracer.STAGE_COMMIT_KEY);
+
         if (mContainer != null && focus != null) {
             switch (focus.type) {
                 case KeyFocus.TYPE_VOICE:
@@ -215,7 +236,16 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         KeyFocus currentFocus = mContainer.getCurrFocus();
 
         if (currentFocus != null && currentFocus.code == LeanbackKeyboardView.KEYCODE_DELETE) {
-            mInputListener.onEntry(InputListener.ENTRY_TYPE_DELETE_WORD, 0, null);
+            long currentTime = System.currentTimeMillis();
+
+            if (currentTime - mLastDeleteWordTime <= DELETE_SENTENCE_TIMEOUT_MS &&
+                    LeanKeyPreferences.instance(mContext).isSentenceDeleteEnabled()) {
+                mInputListener.onEntry(InputListener.ENTRY_TYPE_DELETE_SENTENCE, 0, null);
+                mLastDeleteWordTime = 0L;
+            } else {
+                mInputListener.onEntry(InputListener.ENTRY_TYPE_DELETE_WORD, 0, null);
+                mLastDeleteWordTime = currentTime;
+            }
         }
         else {
             mContainer.onKeyLongPress();
@@ -315,7 +345,17 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
 
 //              mContainer.startVoiceRecording();
 
+                if (LeanKeyPreferences.instance(mContext).isInlineVoiceEnabled()) {
+                    // recognize inside the keyboard, text is shown while speaking
+                    mContainer.startVoiceRecording();
+                    return;
+                }
+
 //              will call to KeyMapperImeService
+                if (mContext instanceof KeyMapperImeService) {
+                    ((KeyMapperImeService) mContext).expectVoiceResult();
+                }
+
                 Intent intent = new Intent(mContext, GoogleVoiceInputActivity.class);
                 intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
                 mContext.startActivity(intent);
@@ -608,6 +648,9 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
     private boolean onDirectionalMove(int dir) {
         if (mContainer.getNextFocusInDirection(dir, mCurrentFocus, mTempFocus)) {
             mContainer.updateCyclicFocus(dir, mCurrentFocus, mTempFocus);
+            if (mFrameTimeRecorder != null) {
+                mFrameTimeRecorder.onMove();
+            }
             mContainer.setFocus(mTempFocus);
             mCurrentFocus.set(mTempFocus);
             clearKeyIfNecessary();
@@ -726,6 +769,8 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         //if (event.getDeviceId() > 0 && event.isPrintingKey()) onPhysicalKeyboardKeyPressed();
         if (event.isPrintingKey()) onPhysicalKeyboardKeyPressed();
 
+        KeystrokeTracer.begin(event.getEventTime());
+
         mCurrentFocus.set(mContainer.getCurrFocus());
         if (mSpaceTracker != null && mSpaceTracker.onKeyDown(keyCode, event)) {
             return true;
@@ -858,6 +903,11 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         mInputListener.onEntry(InputListener.ENTRY_TYPE_VOICE, 0, result);
     }
 
+    @Override
+    public void onVoicePartialResult(String partial) {
+        mInputListener.onEntry(InputListener.ENTRY_TYPE_VOICE_PARTIAL, 0, partial);
+    }
+
     @Override
     public void run() {
         if (!mClickConsumed) {
@@ -871,16 +921,69 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         container.getView().addOnLayoutChangeListener(mOnLayoutChangeListener);
     }
 
+    /**
+     * NOTE: Filter and prediction smooth the gesture strokes only: without gesture typing there's no touch listener
+     * and the touchpad moves the selector by D-pad keys.
+     */
     public void setSpaceTracker(TouchNavSpaceTracker tracker) {
         mSpaceTracker = tracker;
         tracker.setLPFEnabled(true);
+        tracker.configurePrediction(TouchNavSpaceTracker.DEFAULT_PREDICTION_MS, TouchNavSpaceTracker.DEFAULT_MAX_PREDICTION_MM);
         tracker.setKeyEventListener(mTouchEventListener);
     }
 
+    /**
+     * NOTE: Touchpad strokes type words, the selector follows the finger
+     */
+    public void setGestureTypingEnabled(boolean enabled) {
+        mGestureTypingEnabled = enabled;
+
+        if (mSpaceTracker != null) {
+            mSpaceTracker.setTouchEventListener(enabled ? mGestureListener : null);
+        }
+    }
+
+    public boolean isGestureTypingEnabled() {
+        return mGestureTypingEnabled;
+    }
+
+    /**
+     * NOTE: Strokes only move the selector in the fields without dictionary (passwords, numbers, urls)
+     */
+    public void setGestureInputAllowed(boolean allowed) {
+        mGestureInputAllowed = allowed;
+    }
+
+    /**
+     * @param dictionary words for the current language or null
+     */
+    public void setGestureDictionary(GestureDictionary dictionary) {
+        mGestureDecoder.setDictionary(dictionary);
+    }
+
     public void initKeyboards() {
         mContainer.initKeyboards();
     }
 
+    /**
+     * @param changes combination of the {@link KeyboardSettings} CHANGED_* flags
+     */
+    public void updateKeyboards(int changes) {
+        mContainer.updateKeyboards(changes);
+    }
+
+    public void preloadKeyboards() {
+        mContainer.preloadKeyboards();
+    }
+
+    public void releaseKeyImages() {
+        mContainer.releaseKeyImages();
+    }
+
+    public void releaseInactiveKeyboards() {
+        mContainer.releaseInactiveKeyboards();
+    }
+
     public void updateSuggestions(ArrayList<String> suggestions) {
         if (mContainer != null) {
             mContainer.updateSuggestions(suggestions);
@@ -929,6 +1032,9 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
         int ENTRY_TYPE_VOICE = 6;
         int ENTRY_TYPE_VOICE_DISMISS = 8;
         int ENTRY_TYPE_DELETE_WORD = 9;
+        int ENTRY_TYPE_DELETE_SENTENCE = 10;
+        int ENTRY_TYPE_VOICE_PARTIAL = 11;
+        int ENTRY_TYPE_GESTURE = 12;
 
         /**
          * User has typed something
@@ -987,4 +1093,64 @@ public class LeanbackKeyboardController implements LeanbackKeyboardContainer.Voi
             return handleKeyUpEvent(keyCode, event.getEventTime());
         }
     }
+
+    /**
+     * NOTE: Touchpad stroke from the finger down to the finger up. Short strokes just move the selector.
+     */
+    private class GestureListener extends TouchNavSpaceTracker.SimpleTouchEventListener {
+        private GestureKeyLayout mLayout;
+        private boolean mStrokeStarted;
+
+        @Override
+        public boolean onDown(TouchNavSpaceTracker.PhysicalMotionEvent event) {
+            mStrokeStarted = mGestureInputAllowed && mGestureDecoder.isReady() && mContainer.getCurrFocus().type == KeyFocus.TYPE_MAIN;
+
+            if (mStrokeStarted) {
+                // stroke starts at the selected key
+                updatePositionToCurrentFocus();
+                LeanbackKeyboardContainer.KeyFocus focus = mContainer.getCurrFocus();
+                mGestureDecoder.startStroke(focus.rect.centerX(), focus.rect.centerY());
+                mLayout = mContainer.getGestureKeyLayout();
+            }
+
+            return false;
+        }
+
+        @Override
+        public boolean onMove(TouchNavSpaceTracker.PhysicalMotionEvent down, TouchNavSpaceTracker.PhysicalMotionEvent event, float x, float y) {
+            if (!mStrokeStarted) {
+                return false;
+            }
+
+            mGestureDecoder.addPoint(x, y);
+            moveSelectorToPoint(x, y);
+
+            return true;
+        }
+
+        @Override
+        public boolean onUp(TouchNavSpaceTracker.PhysicalMotionEvent event, float x, float y) {
+            if (!mStrokeStarted) {
+                return false;
+            }
+
+            mStrokeStarted = false;
+
+            if (!mGestureInputAllowed) {
+                // field changed in the middle of the stroke
+                return false;
+            }
+
+            mGestureDecoder.addPoint(x, y);
+            List<String> words = mGestureDecoder.decode(mLayout);
+
+            if (words.isEmpty()) {
+                return false;
+            }
+
+            mInputListener.onEntry(InputListener.ENTRY_TYPE_GESTURE, 0, words.get(0));
+
+            return true;
+        }
+    }
 }
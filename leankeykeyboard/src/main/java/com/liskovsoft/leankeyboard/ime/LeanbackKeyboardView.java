@@ -29,11 +29,11 @@ import java.util.List;
 public class LeanbackKeyboardView extends FrameLayout {
     private static final String TAG = "LbKbView";
     /**
-     * Space key index (important: wrong value will broke navigation)
+     * Space key index
      */
     public static final int ASCII_PERIOD = 47;
     /**
-     * Keys count among which space key spans (important: wrong value will broke navigation)
+     * Keys count among which space key spans (used to fit space icon on large interface)
      */
     public static final int ASCII_PERIOD_LEN = 5;
     public static final int ASCII_SPACE = 32;
@@ -65,6 +65,8 @@ public class LeanbackKeyboardView extends FrameLayout {
     private ImageView[] mKeyImageViews;
     private int mKeyTextColor;
     private Keyboard mKeyboard;
+    private KeySpatialIndex mSpatialIndex;
+    private KeyNavigationGraph mNavigationGraph;
     private KeyHolder[] mKeys;
     private boolean mMiniKeyboardOnScreen;
     private Rect mPadding;
@@ -295,6 +297,17 @@ public class LeanbackKeyboardView extends FrameLayout {
             mKeyImageViews[i] = createKeyImageView(i);
         }
 
+        updateGlyphCacheSize(keys);
+    }
+
+    private static void updateGlyphCacheSize(KeyHolder[] keys) {
+        long bytes = 0;
+
+        for (KeyHolder keyHolder : keys) {
+            bytes += (long) keyHolder.key.width * keyHolder.key.height * 4; // ARGB_8888
+        }
+
+        ImeDiagnostics.setGlyphCacheBytes(bytes);
     }
 
     private void removeMessages() {
@@ -351,67 +364,35 @@ public class LeanbackKeyboardView extends FrameLayout {
     /**
      * Get index of the key under cursor
      * <br/>
-     * Resulted index depends on the space key position
+     * Resulted index is taken from the {@link KeySpatialIndex} built from the real key rects
      * @param x x position
      * @param y y position
      * @return index of the key
      */
     public int getNearestIndex(final float x, final float y) {
-        int result;
-        if (mKeys != null && mKeys.length != 0) {
-            float paddingLeft = (float) getPaddingLeft();
-            float paddingTop = (float) getPaddingTop();
-            float kbHeight = (float) (getMeasuredHeight() - getPaddingTop() - getPaddingBottom());
-            float kbWidth = (float) (getMeasuredWidth() - getPaddingLeft() - getPaddingRight());
-            final int rows = getRowCount();
-            final int cols = getColCount();
-            final int indexVert = (int) ((y - paddingTop) / kbHeight * (float) rows);
-            if (indexVert < 0) {
-                result = 0;
-            } else {
-                result = indexVert;
-                if (indexVert >= rows) {
-                    result = rows - 1;
-                }
-            }
+        if (mKeys == null || mKeys.length == 0 || mSpatialIndex == null) {
+            return 0;
+        }
 
-            final int indexHoriz = (int) ((x - paddingLeft) / kbWidth * (float) cols);
-            int indexFull;
-            if (indexHoriz < 0) {
-                indexFull = 0;
-            } else {
-                indexFull = indexHoriz;
-                if (indexHoriz >= cols) {
-                    indexFull = cols - 1;
-                }
-            }
+        int index = mSpatialIndex.getNearestIndex(x - getPaddingLeft(), y - getPaddingTop());
 
-            indexFull += mColCount * result;
-            result = indexFull;
-            if (indexFull > ASCII_PERIOD) { // key goes beyond space
-                if (indexFull < (ASCII_PERIOD + ASCII_PERIOD_LEN)) {  // key stays within space boundary
-                    result = ASCII_PERIOD;
-                }
-            }
+        if (index < 0) {
+            return 0;
+        }
 
-            indexFull = result;
-            if (result >= (ASCII_PERIOD + ASCII_PERIOD_LEN)) { // is key position after space?
-                indexFull = result - ASCII_PERIOD_LEN + 1;
-            }
+        if (index >= mKeys.length) {
+            return mKeys.length - 1;
+        }
 
-            if (indexFull < 0) {
-                return 0;
-            }
+        return index;
+    }
 
-            result = indexFull;
-            if (indexFull >= mKeys.length) {
-                return mKeys.length - 1;
-            }
-        } else {
-            result = 0;
-        }
+    public KeySpatialIndex getSpatialIndex() {
+        return mSpatialIndex;
+    }
 
-        return result;
+    public KeyNavigationGraph getNavigationGraph() {
+        return mNavigationGraph;
     }
 
     public int getRowCount() {
@@ -427,6 +408,11 @@ public class LeanbackKeyboardView extends FrameLayout {
     }
 
     public void invalidateKey(int keyIndex) {
+        if (mKeyImageViews == null) {
+            invalidateAllKeys();
+            return;
+        }
+
         if (mKeys != null && keyIndex >= 0 && keyIndex < mKeys.length) {
             if (mKeyImageViews[keyIndex] != null) {
                 removeView(mKeyImageViews[keyIndex]);
@@ -436,6 +422,24 @@ public class LeanbackKeyboardView extends FrameLayout {
         }
     }
 
+    /**
+     * NOTE: Drop rendered keys. They're rendered again by {@link #setKeyboard(Keyboard)}.
+     */
+    public void releaseKeyImages() {
+        if (mKeyImageViews == null) {
+            return;
+        }
+
+        for (ImageView image : mKeyImageViews) {
+            removeView(image);
+        }
+
+        mKeyImageViews = null;
+        mCurrentFocusView = null;
+        mFocusIndex = -1;
+        ImeDiagnostics.setGlyphCacheBytes(0);
+    }
+
     public boolean isMiniKeyboardOnScreen() {
         return mMiniKeyboardOnScreen;
     }
@@ -587,6 +591,8 @@ public class LeanbackKeyboardView extends FrameLayout {
     public void setKeyboard(Keyboard keyboard) {
         removeMessages();
         mKeyboard = keyboard;
+        mSpatialIndex = KeySpatialIndex.forKeyboard(keyboard);
+        mNavigationGraph = KeyNavigationGraph.forKeyboard(keyboard);
         setKeys(mKeyboard.getKeys());
         int state = mShiftState;
         mShiftState = -1;
@@ -0,0 +1,197 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.view.inputmethod.InputConnection;
+
+/**
+ * NOTE: Word and sentence delete that never reads the whole field.<br/>
+ * Text before the cursor is scanned backwards in windows of fixed size.
+ * Window without boundary is deleted at once and the scan continues with the next one, so memory usage is constant.<br/>
+ * Boundaries are Unicode based: Vietnamese letters (precomposed or with combining tone marks) are part of the word.
+ */
+public class TextDeleter {
+    private static final int SCAN_WINDOW = 64;
+    private static final int CLASS_SPACE = 0;
+    private static final int CLASS_WORD = 1;
+    private static final int CLASS_PUNCTUATION = 2;
+
+    /**
+     * Delete word before the cursor together with the spaces after it
+     * @return number of deleted chars
+     */
+    public static int deleteWordBeforeCursor(InputConnection ic) {
+        return deleteBeforeCursor(ic, new WordScanner());
+    }
+
+    /**
+     * Delete text back to the start of the current sentence
+     * @return number of deleted chars
+     */
+    public static int deleteSentenceBeforeCursor(InputConnection ic) {
+        return deleteBeforeCursor(ic, new SentenceScanner());
+    }
+
+    private static int deleteBeforeCursor(InputConnection ic, Scanner scanner) {
+        if (ic == null) {
+            return 0;
+        }
+
+        int total = 0;
+
+        ic.beginBatchEdit();
+        try {
+            while (true) {
+                CharSequence window = ic.getTextBeforeCursor(SCAN_WINDOW, 0);
+
+                if (window == null || window.length() == 0) {
+                    break;
+                }
+
+                int length = window.length();
+                int keep = scanner.scan(window);
+
+                // whole window is whitespace that should be kept: delete it anyway to avoid endless loop
+                int delete = keep >= 0 ? length - keep : length - scanner.pendingLength();
+                if (delete <= 0 && keep < 0) {
+                    delete = length;
+                }
+
+                if (delete > 0) {
+                    ic.deleteSurroundingText(delete, 0);
+                    total += delete;
+                }
+
+                // boundary is found or the field start is reached
+                if (keep >= 0 || length < SCAN_WINDOW) {
+                    break;
+                }
+            }
+        } finally {
+            ic.endBatchEdit();
+        }
+
+        return total;
+    }
+
+    private static int getCharClass(int codePoint) {
+        if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)) {
+            return CLASS_SPACE;
+        }
+
+        if (Character.isLetterOrDigit(codePoint)) {
+            return CLASS_WORD;
+        }
+
+        switch (Character.getType(codePoint)) {
+            case Character.NON_SPACING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.SURROGATE:
+                return CLASS_WORD;
+        }
+
+        return CLASS_PUNCTUATION;
+    }
+
+    private static boolean isSentenceTerminator(int codePoint) {
+        switch (codePoint) {
+            case '.':
+            case '!':
+            case '?':
+            case '\n':
+            case '\u2026': // ellipsis
+            case '\u3002': // ideographic full stop
+            case '\uff01': // fullwidth exclamation mark
+            case '\uff1f': // fullwidth question mark
+                return true;
+        }
+
+        return false;
+    }
+
+    private interface Scanner {
+        /**
+         * Continue scan with the next window (scan goes from the end of the window)
+         * @return number of chars at the start of the window that should be kept or -1 if boundary isn't found
+         */
+        int scan(CharSequence window);
+
+        /**
+         * @return number of chars at the start of the window that should be kept when the window is exhausted
+         */
+        int pendingLength();
+    }
+
+    private static class WordScanner implements Scanner {
+        private int mWordClass = CLASS_SPACE;
+
+        @Override
+        public int scan(CharSequence window) {
+            int i = window.length();
+
+            while (i > 0) {
+                int codePoint = Character.codePointBefore(window, i);
+                int charClass = getCharClass(codePoint);
+
+                if (mWordClass == CLASS_SPACE) {
+                    mWordClass = charClass;
+                } else if (charClass != mWordClass) {
+                    return i;
+                }
+
+                i -= Character.charCount(codePoint);
+            }
+
+            return -1;
+        }
+
+        @Override
+        public int pendingLength() {
+            return 0;
+        }
+    }
+
+    private static class SentenceScanner implements Scanner {
+        private static final int STATE_TRAILING_SPACES = 0;
+        private static final int STATE_TRAILING_TERMINATORS = 1;
+        private static final int STATE_SENTENCE = 2;
+        private int mState = STATE_TRAILING_SPACES;
+        private int mSpaceRun;
+
+        @Override
+        public int scan(CharSequence window) {
+            int i = window.length();
+            mSpaceRun = 0;
+
+            while (i > 0) {
+                int codePoint = Character.codePointBefore(window, i);
+
+                if (mState == STATE_TRAILING_SPACES && !Character.isWhitespace(codePoint)) {
+                    mState = STATE_TRAILING_TERMINATORS;
+                }
+
+                if (mState == STATE_TRAILING_TERMINATORS && !isSentenceTerminator(codePoint)) {
+                    mState = STATE_SENTENCE;
+                }
+
+                if (mState == STATE_SENTENCE) {
+                    if (isSentenceTerminator(codePoint)) {
+                        // keep the spaces that follow previous sentence
+                        return i + mSpaceRun;
+                    }
+
+                    mSpaceRun = Character.isWhitespace(codePoint) ? mSpaceRun + Character.charCount(codePoint) : 0;
+                }
+
+                i -= Character.charCount(codePoint);
+            }
+
+            return -1;
+        }
+
+        @Override
+        public int pendingLength() {
+            return mSpaceRun;
+        }
+    }
+}
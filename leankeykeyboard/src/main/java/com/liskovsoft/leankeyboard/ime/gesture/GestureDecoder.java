@@ -0,0 +1,399 @@
+package com.liskovsoft.leankeyboard.ime.gesture;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.liskovsoft.leankeyboard.ime.gesture.GestureDictionary.NO_NODE;
+import static com.liskovsoft.leankeyboard.ime.gesture.GestureDictionary.ROOT;
+
+/**
+ * NOTE: Shape writing decoder: finds the words which key-to-key templates match the stroke.<br/>
+ * Stroke is resampled to {@link #SAMPLE_COUNT} equidistant points. Beam search walks the {@link GestureDictionary} trie,
+ * every letter is aligned to the next point where the stroke passes by its key.
+ * Cost of the word: distance from the aligned points to the keys (location) plus deviation of the stroke
+ * from the straight key-to-key segments (shape), plus small frequency prior.<br/>
+ * NOTE: Not thread safe, stroke and decoding should be done on the same (main) thread.
+ */
+public class GestureDecoder {
+    private static final int MAX_RAW_POINTS = 256;
+    private static final int SAMPLE_COUNT = 40;
+    private static final int BEAM_WIDTH = 64;
+    private static final int MAX_RESULTS = 5;
+    /**
+     * Passes by the same key to try (letter may be passed on the way to the other key)
+     */
+    private static final int MAX_PASSES = 2;
+    /**
+     * Distances are in key widths
+     */
+    private static final float MIN_STROKE_LENGTH = 1.5F;
+    private static final float MAX_KEY_DISTANCE = 0.9F;
+    private static final float SHAPE_WEIGHT = 1.0F;
+    private static final float DOUBLE_LETTER_COST = 0.1F;
+    private static final float FREQUENCY_WEIGHT = 0.03F;
+    private final float[] mRawX = new float[MAX_RAW_POINTS];
+    private final float[] mRawY = new float[MAX_RAW_POINTS];
+    private int mRawCount;
+    private final float[] mX = new float[SAMPLE_COUNT];
+    private final float[] mY = new float[SAMPLE_COUNT];
+    private final float[][] mDistance = new float[GestureKeyLayout.LETTER_COUNT][SAMPLE_COUNT];
+    private Beam mBeam = new Beam();
+    private Beam mNextBeam = new Beam();
+    private final int[] mResultNodes = new int[MAX_RESULTS];
+    private final int[] mResultVariants = new int[MAX_RESULTS];
+    private final float[] mResultScores = new float[MAX_RESULTS];
+    private int mResultCount;
+    private float mKeyWidth;
+    private GestureDictionary mDictionary;
+
+    /**
+     * Search states of the same depth, worst one is replaced when full
+     */
+    private static final class Beam {
+        final int[] nodes = new int[BEAM_WIDTH];
+        final int[] indexes = new int[BEAM_WIDTH];
+        final int[] letters = new int[BEAM_WIDTH];
+        final float[] locationCosts = new float[BEAM_WIDTH];
+        final float[] shapeCosts = new float[BEAM_WIDTH];
+        final float[] scores = new float[BEAM_WIDTH];
+        int size;
+
+        void add(int node, int index, int letter, float locationCost, float shapeCost, int depth) {
+            float score = locationCost / depth + SHAPE_WEIGHT * shapeCost / (index + 1);
+            int pos = size;
+
+            if (size == BEAM_WIDTH) {
+                pos = 0;
+
+                for (int i = 1; i < size; i++) {
+                    if (scores[i] > scores[pos]) {
+                        pos = i;
+                    }
+                }
+
+                if (scores[pos] <= score) {
+                    return;
+                }
+            } else {
+                size++;
+            }
+
+            nodes[pos] = node;
+            indexes[pos] = index;
+            letters[pos] = letter;
+            locationCosts[pos] = locationCost;
+            shapeCosts[pos] = shapeCost;
+            scores[pos] = score;
+        }
+    }
+
+    /**
+     * @param dictionary words to match or null to disable
+     */
+    public void setDictionary(GestureDictionary dictionary) {
+        mDictionary = dictionary;
+    }
+
+    public boolean isReady() {
+        return mDictionary != null;
+    }
+
+    public void startStroke(float x, float y) {
+        mRawCount = 0;
+        addPoint(x, y);
+    }
+
+    public void addPoint(float x, float y) {
+        if (mRawCount == MAX_RAW_POINTS) {
+            // keep every other point, shape of the stroke stays the same
+            for (int i = 0; i < MAX_RAW_POINTS / 2; i++) {
+                mRawX[i] = mRawX[i * 2];
+                mRawY[i] = mRawY[i * 2];
+            }
+
+            mRawCount = MAX_RAW_POINTS / 2;
+        }
+
+        mRawX[mRawCount] = x;
+        mRawY[mRawCount] = y;
+        mRawCount++;
+    }
+
+    /**
+     * @param layout keys of the keyboard the stroke is drawn over
+     * @return best words first, empty if the stroke is too short to be a gesture or nothing matches
+     */
+    public List<String> decode(GestureKeyLayout layout) {
+        List<String> words = new ArrayList<>();
+        GestureDictionary dictionary = mDictionary;
+
+        if (dictionary == null || layout == null || !layout.isUsable() || mRawCount < 2) {
+            return words;
+        }
+
+        mKeyWidth = layout.getKeyWidth();
+
+        if (!resample()) {
+            return words;
+        }
+
+        computeDistances(layout);
+        search(dictionary, layout);
+
+        for (int i = 0; i < mResultCount; i++) {
+            words.add(dictionary.getWords(mResultNodes[i])[mResultVariants[i]]);
+        }
+
+        return words;
+    }
+
+    /**
+     * @return false if the stroke is too short
+     */
+    private boolean resample() {
+        float length = 0;
+
+        for (int i = 1; i < mRawCount; i++) {
+            length += distance(mRawX[i - 1], mRawY[i - 1], mRawX[i], mRawY[i]);
+        }
+
+        if (length < MIN_STROKE_LENGTH * mKeyWidth) {
+            return false;
+        }
+
+        float step = length / (SAMPLE_COUNT - 1);
+        float prevX = mRawX[0];
+        float prevY = mRawY[0];
+        float passed = 0;
+        int count = 1;
+        mX[0] = prevX;
+        mY[0] = prevY;
+
+        for (int i = 1; i < mRawCount && count < SAMPLE_COUNT - 1; ) {
+            float segment = distance(prevX, prevY, mRawX[i], mRawY[i]);
+
+            if (segment > 0 && passed + segment >= step) {
+                float ratio = (step - passed) / segment;
+                prevX += ratio * (mRawX[i] - prevX);
+                prevY += ratio * (mRawY[i] - prevY);
+                mX[count] = prevX;
+                mY[count] = prevY;
+                count++;
+                passed = 0;
+            } else {
+                passed += segment;
+                prevX = mRawX[i];
+                prevY = mRawY[i];
+                i++;
+            }
+        }
+
+        for (; count < SAMPLE_COUNT; count++) {
+            mX[count] = mRawX[mRawCount - 1];
+            mY[count] = mRawY[mRawCount - 1];
+        }
+
+        return true;
+    }
+
+    private void computeDistances(GestureKeyLayout layout) {
+        for (int letter = 0; letter < GestureKeyLayout.LETTER_COUNT; letter++) {
+            float[] distances = mDistance[letter];
+
+            for (int j = 0; j < SAMPLE_COUNT; j++) {
+                distances[j] = layout.hasLetter(letter) ?
+                        distance(mX[j], mY[j], layout.getX(letter), layout.getY(letter)) / mKeyWidth : Float.MAX_VALUE;
+            }
+        }
+    }
+
+    private void search(GestureDictionary dictionary, GestureKeyLayout layout) {
+        mResultCount = 0;
+        mBeam.size = 0;
+
+        // first letter is where the stroke starts
+        for (int child = dictionary.getFirstChild(ROOT); child != NO_NODE; child = dictionary.getNextSibling(child)) {
+            int letter = dictionary.getLetter(child);
+
+            if (mDistance[letter][0] <= MAX_KEY_DISTANCE) {
+                mBeam.add(child, 0, letter, mDistance[letter][0], 0, 1);
+            }
+        }
+
+        for (int depth = 1; mBeam.size > 0; depth++) {
+            Beam beam = mBeam;
+            Beam next = mNextBeam;
+            next.size = 0;
+
+            for (int i = 0; i < beam.size; i++) {
+                int node = beam.nodes[i];
+                int index = beam.indexes[i];
+                int last = beam.letters[i];
+                float locationCost = beam.locationCosts[i];
+                float shapeCost = beam.shapeCosts[i];
+
+                if (dictionary.getWords(node) != null) {
+                    addResult(dictionary, node, index, last, locationCost, shapeCost, depth);
+                }
+
+                for (int child = dictionary.getFirstChild(node); child != NO_NODE; child = dictionary.getNextSibling(child)) {
+                    int letter = dictionary.getLetter(child);
+
+                    if (!layout.hasLetter(letter)) {
+                        continue;
+                    }
+
+                    if (letter == last) {
+                        next.add(child, index, letter, locationCost + DOUBLE_LETTER_COST, shapeCost, depth + 1);
+                        continue;
+                    }
+
+                    int passes = 0;
+                    int lastPass = -1;
+
+                    for (int j = index + 1; j < SAMPLE_COUNT && passes < MAX_PASSES; j++) {
+                        if (isPass(letter, j)) {
+                            next.add(child, j, letter, locationCost + mDistance[letter][j],
+                                    shapeCost + getSegmentCost(layout, last, letter, index, j), depth + 1);
+                            passes++;
+                            lastPass = j;
+                        }
+                    }
+
+                    // last letter is where the stroke ends, even if the key was passed before
+                    int end = SAMPLE_COUNT - 1;
+
+                    if (lastPass != end && end > index && mDistance[letter][end] <= MAX_KEY_DISTANCE) {
+                        next.add(child, end, letter, locationCost + mDistance[letter][end],
+                                shapeCost + getSegmentCost(layout, last, letter, index, end), depth + 1);
+                    }
+                }
+            }
+
+            mBeam = next;
+            mNextBeam = beam;
+        }
+
+        sortResults();
+    }
+
+    /**
+     * Stroke comes closest to the key at this point
+     */
+    private boolean isPass(int letter, int index) {
+        float[] distances = mDistance[letter];
+        float distance = distances[index];
+
+        return distance <= MAX_KEY_DISTANCE &&
+                (index == 0 || distance < distances[index - 1]) &&
+                (index == SAMPLE_COUNT - 1 || distance <= distances[index + 1]);
+    }
+
+    /**
+     * Deviation of the stroke points between the keys from the straight key-to-key segment
+     */
+    private float getSegmentCost(GestureKeyLayout layout, int from, int to, int fromIndex, int toIndex) {
+        float cost = 0;
+        float ax = layout.getX(from);
+        float ay = layout.getY(from);
+        float bx = layout.getX(to);
+        float by = layout.getY(to);
+
+        for (int k = fromIndex + 1; k < toIndex; k++) {
+            cost += segmentDistance(mX[k], mY[k], ax, ay, bx, by) / mKeyWidth;
+        }
+
+        return cost;
+    }
+
+    private void addResult(GestureDictionary dictionary, int node, int index, int last, float locationCost, float shapeCost, int depth) {
+        int end = SAMPLE_COUNT - 1;
+
+        if (mDistance[last][end] > MAX_KEY_DISTANCE) {
+            return;
+        }
+
+        // rest of the stroke should stay on the last key
+        float tailCost = 0;
+
+        for (int k = index + 1; k <= end; k++) {
+            tailCost += mDistance[last][k];
+        }
+
+        float score = locationCost / depth + SHAPE_WEIGHT * (shapeCost + tailCost) / SAMPLE_COUNT;
+        int[] ranks = dictionary.getRanks(node);
+
+        for (int variant = 0; variant < ranks.length; variant++) {
+            addResult(node, variant, score + FREQUENCY_WEIGHT * (float) Math.log(1 + ranks[variant]));
+        }
+    }
+
+    private void addResult(int node, int variant, float score) {
+        int pos = -1;
+
+        for (int i = 0; i < mResultCount; i++) {
+            if (mResultNodes[i] == node && mResultVariants[i] == variant) {
+                if (mResultScores[i] > score) {
+                    mResultScores[i] = score;
+                }
+
+                return;
+            }
+
+            if (pos == -1 || mResultScores[i] > mResultScores[pos]) {
+                pos = i;
+            }
+        }
+
+        if (mResultCount < MAX_RESULTS) {
+            pos = mResultCount++;
+        } else if (mResultScores[pos] <= score) {
+            return;
+        }
+
+        mResultNodes[pos] = node;
+        mResultVariants[pos] = variant;
+        mResultScores[pos] = score;
+    }
+
+    private void sortResults() {
+        for (int i = 1; i < mResultCount; i++) {
+            for (int j = i; j > 0 && mResultScores[j] < mResultScores[j - 1]; j--) {
+                swapResults(j, j - 1);
+            }
+        }
+    }
+
+    private void swapResults(int a, int b) {
+        int node = mResultNodes[a];
+        int variant = mResultVariants[a];
+        float score = mResultScores[a];
+        mResultNodes[a] = mResultNodes[b];
+        mResultVariants[a] = mResultVariants[b];
+        mResultScores[a] = mResultScores[b];
+        mResultNodes[b] = node;
+        mResultVariants[b] = variant;
+        mResultScores[b] = score;
+    }
+
+    private static float distance(float x1, float y1, float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static float segmentDistance(float px, float py, float ax, float ay, float bx, float by) {
+        float dx = bx - ax;
+        float dy = by - ay;
+        float lengthSquared = dx * dx + dy * dy;
+
+        if (lengthSquared == 0) {
+            return distance(px, py, ax, ay);
+        }
+
+        float t = ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+
+        return distance(px, py, ax + t * dx, ay + t * dy);
+    }
+}
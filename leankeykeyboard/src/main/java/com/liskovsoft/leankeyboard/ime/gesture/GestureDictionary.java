@@ -0,0 +1,172 @@
+package com.liskovsoft.leankeyboard.ime.gesture;
+
+import java.util.Arrays;
+
+/**
+ * NOTE: Trie of the unaccented word keys, the search space of the {@link GestureDecoder}.<br/>
+ * Nodes are kept in flat arrays (first child, next sibling), so the decoder walks it without allocations.
+ * Terminal node keeps few accented words with the same key (e.g. "la": là, la, lá), most frequent first.<br/>
+ * NOTE: Build on the background thread, don't modify after it's passed to the decoder.
+ */
+public class GestureDictionary {
+    private static final int MAX_WORDS_PER_KEY = 3;
+    private static final int MAX_KEY_LENGTH = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+    static final int ROOT = 0;
+    static final int NO_NODE = -1;
+    private int[] mFirstChild = new int[INITIAL_CAPACITY];
+    private int[] mNextSibling = new int[INITIAL_CAPACITY];
+    private byte[] mLetter = new byte[INITIAL_CAPACITY];
+    private String[][] mWords = new String[INITIAL_CAPACITY][];
+    private int[][] mRanks = new int[INITIAL_CAPACITY][];
+    private int mNodeCount;
+    private int mWordCount;
+
+    public GestureDictionary() {
+        mNodeCount = 1;
+        mFirstChild[ROOT] = NO_NODE;
+        mNextSibling[ROOT] = NO_NODE;
+    }
+
+    /**
+     * @param key unaccented lower case word, keys with other chars than a-z are skipped
+     * @param word word to type
+     * @param rank lower is more frequent
+     */
+    public void add(String key, String word, int rank) {
+        if (key == null || word == null || key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return;
+        }
+
+        // removeAccents keeps the vietnamese d with stroke
+        key = key.replace('\u0111', 'd');
+
+        for (int i = 0; i < key.length(); i++) {
+            char letter = key.charAt(i);
+
+            if (letter < 'a' || letter > 'z') {
+                return;
+            }
+        }
+
+        int node = ROOT;
+
+        for (int i = 0; i < key.length(); i++) {
+            node = getOrAddChild(node, key.charAt(i) - 'a');
+        }
+
+        addWord(node, word, rank);
+    }
+
+    public int getWordCount() {
+        return mWordCount;
+    }
+
+    int getFirstChild(int node) {
+        return mFirstChild[node];
+    }
+
+    int getNextSibling(int node) {
+        return mNextSibling[node];
+    }
+
+    int getLetter(int node) {
+        return mLetter[node];
+    }
+
+    /**
+     * @return words of the terminal node or null
+     */
+    String[] getWords(int node) {
+        return mWords[node];
+    }
+
+    int[] getRanks(int node) {
+        return mRanks[node];
+    }
+
+    private int getOrAddChild(int node, int letter) {
+        int child = mFirstChild[node];
+
+        while (child != NO_NODE) {
+            if (mLetter[child] == letter) {
+                return child;
+            }
+
+            child = mNextSibling[child];
+        }
+
+        ensureCapacity(mNodeCount + 1);
+
+        child = mNodeCount++;
+        mLetter[child] = (byte) letter;
+        mFirstChild[child] = NO_NODE;
+        mNextSibling[child] = mFirstChild[node];
+        mFirstChild[node] = child;
+
+        return child;
+    }
+
+    private void addWord(int node, String word, int rank) {
+        String[] words = mWords[node];
+        int[] ranks = mRanks[node];
+
+        if (words == null) {
+            mWords[node] = new String[] {word};
+            mRanks[node] = new int[] {rank};
+            mWordCount++;
+            return;
+        }
+
+        int pos = 0;
+
+        for (int i = 0; i < words.length; i++) {
+            if (words[i].equals(word)) {
+                return;
+            }
+
+            if (ranks[i] <= rank) {
+                pos = i + 1;
+            }
+        }
+
+        if (pos >= MAX_WORDS_PER_KEY) {
+            return;
+        }
+
+        int size = Math.min(words.length + 1, MAX_WORDS_PER_KEY);
+        String[] newWords = new String[size];
+        int[] newRanks = new int[size];
+
+        for (int i = 0, j = 0; i < size; i++) {
+            if (i == pos) {
+                newWords[i] = word;
+                newRanks[i] = rank;
+            } else {
+                newWords[i] = words[j];
+                newRanks[i] = ranks[j];
+                j++;
+            }
+        }
+
+        mWords[node] = newWords;
+        mRanks[node] = newRanks;
+
+        if (size > words.length) {
+            mWordCount++;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= mFirstChild.length) {
+            return;
+        }
+
+        int capacity = Math.max(size, mFirstChild.length * 2);
+        mFirstChild = Arrays.copyOf(mFirstChild, capacity);
+        mNextSibling = Arrays.copyOf(mNextSibling, capacity);
+        mLetter = Arrays.copyOf(mLetter, capacity);
+        mWords = Arrays.copyOf(mWords, capacity);
+        mRanks = Arrays.copyOf(mRanks, capacity);
+    }
+}
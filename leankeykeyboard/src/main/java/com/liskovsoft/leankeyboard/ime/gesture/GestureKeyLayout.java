@@ -0,0 +1,75 @@
+package com.liskovsoft.leankeyboard.ime.gesture;
+
+import android.inputmethodservice.Keyboard;
+import android.inputmethodservice.Keyboard.Key;
+
+/**
+ * NOTE: Letter key centers of the {@link Keyboard}, the templates the gesture is matched against.<br/>
+ * Only latin letters are used (dictionary keys are unaccented), first key wins if the letter is repeated.
+ */
+public class GestureKeyLayout {
+    static final int LETTER_COUNT = 26;
+    /**
+     * Layouts with fewer letters (cyrillic, symbols) can't be used for the gestures
+     */
+    private static final int MIN_LETTERS = 20;
+    private final float[] mCenterX = new float[LETTER_COUNT];
+    private final float[] mCenterY = new float[LETTER_COUNT];
+    private final boolean[] mHasLetter = new boolean[LETTER_COUNT];
+    private int mLetterCount;
+    private float mWidthSum;
+
+    /**
+     * @param offsetX key coordinates to the stroke coordinates
+     * @param offsetY key coordinates to the stroke coordinates
+     */
+    public GestureKeyLayout(Keyboard keyboard, float offsetX, float offsetY) {
+        for (Key key : keyboard.getKeys()) {
+            if (key.codes == null || key.codes.length == 0) {
+                continue;
+            }
+
+            addKey(key.codes[0], offsetX + key.x + key.width / 2.0F, offsetY + key.y + key.height / 2.0F, key.width);
+        }
+    }
+
+    /**
+     * Empty layout, keys are added with {@link #addKey(int, float, float, float)}
+     */
+    GestureKeyLayout() {
+    }
+
+    void addKey(int code, float centerX, float centerY, float width) {
+        int letter = Character.toLowerCase(code) - 'a';
+
+        if (letter < 0 || letter >= LETTER_COUNT || mHasLetter[letter]) {
+            return;
+        }
+
+        mHasLetter[letter] = true;
+        mCenterX[letter] = centerX;
+        mCenterY[letter] = centerY;
+        mWidthSum += width;
+        mLetterCount++;
+    }
+
+    public boolean isUsable() {
+        return mLetterCount >= MIN_LETTERS;
+    }
+
+    public float getKeyWidth() {
+        return mLetterCount > 0 ? mWidthSum / mLetterCount : 1.0F;
+    }
+
+    boolean hasLetter(int letter) {
+        return mHasLetter[letter];
+    }
+
+    float getX(int letter) {
+        return mCenterX[letter];
+    }
+
+    float getY(int letter) {
+        return mCenterY[letter];
+    }
+}
@@ -0,0 +1,76 @@
+package com.liskovsoft.leankeyboard.ime.pano.util;
+
+/**
+ * NOTE: One Euro filter (Casiez et al.): low-pass filter which cutoff grows with the speed of the signal.<br/>
+ * Slow movement is smoothed hard (no jitter), fast movement passes almost unfiltered (no lag).<br/>
+ * Plain java without android dependencies, so recorded (time, value) traces can be replayed through it offline.
+ */
+public class OneEuroFilter {
+    /**
+     * Used when events come with the same timestamp
+     */
+    private static final float FALLBACK_PERIOD_SEC = 0.008F;
+    private final float mMinCutoff;
+    private final float mBeta;
+    private final float mDerivativeCutoff;
+    private float mValue;
+    private float mDerivative;
+    private long mLastTimeMs;
+    private boolean mInitialized;
+
+    /**
+     * @param minCutoffHz cutoff at rest, lower values remove more jitter
+     * @param beta cutoff increase per unit of speed (value units per second), higher values remove more lag
+     * @param derivativeCutoffHz cutoff of the speed estimation
+     */
+    public OneEuroFilter(float minCutoffHz, float beta, float derivativeCutoffHz) {
+        mMinCutoff = minCutoffHz;
+        mBeta = beta;
+        mDerivativeCutoff = derivativeCutoffHz;
+    }
+
+    /**
+     * Start new gesture from the given value
+     */
+    public void reset(float value, long timeMs) {
+        mValue = value;
+        mDerivative = 0;
+        mLastTimeMs = timeMs;
+        mInitialized = true;
+    }
+
+    public float filter(float value, long timeMs) {
+        if (!mInitialized) {
+            reset(value, timeMs);
+            return value;
+        }
+
+        long periodMs = timeMs - mLastTimeMs;
+        float period = periodMs > 0 ? periodMs / 1000.0F : FALLBACK_PERIOD_SEC;
+
+        float derivative = (value - mValue) / period;
+        mDerivative += alpha(mDerivativeCutoff, period) * (derivative - mDerivative);
+
+        float cutoff = mMinCutoff + mBeta * Math.abs(mDerivative);
+        mValue += alpha(cutoff, period) * (value - mValue);
+        mLastTimeMs = timeMs;
+
+        return mValue;
+    }
+
+    public float getValue() {
+        return mValue;
+    }
+
+    /**
+     * @return smoothed speed, value units per second
+     */
+    public float getDerivative() {
+        return mDerivative;
+    }
+
+    private static float alpha(float cutoffHz, float period) {
+        float tau = 1.0F / (2.0F * (float) Math.PI * cutoffHz);
+        return 1.0F / (1.0F + tau / period);
+    }
+}
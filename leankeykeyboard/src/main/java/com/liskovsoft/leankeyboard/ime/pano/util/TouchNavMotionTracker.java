@@ -11,7 +11,10 @@ public class TouchNavMotionTracker {
     private static final float MINIMUM_FLING_VELOCITY = 200.0F;
     private float mCurrX;
     private float mCurrY;
-    private MotionEvent mDownEvent;
+    private boolean mHasDown;
+    private float mDownX;
+    private float mDownY;
+    private long mDownTime;
     private final float mMaxFlingVelocityX;
     private final float mMaxFlingVelocityY;
     private final float mMinFlingVelocityX;
@@ -27,6 +30,10 @@ public class TouchNavMotionTracker {
     private float mVelX;
     private float mVelY;
     private VelocityTracker mVelocityTracker;
+    private OneEuroFilter mFilterX;
+    private OneEuroFilter mFilterY;
+    private float mPredictionX;
+    private float mPredictionY;
 
     public TouchNavMotionTracker(float resolutionX, float resolutionY, float minScrollDist) {
         if (resolutionX <= 0.0F) {
@@ -85,17 +92,15 @@ public class TouchNavMotionTracker {
         mVelocityTracker.addMovement(event);
     }
 
+    /**
+     * NOTE: End of the gesture. Velocity tracker is kept for the next one, so nothing is allocated per gesture.
+     */
     public void clear() {
-        if (mDownEvent != null) {
-            mDownEvent.recycle();
-            mDownEvent = null;
-        }
+        mHasDown = false;
 
         if (mVelocityTracker != null) {
-            mVelocityTracker.recycle();
-            mVelocityTracker = null;
+            mVelocityTracker.clear();
         }
-
     }
 
     public boolean computeVelocity() {
@@ -105,8 +110,94 @@ public class TouchNavMotionTracker {
         return Math.abs(mVelX) > mMinFlingVelocityX || Math.abs(mVelY) > mMinFlingVelocityY;
     }
 
-    public MotionEvent getDownEvent() {
-        return mDownEvent;
+    /**
+     * NOTE: Filter params are in millimeters, so they don't depend on the touchpad resolution
+     * @param minCutoffHz cutoff at rest
+     * @param betaPerMm cutoff increase per mm/s of the finger speed
+     * @param derivativeCutoffHz cutoff of the speed estimation
+     */
+    public void configureFilter(float minCutoffHz, float betaPerMm, float derivativeCutoffHz) {
+        mFilterX = new OneEuroFilter(minCutoffHz, betaPerMm / mResolutionX, derivativeCutoffHz);
+        mFilterY = new OneEuroFilter(minCutoffHz, betaPerMm / mResolutionY, derivativeCutoffHz);
+    }
+
+    public void resetFilter(float currX, float currY, long timeMs) {
+        if (mFilterX != null) {
+            mFilterX.reset(currX, timeMs);
+            mFilterY.reset(currY, timeMs);
+        }
+
+        mPredictionX = 0;
+        mPredictionY = 0;
+    }
+
+    /**
+     * Results are in {@link #getFilteredX()} and {@link #getFilteredY()}
+     */
+    public void filter(float currX, float currY, long timeMs) {
+        if (mFilterX != null) {
+            mFilterX.filter(currX, timeMs);
+            mFilterY.filter(currY, timeMs);
+        }
+    }
+
+    public float getFilteredX() {
+        return mFilterX != null ? mFilterX.getValue() : mCurrX;
+    }
+
+    public float getFilteredY() {
+        return mFilterY != null ? mFilterY.getValue() : mCurrY;
+    }
+
+    /**
+     * NOTE: Extrapolate the finger position by the current velocity to hide the input and render latency.<br/>
+     * Offset is limited, so a sudden stop doesn't throw the pointer far away.
+     * Results are in {@link #getPredictionX()} and {@link #getPredictionY()}
+     * @param horizonMs how far ahead to look
+     * @param maxDistanceMm offset limit
+     */
+    public void updatePrediction(long horizonMs, float maxDistanceMm) {
+        if (mVelocityTracker == null || horizonMs <= 0) {
+            mPredictionX = 0;
+            mPredictionY = 0;
+            return;
+        }
+
+        mVelocityTracker.computeCurrentVelocity(1000);
+        float horizon = horizonMs / 1000.0F;
+        mPredictionX = clamp(mVelocityTracker.getXVelocity() * horizon, maxDistanceMm * mResolutionX);
+        mPredictionY = clamp(mVelocityTracker.getYVelocity() * horizon, maxDistanceMm * mResolutionY);
+    }
+
+    public float getPredictionX() {
+        return mPredictionX;
+    }
+
+    public float getPredictionY() {
+        return mPredictionY;
+    }
+
+    private static float clamp(float value, float limit) {
+        return Math.max(-limit, Math.min(limit, value));
+    }
+
+    public boolean hasDown() {
+        return mHasDown;
+    }
+
+    /**
+     * Raw coordinates of the gesture start
+     */
+    public float getDownX() {
+        return mDownX;
+    }
+
+    public float getDownY() {
+        return mDownY;
+    }
+
+    public long getDownTime() {
+        return mDownTime;
     }
 
     public float getPhysicalX(float x) {
@@ -141,12 +232,14 @@ public class TouchNavMotionTracker {
         return mVelY;
     }
 
-    public void setDownEvent(MotionEvent event) {
-        if (mDownEvent != null && event != mDownEvent) {
-            mDownEvent.recycle();
-        }
-
-        mDownEvent = event;
+    /**
+     * NOTE: Gesture start is kept in primitives, so the event doesn't need to be copied
+     */
+    public void setDown(float downX, float downY, long downTime) {
+        mHasDown = true;
+        mDownX = downX;
+        mDownY = downY;
+        mDownTime = downTime;
     }
 
     public boolean setNewValues(float currX, float currY) {
@@ -18,7 +18,14 @@ public class TouchNavSpaceTracker {
     public static final long DEFAULT_DAMPENING_DURATION_MS = 200L;
     public static final long DEFAULT_DAMPING_DURATION_MS = 200L;
     public static final float DEFAULT_HORIZONTAL_SIZE_MM = 120.0F;
-    public static final float DEFAULT_LPF_COEFF = 0.25F;
+    /**
+     * One Euro filter defaults, see {@link #configureFilter(float, float, float)}
+     */
+    public static final float DEFAULT_FILTER_MIN_CUTOFF_HZ = 1.5F;
+    public static final float DEFAULT_FILTER_BETA = 0.05F;
+    public static final float DEFAULT_FILTER_DERIVATIVE_CUTOFF_HZ = 1.0F;
+    public static final long DEFAULT_PREDICTION_MS = 16L;
+    public static final float DEFAULT_MAX_PREDICTION_MM = 3.0F;
     public static final float DEFAULT_MAX_FLICK_DISTANCE_MM = 40.0F;
     public static final long DEFAULT_MAX_FLICK_DURATION_MS = 250L;
     public static final float DEFAULT_MIN_FLICK_DISTANCE_MM = 4.0F;
@@ -46,9 +53,22 @@ public class TouchNavSpaceTracker {
     private float mFlickMinSquared;
     private Handler mHandler;
     protected TouchNavSpaceTracker.KeyEventListener mKeyEventListener;
-    private float mLPFCurrX;
-    private float mLPFCurrY;
+    private float mFilterMinCutoff;
+    private float mFilterBeta;
+    private float mFilterDerivativeCutoff;
     private boolean mLPFEnabled;
+    private long mPredictionMs;
+    private float mMaxPredictionDistance;
+    /**
+     * Part of the current position that comes from the prediction (mm)
+     */
+    private float mPredictionOffsetX;
+    private float mPredictionOffsetY;
+    /**
+     * Prediction included in the values of the motion tracker (mm, not scaled)
+     */
+    private float mTrackedPredictionX;
+    private float mTrackedPredictionY;
     private long mMovementBlockTime;
     private float mPhysicalHeight;
     private PointF mPhysicalPosition;
@@ -64,6 +84,11 @@ public class TouchNavSpaceTracker {
     private float mUnscaledFlickMaxDistance;
     private float mUnscaledFlickMinDistance;
     private boolean mWasBlocked;
+    /**
+     * Reused for every event, listeners shouldn't keep them
+     */
+    private final PhysicalMotionEvent mCurrentEvent = new PhysicalMotionEvent(0, 0.0F, 0.0F, 0L);
+    private final PhysicalMotionEvent mDownEvent = new PhysicalMotionEvent(0, 0.0F, 0.0F, 0L);
 
     public TouchNavSpaceTracker() {
         this(null, null);
@@ -85,6 +110,11 @@ public class TouchNavSpaceTracker {
         mFlickMaxSquared = mFlickMaxDistance * mFlickMaxDistance;
         mFlickMaxDuration = DEFAULT_MAX_FLICK_DURATION_MS;
         mLPFEnabled = false;
+        mFilterMinCutoff = DEFAULT_FILTER_MIN_CUTOFF_HZ;
+        mFilterBeta = DEFAULT_FILTER_BETA;
+        mFilterDerivativeCutoff = DEFAULT_FILTER_DERIVATIVE_CUTOFF_HZ;
+        mPredictionMs = 0L;
+        mMaxPredictionDistance = DEFAULT_MAX_PREDICTION_MM;
         mHandler = new Handler() {
             public void handleMessage(Message msg) {
                 switch (msg.what) {
@@ -107,10 +137,10 @@ public class TouchNavSpaceTracker {
         mPixelsPerMm = 0.0F;
     }
 
-    private float calculateSensitivity(MotionEvent var1, MotionEvent var2) {
-        long var4 = var1.getEventTime() - var2.getEventTime();
+    private float calculateSensitivity(long eventTime, long downTime) {
+        long var4 = eventTime - downTime;
         float var3;
-        if (var1.getEventTime() < this.mMovementBlockTime) {
+        if (eventTime < this.mMovementBlockTime) {
             var3 = 0.0F;
             this.mWasBlocked = true;
         } else if ((float) var4 < this.mDampingDuration) {
@@ -155,6 +185,26 @@ public class TouchNavSpaceTracker {
         }
     }
 
+    /**
+     * Take back the prediction offset of the last applied move
+     */
+    private void dropPrediction() {
+        mTrackedPredictionX = 0.0F;
+        mTrackedPredictionY = 0.0F;
+
+        if (mPredictionOffsetX == 0.0F && mPredictionOffsetY == 0.0F) {
+            return;
+        }
+
+        setPhysicalPosition(mPhysicalPosition.x - mPredictionOffsetX, mPhysicalPosition.y - mPredictionOffsetY);
+        mPredictionOffsetX = 0.0F;
+        mPredictionOffsetY = 0.0F;
+    }
+
+    private static float clamp(float value, float max) {
+        return Math.max(0.0F, Math.min(value, max));
+    }
+
     private int getDpadDirection(final float dx, final float dy) {
         final float polar = (float) Math.atan2((double) (-dy), (double) dx);
 
@@ -199,12 +249,17 @@ public class TouchNavSpaceTracker {
         TouchNavMotionTracker var2 = var3;
         if (var3 == null) {
             var2 = TouchNavMotionTracker.buildTrackerForDevice(device, 0.1F);
+            var2.configureFilter(mFilterMinCutoff, mFilterBeta, mFilterDerivativeCutoff);
             this.mTouchParams.put(device.getId(), var2);
         }
 
         return var2;
     }
 
+    private PhysicalMotionEvent getDownEvent(int deviceId, TouchNavMotionTracker tracker) {
+        return mDownEvent.set(deviceId, tracker.getPhysicalX(tracker.getDownX()), tracker.getPhysicalY(tracker.getDownY()), tracker.getDownTime());
+    }
+
     private void setPhysicalSizeInternal(float var1, float var2) {
         this.mPhysicalWidth = var1;
         this.mPhysicalHeight = var2;
@@ -234,6 +289,33 @@ public class TouchNavSpaceTracker {
         this.mDampingDuration = (float) var2;
     }
 
+    /**
+     * NOTE: Params of the adaptive (One Euro) filter, used when {@link #setLPFEnabled(boolean)} is on.
+     * @param minCutoffHz cutoff at rest, lower values remove more jitter
+     * @param betaPerMm cutoff increase per mm/s of the finger speed, higher values remove more lag
+     * @param derivativeCutoffHz cutoff of the speed estimation
+     */
+    public void configureFilter(float minCutoffHz, float betaPerMm, float derivativeCutoffHz) {
+        this.mFilterMinCutoff = minCutoffHz;
+        this.mFilterBeta = betaPerMm;
+        this.mFilterDerivativeCutoff = derivativeCutoffHz;
+
+        for (int i = 0; i < this.mTouchParams.size(); i++) {
+            this.mTouchParams.valueAt(i).configureFilter(minCutoffHz, betaPerMm, derivativeCutoffHz);
+        }
+    }
+
+    /**
+     * NOTE: Move the pointer ahead of the finger by the current velocity to compensate the latency.<br/>
+     * NOTE: Like the filter, affects only the position passed to the {@link TouchEventListener}.
+     * @param horizonMs how far ahead to look, 0 to disable
+     * @param maxDistanceMm offset limit
+     */
+    public void configurePrediction(long horizonMs, float maxDistanceMm) {
+        this.mPredictionMs = horizonMs;
+        this.mMaxPredictionDistance = maxDistanceMm;
+    }
+
     public void configureFlicks(float var1, float var2, long var3) {
         this.mUnscaledFlickMinDistance = var1;
         this.mUnscaledFlickMaxDistance = var2;
@@ -259,165 +341,190 @@ public class TouchNavSpaceTracker {
                 return false;
             }
 
-            TouchNavMotionTracker tracker = this.getTrackerForDevice(device);
-            int action = event.getActionMasked();
-            tracker.addMovement(event);
-            boolean pointerUp;
-            if ((action & 255) == MotionEvent.ACTION_POINTER_UP) {
-                pointerUp = true;
-            } else {
-                pointerUp = false;
-            }
+            return onMotionEvent(getTrackerForDevice(device), event);
+        }
 
-            int skipIndex;
-            if (pointerUp) {
-                skipIndex = event.getActionIndex();
-            } else {
-                skipIndex = -1;
-            }
+        return false;
+    }
+
+    /**
+     * NOTE: Event of the touch navigation device. Called for every move event, so nothing is allocated here.
+     * @param tracker state of the device
+     */
+    boolean onMotionEvent(TouchNavMotionTracker tracker, MotionEvent event) {
+        int action = event.getActionMasked();
+        tracker.addMovement(event);
+        boolean pointerUp;
+        if ((action & 255) == MotionEvent.ACTION_POINTER_UP) {
+            pointerUp = true;
+        } else {
+            pointerUp = false;
+        }
 
-            float sumX = 0.0F;
-            float sumY = 0.0F;
-            int count = event.getPointerCount();
+        int skipIndex;
+        if (pointerUp) {
+            skipIndex = event.getActionIndex();
+        } else {
+            skipIndex = -1;
+        }
 
-            for (int i = 0; i < count; ++i) {
-                if (skipIndex != i) {
-                    sumX += event.getX(i);
-                    sumY += event.getY(i);
-                }
-            }
+        float sumX = 0.0F;
+        float sumY = 0.0F;
+        int count = event.getPointerCount();
 
-            int div;
-            if (pointerUp) {
-                div = count - 1;
-            } else {
-                div = count;
+        for (int i = 0; i < count; ++i) {
+            if (skipIndex != i) {
+                sumX += event.getX(i);
+                sumY += event.getY(i);
             }
+        }
 
-            float currX = sumX / (float) div;
-            float currY = sumY / (float) div;
-            TouchNavSpaceTracker.PhysicalMotionEvent pe = new TouchNavSpaceTracker.PhysicalMotionEvent(event.getDeviceId(), tracker.getPhysicalX
-                    (currX), tracker.getPhysicalX(currY), event.getEventTime());
-            boolean var18 = false;
-            boolean var12 = false;
-            boolean var11;
-            MotionEvent var15;
-            TouchNavSpaceTracker.PhysicalMotionEvent var16;
-            switch (action & 255) {
-                case MotionEvent.ACTION_DOWN:
-                    if (mLPFEnabled) {
-                        mLPFCurrX = currX;
-                        mLPFCurrY = currY;
-                    }
+        int div;
+        if (pointerUp) {
+            div = count - 1;
+        } else {
+            div = count;
+        }
 
-                    tracker.setNewValues(currX, currY);
-                    tracker.updatePrevValues();
-                    tracker.setDownEvent(MotionEvent.obtain(event));
-                    if (mPixelListener != null) {
-                        return mPixelListener.onDown(pe);
-                    }
-                    break;
-                case MotionEvent.ACTION_UP:
-                    var15 = tracker.getDownEvent();
-                    if (var15 == null) {
-                        Log.w("TouchNavSpaceTracker", "Up event without down event");
-                        return false | this.mPixelListener.onUp(pe, this.getPixelX(this.mPhysicalPosition.x),
-                                this.getPixelY(this.mPhysicalPosition.y));
-                    }
+        float currX = sumX / (float) div;
+        float currY = sumY / (float) div;
+        TouchNavSpaceTracker.PhysicalMotionEvent pe = mCurrentEvent.set(event.getDeviceId(), tracker.getPhysicalX(currX),
+                tracker.getPhysicalY(currY), event.getEventTime());
+        boolean var18 = false;
+        boolean var11;
+        TouchNavSpaceTracker.PhysicalMotionEvent var16;
+        switch (action & 255) {
+            case MotionEvent.ACTION_DOWN:
+                tracker.resetFilter(currX, currY, event.getEventTime());
+                mPredictionOffsetX = 0.0F;
+                mPredictionOffsetY = 0.0F;
+                mTrackedPredictionX = 0.0F;
+                mTrackedPredictionY = 0.0F;
+
+                tracker.setNewValues(currX, currY);
+                tracker.updatePrevValues();
+                tracker.setDown(event.getX(), event.getY(), event.getEventTime());
+                if (mPixelListener != null) {
+                    return mPixelListener.onDown(pe);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                if (!tracker.hasDown()) {
+                    Log.w("TouchNavSpaceTracker", "Up event without down event");
+                    return this.mPixelListener != null && this.mPixelListener.onUp(pe, this.getPixelX(this.mPhysicalPosition.x),
+                            this.getPixelY(this.mPhysicalPosition.y));
+                }
 
-                    var16 = new TouchNavSpaceTracker.PhysicalMotionEvent(event.getDeviceId(), tracker.getPhysicalX(var15.getX()), tracker.getPhysicalY
-                            (var15.getY()), var15.getEventTime());
+                var16 = getDownEvent(event.getDeviceId(), tracker);
+                pointerUp = var18;
+                if (tracker.computeVelocity()) {
                     pointerUp = var18;
-                    if (tracker.computeVelocity()) {
+                    if (this.mPixelListener != null) {
+                        sumY = this.getPixelX(tracker.getPhysicalX(tracker.getXVel()));
+                        sumX = this.getPixelY(tracker.getPhysicalY(tracker.getYVel()));
+                        var18 = false | this.mPixelListener.onFling(var16, pe, sumY, sumX);
                         pointerUp = var18;
-                        if (this.mPixelListener != null) {
-                            sumY = this.getPixelX(tracker.getPhysicalX(tracker.getXVel()));
-                            sumX = this.getPixelY(tracker.getPhysicalY(tracker.getYVel()));
-                            var18 = false | this.mPixelListener.onFling(var16, pe, sumY, sumX);
+                        if (pe.getTime() - var16.getTime() < this.mFlickMaxDuration) {
+                            sumY = pe.getX() - var16.getX();
+                            sumX = pe.getY() - var16.getY();
+                            currX = sumY * sumY + sumX * sumX;
                             pointerUp = var18;
-                            if (pe.getTime() - var16.getTime() < this.mFlickMaxDuration) {
-                                sumY = pe.getX() - var16.getX();
-                                sumX = pe.getY() - var16.getY();
-                                currX = sumY * sumY + sumX * sumX;
+                            if (currX > this.mFlickMinSquared) {
                                 pointerUp = var18;
-                                if (currX > this.mFlickMinSquared) {
+                                if (currX < this.mFlickMaxSquared) {
+                                    this.mPixelListener.onFlick(var16, pe, this.getDpadDirection(sumY, sumX), this.getPrimaryDpadDirection
+                                            (sumY, sumX));
                                     pointerUp = var18;
-                                    if (currX < this.mFlickMaxSquared) {
-                                        this.mPixelListener.onFlick(var16, pe, this.getDpadDirection(sumY, sumX), this.getPrimaryDpadDirection
-                                                (sumY, sumX));
-                                        pointerUp = var18;
-                                    }
                                 }
                             }
                         }
                     }
+                }
 
-                    sumY = this.getPixelX(this.mPhysicalPosition.x);
-                    sumX = this.getPixelY(this.mPhysicalPosition.y);
-                    var11 = this.mPixelListener.onUp(pe, sumY, sumX);
-                    tracker.clear();
-                    return pointerUp | var11;
-                case MotionEvent.ACTION_MOVE:
-                    if (tracker.getDownEvent() == null) {
-                        tracker.setDownEvent(MotionEvent.obtain(event));
-                        if (this.mLPFEnabled) {
-                            this.mLPFCurrX = currX;
-                            this.mLPFCurrY = currY;
-                        }
-                    }
+                // finger is lifted where it is, not where it was heading
+                dropPrediction();
+                sumY = this.getPixelX(this.mPhysicalPosition.x);
+                sumX = this.getPixelY(this.mPhysicalPosition.y);
+                var11 = this.mPixelListener != null && this.mPixelListener.onUp(pe, sumY, sumX);
+                tracker.clear();
+                return pointerUp | var11;
+            case MotionEvent.ACTION_MOVE:
+                if (!tracker.hasDown()) {
+                    tracker.setDown(event.getX(), event.getY(), event.getEventTime());
+                    tracker.resetFilter(currX, currY, event.getEventTime());
+                }
 
-                    sumX = currX;
-                    sumY = currY;
-                    if (this.mLPFEnabled) {
-                        this.mLPFCurrX = this.mLPFCurrX * 0.75F + DEFAULT_LPF_COEFF * currX;
-                        this.mLPFCurrY = this.mLPFCurrY * 0.75F + DEFAULT_LPF_COEFF * currY;
-                        sumX = this.mLPFCurrX;
-                        sumY = this.mLPFCurrY;
-                    }
+                return onMove(tracker, pe, currX, currY);
+            case MotionEvent.ACTION_CANCEL:
+                dropPrediction();
+                tracker.clear();
+                return false;
+            default:
+                return false;
+        }
 
-                    if (tracker.setNewValues(sumX, sumY)) {
-                        sumY = tracker.getPhysicalX(tracker.getScrollX());
-                        sumX = tracker.getPhysicalY(tracker.getScrollY());
-                        currX = this.calculateSensitivity(event, tracker.getDownEvent());
-                        this.mPhysicalPosition.x = this.mPrevPhysPosition.x + this.getScaledValue(sumY, currX);
-                        this.mPhysicalPosition.y = this.mPrevPhysPosition.y + this.getScaledValue(sumX, currX);
-                        this.clampPosition();
-                        if (!this.mPhysicalPosition.equals(this.mPrevPhysPosition)) {
-                            var11 = var12;
-                            if (this.mPixelListener != null) {
-                                var11 = var12;
-                                if (this.mPixelHeight > 0.0F) {
-                                    var11 = var12;
-                                    if (this.mPixelWidth > 0.0F) {
-                                        var15 = tracker.getDownEvent();
-                                        var16 = new TouchNavSpaceTracker.PhysicalMotionEvent(event.getDeviceId(), tracker.getPhysicalX(var15.getX()),
-                                                tracker.getPhysicalY(var15.getY()), var15.getEventTime());
-                                        sumY = this.getPixelX(this.mPhysicalPosition.x);
-                                        sumX = this.getPixelY(this.mPhysicalPosition.y);
-                                        var11 = false | this.mPixelListener.onMove(var16, pe, sumY, sumX);
-                                    }
-                                }
-                            }
+        return false;
+    }
 
-                            this.mPrevPhysPosition.set(this.mPhysicalPosition);
-                        } else {
-                            var11 = false | true;
-                        }
+    /**
+     * NOTE: Move of the started gesture. Called for every move event, so nothing is allocated here.
+     * @param pe current event (reused)
+     * @param currX raw position (average of the pointers)
+     * @param currY raw position (average of the pointers)
+     */
+    boolean onMove(TouchNavMotionTracker tracker, PhysicalMotionEvent pe, float currX, float currY) {
+        float x = currX;
+        float y = currY;
+
+        if (mLPFEnabled) {
+            tracker.filter(currX, currY, pe.getTime());
+            x = tracker.getFilteredX();
+            y = tracker.getFilteredY();
+        }
 
-                        tracker.updatePrevValues();
-                        return var11;
-                    }
+        // position is absolute, so the prediction error is taken back on the next event
+        if (mPredictionMs > 0L) {
+            tracker.updatePrediction(mPredictionMs, mMaxPredictionDistance);
+            x += tracker.getPredictionX();
+            y += tracker.getPredictionY();
+        }
+
+        if (!tracker.setNewValues(x, y)) {
+            return true;
+        }
 
-                    return false | true;
-                case MotionEvent.ACTION_CANCEL:
-                    tracker.clear();
-                    return false;
-                default:
-                    return false;
+        float scrollX = tracker.getPhysicalX(tracker.getScrollX());
+        float scrollY = tracker.getPhysicalY(tracker.getScrollY());
+        float sensitivity = calculateSensitivity(pe.getTime(), tracker.getDownTime());
+        // finger and prediction are clamped separately: at the edges only a part of the prediction (or nothing) is applied
+        float predictionX = tracker.getPhysicalX(tracker.getPredictionX());
+        float predictionY = tracker.getPhysicalY(tracker.getPredictionY());
+        float fingerX = clamp(mPrevPhysPosition.x - mPredictionOffsetX + getScaledValue(scrollX - (predictionX - mTrackedPredictionX), sensitivity),
+                mPhysicalWidth);
+        float fingerY = clamp(mPrevPhysPosition.y - mPredictionOffsetY + getScaledValue(scrollY - (predictionY - mTrackedPredictionY), sensitivity),
+                mPhysicalHeight);
+        mTrackedPredictionX = predictionX;
+        mTrackedPredictionY = predictionY;
+        mPhysicalPosition.x = clamp(fingerX + getScaledValue(predictionX, sensitivity), mPhysicalWidth);
+        mPhysicalPosition.y = clamp(fingerY + getScaledValue(predictionY, sensitivity), mPhysicalHeight);
+        mPredictionOffsetX = mPhysicalPosition.x - fingerX;
+        mPredictionOffsetY = mPhysicalPosition.y - fingerY;
+
+        boolean handled = true;
+
+        if (mPhysicalPosition.x != mPrevPhysPosition.x || mPhysicalPosition.y != mPrevPhysPosition.y) {
+            handled = false;
+
+            if (mPixelListener != null && mPixelHeight > 0.0F && mPixelWidth > 0.0F) {
+                PhysicalMotionEvent down = getDownEvent(pe.getDeviceId(), tracker);
+                handled = mPixelListener.onMove(down, pe, getPixelX(mPhysicalPosition.x), getPixelY(mPhysicalPosition.y));
             }
+
+            mPrevPhysPosition.set(mPhysicalPosition);
         }
 
-        return false;
+        tracker.updatePrevValues();
+        return handled;
     }
 
     public boolean onKeyDown(int keyCode, KeyEvent event) {
@@ -515,19 +622,27 @@ public class TouchNavSpaceTracker {
         boolean onKeyUp(int keyCode, KeyEvent event);
     }
 
+    /**
+     * NOTE: Instances passed to the {@link TouchEventListener} are reused, copy the values to keep them after the callback
+     */
     public static class PhysicalMotionEvent {
-        private final int mDeviceId;
-        private final long mTime;
+        private int mDeviceId;
+        private long mTime;
         // $FF: renamed from: mX float
-        private final float field_6;
+        private float field_6;
         // $FF: renamed from: mY float
-        private final float field_7;
+        private float field_7;
 
         public PhysicalMotionEvent(int var1, float var2, float var3, long var4) {
-            this.mDeviceId = var1;
-            this.field_6 = var2;
-            this.field_7 = var3;
-            this.mTime = var4;
+            set(var1, var2, var3, var4);
+        }
+
+        PhysicalMotionEvent set(int deviceId, float x, float y, long time) {
+            this.mDeviceId = deviceId;
+            this.field_6 = x;
+            this.field_7 = y;
+            this.mTime = time;
+            return this;
         }
 
         public final InputDevice getDevice() {
@@ -3,7 +3,9 @@ package com.liskovsoft.leankeyboard.receiver;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.util.Log;
+import com.liskovsoft.leankeyboard.addons.keyboards.extkeyboards.addons.AddOnsFactory;
 import com.liskovsoft.leankeyboard.ime.LeanbackImeService;
 
 public class RestartServiceReceiver extends BroadcastReceiver {
@@ -11,8 +13,19 @@ public class RestartServiceReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        sendMessageToService(context);
-        //restartService(context);
+        // package queries and add-ons index writes are kept off the main thread
+        final PendingResult result = goAsync();
+        final Context appContext = context.getApplicationContext();
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            try {
+                AddOnsFactory.onPackageEvent(appContext, intent);
+                sendMessageToService(appContext);
+                //restartService(context);
+            } finally {
+                result.finish();
+            }
+        });
     }
 
     private void sendMessageToService(Context context) {
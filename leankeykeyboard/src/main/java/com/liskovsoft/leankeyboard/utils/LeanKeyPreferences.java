@@ -2,8 +2,16 @@ package com.liskovsoft.leankeyboard.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
 import android.preference.PreferenceManager;
 
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * NOTE: Getters read immutable in-memory {@link Snapshot}, so they are cheap enough for the hot paths
+ * and safe to use from any thread.<br/>
+ * Snapshot is re-read and swapped on every preference change.
+ */
 public final class LeanKeyPreferences {
     private static final String APP_RUN_ONCE = "appRunOnce";
     private static final String BOOTSTRAP_SELECTED_LANGUAGE = "bootstrapSelectedLanguage";
@@ -18,23 +26,53 @@ public final class LeanKeyPreferences {
     private static final String SUGGESTIONS_ENABLED = "suggestionsEnabled";
     private static final String CYCLIC_NAVIGATION_ENABLED = "cyclicNavigationEnabled";
     private static final String AUTODETECT_LAYOUT = "autodetectLayout";
-    private static LeanKeyPreferences sInstance;
+    private static final String INLINE_VOICE_ENABLED = "inlineVoiceEnabled";
+    private static final String GESTURE_TYPING_ENABLED = "gestureTypingEnabled";
+    private static final String SENTENCE_DELETE_ENABLED = "sentenceDeleteEnabled";
+    private static volatile LeanKeyPreferences sInstance;
     private final Context mContext;
-    private SharedPreferences mPrefs;
+    private final SharedPreferences mPrefs;
+    private final AtomicReference<Snapshot> mSnapshot = new AtomicReference<>();
+    // NOTE: SharedPreferences keeps weak reference to the listener
+    private final OnSharedPreferenceChangeListener mChangeListener = (prefs, key) -> updateSnapshot();
 
     public static LeanKeyPreferences instance(Context ctx) {
-        if (sInstance == null)
-            sInstance = new LeanKeyPreferences(ctx);
-        return sInstance;
+        LeanKeyPreferences instance = sInstance;
+
+        if (instance == null) {
+            synchronized (LeanKeyPreferences.class) {
+                instance = sInstance;
+
+                if (instance == null) {
+                    instance = new LeanKeyPreferences(ctx);
+                    sInstance = instance;
+                }
+            }
+        }
+
+        return instance;
     }
 
-    public LeanKeyPreferences(Context context) {
+    private LeanKeyPreferences(Context context) {
         mContext = context.getApplicationContext();
         mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mPrefs.registerOnSharedPreferenceChangeListener(mChangeListener);
+        updateSnapshot();
+    }
+
+    /**
+     * Current values of all preferences. Doesn't change, safe to pass to other threads.
+     */
+    public Snapshot getSnapshot() {
+        return mSnapshot.get();
+    }
+
+    private void updateSnapshot() {
+        mSnapshot.set(new Snapshot(mPrefs));
     }
 
     public boolean isRunOnce() {
-        return mPrefs.getBoolean(APP_RUN_ONCE, false);
+        return getSnapshot().runOnce;
     }
 
     public void setRunOnce(boolean runOnce) {
@@ -50,11 +88,11 @@ public final class LeanKeyPreferences {
     }
 
     public String getPreferredLanguage() {
-        return mPrefs.getString(BOOTSTRAP_SELECTED_LANGUAGE, "");
+        return getSnapshot().preferredLanguage;
     }
 
     public int getKeyboardIndex() {
-        return mPrefs.getInt(APP_KEYBOARD_INDEX, 0);
+        return getSnapshot().keyboardIndex;
     }
 
     public void setKeyboardIndex(int idx) {
@@ -64,7 +102,7 @@ public final class LeanKeyPreferences {
     }
 
     public boolean getForceShowKeyboard() {
-        return mPrefs.getBoolean(FORCE_SHOW_KEYBOARD, true);
+        return getSnapshot().forceShowKeyboard;
     }
 
     public void setForceShowKeyboard(boolean force) {
@@ -74,7 +112,7 @@ public final class LeanKeyPreferences {
     }
 
     public boolean getEnlargeKeyboard() {
-        return mPrefs.getBoolean(ENLARGE_KEYBOARD, false);
+        return getSnapshot().enlargeKeyboard;
     }
 
     public void setEnlargeKeyboard(boolean enlarge) {
@@ -90,7 +128,7 @@ public final class LeanKeyPreferences {
     }
 
     public String getCurrentTheme() {
-        return mPrefs.getString(KEYBOARD_THEME, THEME_DARK3);
+        return getSnapshot().currentTheme;
     }
 
     public void setSuggestionsEnabled(boolean enabled) {
@@ -100,7 +138,7 @@ public final class LeanKeyPreferences {
     }
 
     public boolean getSuggestionsEnabled() {
-        return mPrefs.getBoolean(SUGGESTIONS_ENABLED, true);
+        return getSnapshot().suggestionsEnabled;
     }
 
     public void setCyclicNavigationEnabled(boolean enabled) {
@@ -110,10 +148,79 @@ public final class LeanKeyPreferences {
     }
 
     public boolean isCyclicNavigationEnabled() {
-        return mPrefs.getBoolean(CYCLIC_NAVIGATION_ENABLED, false);
+        return getSnapshot().cyclicNavigationEnabled;
     }
 
     public boolean getAutodetectLayout() {
-        return mPrefs.getBoolean(AUTODETECT_LAYOUT, false);
+        return getSnapshot().autodetectLayout;
+    }
+
+    public void setInlineVoiceEnabled(boolean enabled) {
+        mPrefs.edit()
+                .putBoolean(INLINE_VOICE_ENABLED, enabled)
+                .apply();
+    }
+
+    /**
+     * Voice is recognized inside the keyboard instead of the Google voice typing activity
+     */
+    public boolean isInlineVoiceEnabled() {
+        return getSnapshot().inlineVoiceEnabled;
+    }
+
+    public void setGestureTypingEnabled(boolean enabled) {
+        mPrefs.edit()
+                .putBoolean(GESTURE_TYPING_ENABLED, enabled)
+                .apply();
+    }
+
+    /**
+     * Words are typed by one stroke on the touchpad of the remote
+     */
+    public boolean isGestureTypingEnabled() {
+        return getSnapshot().gestureTypingEnabled;
+    }
+
+    public void setSentenceDeleteEnabled(boolean enabled) {
+        mPrefs.edit()
+                .putBoolean(SENTENCE_DELETE_ENABLED, enabled)
+                .apply();
+    }
+
+    /**
+     * Second long press on delete removes the rest of the sentence
+     */
+    public boolean isSentenceDeleteEnabled() {
+        return getSnapshot().sentenceDeleteEnabled;
+    }
+
+    public static final class Snapshot {
+        public final boolean runOnce;
+        public final String preferredLanguage;
+        public final int keyboardIndex;
+        public final boolean forceShowKeyboard;
+        public final boolean enlargeKeyboard;
+        public final String currentTheme;
+        public final boolean suggestionsEnabled;
+        public final boolean cyclicNavigationEnabled;
+        public final boolean autodetectLayout;
+        public final boolean inlineVoiceEnabled;
+        public final boolean gestureTypingEnabled;
+        public final boolean sentenceDeleteEnabled;
+
+        private Snapshot(SharedPreferences prefs) {
+            runOnce = prefs.getBoolean(APP_RUN_ONCE, false);
+            preferredLanguage = prefs.getString(BOOTSTRAP_SELECTED_LANGUAGE, "");
+            keyboardIndex = prefs.getInt(APP_KEYBOARD_INDEX, 0);
+            forceShowKeyboard = prefs.getBoolean(FORCE_SHOW_KEYBOARD, true);
+            enlargeKeyboard = prefs.getBoolean(ENLARGE_KEYBOARD, false);
+            currentTheme = prefs.getString(KEYBOARD_THEME, THEME_DARK3);
+            suggestionsEnabled = prefs.getBoolean(SUGGESTIONS_ENABLED, true);
+            cyclicNavigationEnabled = prefs.getBoolean(CYCLIC_NAVIGATION_ENABLED, false);
+            autodetectLayout = prefs.getBoolean(AUTODETECT_LAYOUT, false);
+            inlineVoiceEnabled = prefs.getBoolean(INLINE_VOICE_ENABLED, false);
+            gestureTypingEnabled = prefs.getBoolean(GESTURE_TYPING_ENABLED, false);
+            sentenceDeleteEnabled = prefs.getBoolean(SENTENCE_DELETE_ENABLED, false);
+        }
     }
 }
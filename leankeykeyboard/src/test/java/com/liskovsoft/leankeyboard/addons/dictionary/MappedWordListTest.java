@@ -0,0 +1,117 @@
+package com.liskovsoft.leankeyboard.addons.dictionary;
+
+import com.liskovsoft.leankeyboard.ime.DatabaseHelper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MappedWordListTest {
+    private static final int HEADER_SIZE = 12;
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("wordlist", "");
+        assertTrue(mDir.delete());
+        assertTrue(mDir.mkdirs());
+    }
+
+    @Test
+    public void singleWords_goBeforePhrases() throws IOException {
+        MappedWordList list = build("an ninh", "anh", "an", "ăn");
+
+        assertEquals(Arrays.asList("an", "ăn", "anh", "an ninh"), list.getSuggestions("an", DatabaseHelper.MODE_STARTS_WITH));
+    }
+
+    @Test
+    public void firstSyllableMode_returnsRestOfPhrase() throws IOException {
+        MappedWordList list = build("xin chào", "xin lỗi", "xinh", "xin");
+
+        assertEquals(Arrays.asList("lỗi", "chào"), list.getSuggestions("xin", DatabaseHelper.MODE_FIRST_SYLLABLE_OF_PHRASE));
+    }
+
+    @Test
+    public void shortPrefix_ranksAllMatches() throws IOException {
+        String[] words = new String[1001];
+
+        for (int i = 0; i < 1000; i++) {
+            words[i] = String.format(Locale.US, "ab%04d", i);
+        }
+
+        // sorted after all the longer ones
+        words[1000] = "az";
+
+        List<String> suggestions = build(words).getSuggestions("a", DatabaseHelper.MODE_STARTS_WITH);
+
+        assertEquals(8, suggestions.size());
+        assertEquals("az", suggestions.get(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void entryOutsideOfFile_isRejected() throws IOException {
+        File file = buildFile("một", "hai");
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(HEADER_SIZE + 4);
+            out.writeInt(Integer.MAX_VALUE - 8);
+        }
+
+        MappedWordList.map(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void negativeEntryOffset_isRejected() throws IOException {
+        File file = buildFile("một", "hai");
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(HEADER_SIZE);
+            out.writeInt(-HEADER_SIZE);
+        }
+
+        MappedWordList.map(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void overflowingCount_isRejected() throws IOException {
+        File file = buildFile("một", "hai");
+
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(8);
+            // count * 4 overflows to a small positive number
+            out.writeInt(0x40000001);
+        }
+
+        MappedWordList.map(file);
+    }
+
+    private MappedWordList build(String... words) throws IOException {
+        return MappedWordList.map(buildFile(words));
+    }
+
+    private File buildFile(String... words) throws IOException {
+        WordListBuilder builder = new WordListBuilder(mDir);
+
+        for (String word : words) {
+            builder.add(DatabaseHelper.removeAccents(word).toLowerCase(Locale.ROOT), word);
+        }
+
+        File file = new File(mDir, "test.lkwl");
+        builder.build(file);
+
+        return file;
+    }
+}
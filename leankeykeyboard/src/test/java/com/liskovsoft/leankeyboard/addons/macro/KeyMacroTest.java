@@ -0,0 +1,132 @@
+package com.liskovsoft.leankeyboard.addons.macro;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Binary format of the macro: varints, zigzag key codes, string table
+ */
+public class KeyMacroTest {
+    private static final int ENTRY_TYPE_STRING = 0;
+    private static final int ENTRY_TYPE_BACKSPACE = 1;
+    private static final int ENTRY_TYPE_ACTION = 5;
+
+    @Test
+    public void roundTrip_keepsEntries() throws IOException {
+        KeyMacro macro = new KeyMacro.Builder()
+                .add(0, ENTRY_TYPE_STRING, 29, "xin chào")
+                .add(150, ENTRY_TYPE_BACKSPACE, -1, null)
+                .add(70_000, ENTRY_TYPE_STRING, Integer.MIN_VALUE, "😀")
+                .add(5, ENTRY_TYPE_STRING, Integer.MAX_VALUE, "xin chào")
+                .add(-10, ENTRY_TYPE_ACTION, 0, "")
+                .build();
+
+        KeyMacro copy = read(write(macro));
+
+        assertEquals(5, copy.size());
+
+        for (int i = 0; i < macro.size(); i++) {
+            assertEquals(macro.getDelta(i), copy.getDelta(i));
+            assertEquals(macro.getType(i), copy.getType(i));
+            assertEquals(macro.getKeyCode(i), copy.getKeyCode(i));
+            assertEquals(macro.getText(i), copy.getText(i));
+        }
+
+        // negative delay is stored as 0
+        assertEquals(0, copy.getDelta(4));
+    }
+
+    @Test
+    public void repeatedText_isStoredOnce() throws IOException {
+        KeyMacro.Builder builder = new KeyMacro.Builder();
+
+        for (int i = 0; i < 100; i++) {
+            builder.add(10, ENTRY_TYPE_STRING, 0, "repeated text");
+        }
+
+        byte[] bytes = write(builder.build());
+
+        // text once, then 4 single byte varints per entry
+        assertTrue(bytes.length < 100 * 4 + 40);
+        assertEquals("repeated text", read(bytes).getText(99));
+    }
+
+    @Test
+    public void emptyMacro_roundTrip() throws IOException {
+        assertEquals(0, read(write(new KeyMacro.Builder().build())).size());
+    }
+
+    @Test
+    public void truncatedFile_isRejected() throws IOException {
+        byte[] bytes = write(new KeyMacro.Builder().add(10, ENTRY_TYPE_STRING, 0, "hello").add(10, ENTRY_TYPE_ACTION, 0, null).build());
+
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                read(Arrays.copyOf(bytes, length));
+                fail("Truncated to " + length + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void hugeStringCount_isRejected() throws IOException {
+        read(header(0xFFFFFFF));
+    }
+
+    @Test(expected = IOException.class)
+    public void negativeStringLength_isRejected() throws IOException {
+        read(header(1, -1));
+    }
+
+    @Test(expected = IOException.class)
+    public void hugeEventCount_isRejected() throws IOException {
+        read(header(0, Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IOException.class)
+    public void wrongMagic_isRejected() throws IOException {
+        read(new byte[] {1, 1, 0, 0});
+    }
+
+    /**
+     * Magic and version of the valid macro followed by the given varints
+     */
+    private static byte[] header(int... values) throws IOException {
+        byte[] valid = write(new KeyMacro.Builder().build());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // magic (4 bytes) and version (1 byte)
+        out.write(valid, 0, 5);
+
+        for (int value : values) {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            out.write(value);
+        }
+
+        // some padding, so it's the length that's wrong, not the end of the file
+        out.write(new byte[16]);
+
+        return out.toByteArray();
+    }
+
+    private static byte[] write(KeyMacro macro) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        macro.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static KeyMacro read(byte[] bytes) throws IOException {
+        return KeyMacro.readFrom(new ByteArrayInputStream(bytes), bytes.length);
+    }
+}
@@ -0,0 +1,94 @@
+package com.liskovsoft.leankeyboard.addons.voice;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.speech.RecognitionListener;
+import android.speech.SpeechRecognizer;
+
+import java.util.ArrayList;
+
+/**
+ * NOTE: Offline recognizer that "hears" the given phrase word by word.<br/>
+ * Drives streaming voice input in the tests without microphone and network.
+ */
+public class FakeStreamingRecognizer implements StreamingRecognizer {
+    private static final long DEFAULT_WORD_DELAY_MS = 300;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final String[] mWords;
+    private final long mWordDelayMs;
+    private RecognitionListener mListener;
+
+    public FakeStreamingRecognizer(String phrase) {
+        this(phrase, DEFAULT_WORD_DELAY_MS);
+    }
+
+    public FakeStreamingRecognizer(String phrase, long wordDelayMs) {
+        mWords = phrase.trim().split("\\s+");
+        mWordDelayMs = wordDelayMs;
+    }
+
+    @Override
+    public void setRecognitionListener(RecognitionListener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void startListening(Intent recognizerIntent) {
+        cancel();
+
+        mHandler.post(() -> {
+            if (mListener != null) {
+                mListener.onReadyForSpeech(new Bundle());
+                mListener.onBeginningOfSpeech();
+            }
+        });
+
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < mWords.length; i++) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+
+            text.append(mWords[i]);
+
+            String partial = text.toString();
+            mHandler.postDelayed(() -> {
+                if (mListener != null) {
+                    mListener.onPartialResults(createResults(partial));
+                }
+            }, mWordDelayMs * (i + 1));
+        }
+
+        String result = text.toString();
+        mHandler.postDelayed(() -> {
+            if (mListener != null) {
+                mListener.onEndOfSpeech();
+                mListener.onResults(createResults(result));
+            }
+        }, mWordDelayMs * (mWords.length + 1));
+    }
+
+    @Override
+    public void cancel() {
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    @Override
+    public void destroy() {
+        cancel();
+        mListener = null;
+    }
+
+    private static Bundle createResults(String text) {
+        ArrayList<String> results = new ArrayList<>();
+        results.add(text);
+
+        Bundle bundle = new Bundle();
+        bundle.putStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION, results);
+
+        return bundle;
+    }
+}
@@ -0,0 +1,132 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.view.inputmethod.InputConnection;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class EditorMirrorTest {
+    private FakeInputConnection mEditor;
+    private EditorMirror mMirror;
+    private InputConnection mConnection;
+
+    @Before
+    public void setUp() {
+        mEditor = new FakeInputConnection("hello world");
+        mMirror = new EditorMirror();
+        mMirror.reset(mEditor.selStart, mEditor.selEnd);
+        mConnection = mMirror.wrap(mEditor);
+    }
+
+    @Test
+    public void reads_areServedFromMemory() {
+        assertEquals("world", mConnection.getTextBeforeCursor(5, 0).toString());
+        assertEquals("hello world", mConnection.getTextBeforeCursor(100, 0).toString());
+        assertEquals("", mConnection.getTextAfterCursor(10, 0).toString());
+
+        assertEquals(1, mEditor.extractReads);
+        assertEquals(0, mEditor.textReads);
+    }
+
+    @Test
+    public void extractedText_isNotMonitored() {
+        mConnection.getTextBeforeCursor(5, 0);
+
+        assertEquals(0, mEditor.extractFlags & InputConnection.GET_EXTRACTED_TEXT_MONITOR);
+    }
+
+    @Test
+    public void ownEdits_areAppliedLocally() {
+        mConnection.getTextBeforeCursor(1, 0);
+
+        mConnection.commitText("!", 1);
+        mMirror.onUpdateSelection(mEditor.selStart, mEditor.selEnd);
+        assertEquals("ld!", mConnection.getTextBeforeCursor(3, 0).toString());
+
+        mConnection.deleteSurroundingText(7, 0);
+        mMirror.onUpdateSelection(mEditor.selStart, mEditor.selEnd);
+        assertEquals("hello", mConnection.getTextBeforeCursor(10, 0).toString());
+
+        mConnection.setSelection(2, 2);
+        mMirror.onUpdateSelection(2, 2);
+        assertEquals("he", mConnection.getTextBeforeCursor(10, 0).toString());
+        assertEquals("llo", mConnection.getTextAfterCursor(10, 0).toString());
+
+        assertEquals("hello", mEditor.text.toString());
+        assertEquals(1, mEditor.extractReads);
+    }
+
+    @Test
+    public void pendingEdits_areConfirmedInOrder() {
+        mConnection.getTextBeforeCursor(1, 0);
+
+        mConnection.commitText("a", 1);
+        mConnection.commitText("b", 1);
+        // editor reports the first edit after the second one is sent
+        mMirror.onUpdateSelection(12, 12);
+        mMirror.onUpdateSelection(13, 13);
+
+        assertEquals("ab", mConnection.getTextBeforeCursor(2, 0).toString());
+        assertEquals(1, mEditor.extractReads);
+    }
+
+    @Test
+    public void pendingEdits_areClearedBySelectionUpdate() {
+        assertFalse(mMirror.hasPendingEdits());
+
+        mConnection.deleteSurroundingText(1, 0);
+        assertTrue(mMirror.hasPendingEdits());
+
+        mMirror.onUpdateSelection(10, 10);
+        assertFalse(mMirror.hasPendingEdits());
+    }
+
+    @Test
+    public void foreignChange_forcesSingleReRead() {
+        mConnection.getTextBeforeCursor(1, 0);
+
+        mEditor.setText("other text", 5);
+        mMirror.onUpdateSelection(5, 5);
+
+        assertEquals("other", mConnection.getTextBeforeCursor(10, 0).toString());
+        assertEquals(" text", mConnection.getTextAfterCursor(10, 0).toString());
+        assertEquals(2, mEditor.extractReads);
+    }
+
+    @Test
+    public void composingText_invalidatesMirror() {
+        mConnection.getTextBeforeCursor(1, 0);
+
+        mConnection.setComposingText("x", 1);
+        mMirror.onUpdateSelection(mEditor.selStart, mEditor.selEnd);
+
+        assertEquals("dx", mConnection.getTextBeforeCursor(2, 0).toString());
+        assertEquals(2, mEditor.extractReads);
+    }
+
+    @Test
+    public void noExtraction_fallsBackToCursorReads() {
+        mEditor.extractSupported = false;
+
+        assertEquals("world", mConnection.getTextBeforeCursor(5, 0).toString());
+        assertEquals("world", mConnection.getTextBeforeCursor(5, 0).toString());
+
+        assertEquals(1, mEditor.extractReads);
+        assertEquals(2, mEditor.textReads);
+    }
+
+    @Test
+    public void flaggedReads_goToEditor() {
+        mConnection.getTextBeforeCursor(5, InputConnection.GET_TEXT_WITH_STYLES);
+
+        assertEquals(0, mEditor.extractReads);
+        assertEquals(1, mEditor.textReads);
+    }
+}
@@ -0,0 +1,135 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
+import android.view.inputmethod.InputConnectionWrapper;
+
+/**
+ * Editor with a plain text and a selection. Counts the calls that would be binder calls on a device.
+ */
+class FakeInputConnection extends InputConnectionWrapper {
+    final StringBuilder text = new StringBuilder();
+    int selStart;
+    int selEnd;
+    int composingStart = -1;
+    int composingEnd = -1;
+    int commitCalls;
+    int composingCalls;
+    int textReads;
+    int maxReadLength;
+    int extractReads;
+    int extractFlags = -1;
+    boolean extractSupported = true;
+
+    FakeInputConnection(String text) {
+        super(null, true);
+        this.text.append(text);
+        selStart = selEnd = text.length();
+    }
+
+    void setText(String text, int cursor) {
+        this.text.setLength(0);
+        this.text.append(text);
+        selStart = selEnd = cursor;
+    }
+
+    @Override
+    public CharSequence getTextBeforeCursor(int n, int flags) {
+        textReads++;
+        maxReadLength = Math.max(maxReadLength, n);
+        return text.substring(Math.max(0, selStart - n), selStart);
+    }
+
+    @Override
+    public CharSequence getTextAfterCursor(int n, int flags) {
+        textReads++;
+        maxReadLength = Math.max(maxReadLength, n);
+        return text.substring(selEnd, Math.min(text.length(), selEnd + n));
+    }
+
+    @Override
+    public CharSequence getSelectedText(int flags) {
+        textReads++;
+        return selEnd > selStart ? text.substring(selStart, selEnd) : null;
+    }
+
+    @Override
+    public ExtractedText getExtractedText(ExtractedTextRequest request, int flags) {
+        extractReads++;
+        extractFlags = flags;
+
+        if (!extractSupported) {
+            return null;
+        }
+
+        ExtractedText extracted = new ExtractedText();
+        extracted.text = text.toString();
+        extracted.startOffset = 0;
+        extracted.partialStartOffset = -1;
+        extracted.selectionStart = selStart;
+        extracted.selectionEnd = selEnd;
+        return extracted;
+    }
+
+    @Override
+    public boolean commitText(CharSequence text, int newCursorPosition) {
+        commitCalls++;
+        replace(text);
+        composingStart = composingEnd = -1;
+        return true;
+    }
+
+    @Override
+    public boolean deleteSurroundingText(int beforeLength, int afterLength) {
+        int end = Math.min(text.length(), selEnd + afterLength);
+        text.delete(selEnd, end);
+        int start = Math.max(0, selStart - beforeLength);
+        text.delete(start, selStart);
+        selEnd -= selStart - start;
+        selStart = start;
+        return true;
+    }
+
+    @Override
+    public boolean setSelection(int start, int end) {
+        selStart = start;
+        selEnd = end;
+        return true;
+    }
+
+    @Override
+    public boolean setComposingText(CharSequence text, int newCursorPosition) {
+        composingCalls++;
+        composingStart = replace(text);
+        composingEnd = selEnd;
+        return true;
+    }
+
+    @Override
+    public boolean finishComposingText() {
+        composingStart = composingEnd = -1;
+        return true;
+    }
+
+    /**
+     * Replace composing text or selection, cursor goes after the new text
+     * @return start of the new text
+     */
+    private int replace(CharSequence newText) {
+        int start = composingStart >= 0 ? composingStart : selStart;
+        int end = composingStart >= 0 ? composingEnd : selEnd;
+        text.replace(start, end, newText.toString());
+        selStart = selEnd = start + newText.length();
+        return start;
+    }
+
+    @Override
+    public boolean beginBatchEdit() {
+        return true;
+    }
+
+    @Override
+    public boolean endBatchEdit() {
+        return true;
+    }
+}
@@ -0,0 +1,199 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.os.Parcelable;
+import android.view.KeyEvent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.liskovsoft.leankeyboard.ime.KeyMapperImeService.BATCH_EVENT_KEY_DOWN;
+import static com.liskovsoft.leankeyboard.ime.KeyMapperImeService.BATCH_EVENT_KEY_DOWN_UP;
+import static com.liskovsoft.leankeyboard.ime.KeyMapperImeService.BATCH_EVENT_KEY_UP;
+import static com.liskovsoft.leankeyboard.ime.KeyMapperImeService.BATCH_EVENT_TEXT;
+import static org.junit.Assert.*;
+
+/**
+ * Mixed key and text batches of the automation service
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class InjectBatchTest {
+    private static final String EMOJI = "😀";
+
+    @Test
+    public void mixedBatch_isAppliedInOrder() {
+        KeyEditor editor = new KeyEditor("");
+
+        Batch batch = new Batch()
+                .text("hello")
+                .key(BATCH_EVENT_KEY_DOWN_UP, KeyEvent.KEYCODE_DEL)
+                .text("p")
+                .key(BATCH_EVENT_KEY_DOWN_UP, KeyEvent.KEYCODE_DPAD_LEFT)
+                .key(BATCH_EVENT_KEY_DOWN_UP, KeyEvent.KEYCODE_DPAD_LEFT)
+                .text("-");
+
+        assertEquals(6, batch.apply(editor));
+        assertEquals("hel-lp", editor.text.toString());
+        assertTrue(editor.keys.isEmpty());
+    }
+
+    @Test
+    public void timestamps_defineOrder() {
+        KeyEditor editor = new KeyEditor("");
+
+        new Batch()
+                .text("b", 20)
+                .key(BATCH_EVENT_KEY_DOWN_UP, KeyEvent.KEYCODE_DEL, 30)
+                .text("a", 10)
+                .text("c", 30)
+                .apply(editor);
+
+        // del and "c" have the same time, so they keep their order
+        assertEquals("ac", editor.text.toString());
+    }
+
+    @Test
+    public void separateDownAndUp_deleteOnce() {
+        KeyEditor editor = new KeyEditor("abc");
+
+        new Batch()
+                .key(BATCH_EVENT_KEY_DOWN, KeyEvent.KEYCODE_DEL)
+                .key(BATCH_EVENT_KEY_UP, KeyEvent.KEYCODE_DEL)
+                .apply(editor);
+
+        assertEquals("ab", editor.text.toString());
+        assertTrue(editor.keys.isEmpty());
+    }
+
+    @Test
+    public void delete_keepsSurrogatePairsAndSelection() {
+        KeyEditor editor = new KeyEditor("a" + EMOJI + "b");
+        editor.setSelection(3, 3);
+
+        new Batch()
+                .key(BATCH_EVENT_KEY_DOWN_UP, KeyEvent.KEYCODE_DEL)
+                .apply(editor);
+
+        assertEquals("ab", editor.text.toString());
+
+        editor.setSelection(0, 2);
+
+        new Batch()
+                .key(BATCH_EVENT_KEY_DOWN_UP, KeyEvent.KEYCODE_FORWARD_DEL)
+                .apply(editor);
+
+        assertEquals("", editor.text.toString());
+    }
+
+    @Test
+    public void cursorMove_skipsSurrogatePair() {
+        KeyEditor editor = new KeyEditor(EMOJI + "b");
+
+        new Batch()
+                .key(BATCH_EVENT_KEY_DOWN_UP, KeyEvent.KEYCODE_DPAD_LEFT)
+                .key(BATCH_EVENT_KEY_DOWN_UP, KeyEvent.KEYCODE_DPAD_LEFT)
+                .text("a")
+                .key(BATCH_EVENT_KEY_DOWN_UP, KeyEvent.KEYCODE_DPAD_RIGHT)
+                .text("c")
+                .apply(editor);
+
+        assertEquals("a" + EMOJI + "cb", editor.text.toString());
+    }
+
+    @Test
+    public void otherKeys_areSentOutsideOfBatchEdit() {
+        KeyEditor editor = new KeyEditor("");
+
+        new Batch()
+                .text("go")
+                .key(BATCH_EVENT_KEY_DOWN_UP, KeyEvent.KEYCODE_ENTER)
+                .text("!")
+                .apply(editor);
+
+        assertEquals("go!", editor.text.toString());
+        assertEquals(2, editor.keys.size());
+        assertEquals(KeyEvent.ACTION_DOWN, editor.keys.get(0).getAction());
+        assertEquals(KeyEvent.ACTION_UP, editor.keys.get(1).getAction());
+        assertEquals(0, editor.batchDepth);
+    }
+
+    /**
+     * Records the key events, checks they are sent outside of the batch edit
+     */
+    private static class KeyEditor extends FakeInputConnection {
+        final List<KeyEvent> keys = new ArrayList<>();
+        int batchDepth;
+
+        KeyEditor(String text) {
+            super(text);
+        }
+
+        @Override
+        public boolean sendKeyEvent(KeyEvent event) {
+            assertEquals(0, batchDepth);
+            keys.add(event);
+            return true;
+        }
+
+        @Override
+        public boolean beginBatchEdit() {
+            batchDepth++;
+            return true;
+        }
+
+        @Override
+        public boolean endBatchEdit() {
+            batchDepth--;
+            return true;
+        }
+    }
+
+    private static class Batch {
+        private final List<Integer> mTypes = new ArrayList<>();
+        private final List<Long> mTimestamps = new ArrayList<>();
+        private final List<KeyEvent> mKeyEvents = new ArrayList<>();
+        private final List<String> mTexts = new ArrayList<>();
+
+        Batch text(String text) {
+            return text(text, mTypes.size());
+        }
+
+        Batch text(String text, long timestamp) {
+            return add(BATCH_EVENT_TEXT, timestamp, null, text);
+        }
+
+        Batch key(int type, int keyCode) {
+            return key(type, keyCode, mTypes.size());
+        }
+
+        Batch key(int type, int keyCode, long timestamp) {
+            return add(type, timestamp, new KeyEvent(KeyEvent.ACTION_DOWN, keyCode), null);
+        }
+
+        int apply(KeyEditor editor) {
+            int[] types = new int[mTypes.size()];
+            long[] timestamps = new long[mTypes.size()];
+
+            for (int i = 0; i < types.length; i++) {
+                types[i] = mTypes.get(i);
+                timestamps[i] = mTimestamps.get(i);
+            }
+
+            return KeyMapperImeService.applyBatch(editor, types, timestamps, mKeyEvents.toArray(new Parcelable[0]),
+                    mTexts.toArray(new String[0]));
+        }
+
+        private Batch add(int type, long timestamp, KeyEvent event, String text) {
+            mTypes.add(type);
+            mTimestamps.add(timestamp);
+            mKeyEvents.add(event);
+            mTexts.add(text);
+            return this;
+        }
+    }
+}
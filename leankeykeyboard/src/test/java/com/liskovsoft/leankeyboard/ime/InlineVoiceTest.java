@@ -0,0 +1,102 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.os.Looper;
+import android.view.inputmethod.InputConnection;
+
+import com.liskovsoft.leankeyboard.addons.voice.FakeStreamingRecognizer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Streaming voice input from the recognizer to the editor: partial results are composing text, final result is committed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class InlineVoiceTest {
+    private static final long WORD_DELAY_MS = 100;
+    private FakeInputConnection mEditor;
+    private LeanbackKeyboardContainer mContainer;
+
+    public static class TestImeService extends LeanbackImeService {
+        FakeInputConnection editor;
+
+        @Override
+        public InputConnection getCurrentInputConnection() {
+            return editor;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mEditor = new FakeInputConnection("Hello");
+
+        TestImeService service = Robolectric.buildService(TestImeService.class).create().get();
+        service.editor = mEditor;
+        service.onInitializeInterface();
+        idle(0);
+
+        mContainer = service.mContainer;
+        mContainer.setSpeechRecognizer(new FakeStreamingRecognizer("xin chao ban", WORD_DELAY_MS));
+    }
+
+    @Test
+    public void partialResults_areComposedThenCommitted() {
+        mContainer.startStreamingRecognition();
+
+        idle(WORD_DELAY_MS);
+        assertEquals("Hello xin", mEditor.text.toString());
+        assertEquals(5, mEditor.composingStart);
+
+        idle(WORD_DELAY_MS);
+        assertEquals("Hello xin chao", mEditor.text.toString());
+        assertEquals(0, mEditor.commitCalls);
+
+        idle(WORD_DELAY_MS * 2);
+        assertEquals("Hello xin chao ban ", mEditor.text.toString());
+        assertEquals(-1, mEditor.composingStart);
+        assertEquals(3, mEditor.composingCalls);
+        assertEquals(1, mEditor.commitCalls);
+        assertTrue(ImeDiagnostics.getVoiceTimeToFirstTextMs() >= 0);
+    }
+
+    @Test
+    public void cancel_removesPartialText() {
+        mContainer.startStreamingRecognition();
+
+        idle(WORD_DELAY_MS * 2);
+        assertEquals("Hello xin chao", mEditor.text.toString());
+
+        mContainer.cancelVoiceRecording();
+        idle(WORD_DELAY_MS * 5);
+
+        assertEquals("Hello", mEditor.text.toString());
+        assertEquals(-1, mEditor.composingStart);
+        assertEquals(0, mEditor.commitCalls);
+    }
+
+    @Test
+    public void spaceBeforeCursor_isNotDuplicated() {
+        mEditor.setText("Hello ", 6);
+        mContainer.setSpeechRecognizer(new FakeStreamingRecognizer("ok", 0));
+        mContainer.startStreamingRecognition();
+
+        idle(WORD_DELAY_MS);
+
+        assertEquals("Hello ok ", mEditor.text.toString());
+        assertEquals(1, mEditor.commitCalls);
+    }
+
+    private static void idle(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(ms, TimeUnit.MILLISECONDS);
+    }
+}
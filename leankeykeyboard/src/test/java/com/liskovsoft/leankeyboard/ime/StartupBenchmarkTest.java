@@ -0,0 +1,92 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import android.os.Looper;
+import android.text.InputType;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.inputmethod.EditorInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowTrace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Critical path of the cold start: service creation to the first keyboard frame.<br/>
+ * Deferred stages (dictionary, inactive layouts, gesture trie) are posted and must not run on this path.<br/>
+ * NOTE: Stages are counted by their trace sections, wall clock time of the Robolectric run says nothing about devices.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class StartupBenchmarkTest {
+    private static final String[] CRITICAL_STAGES = {"LeanKey.onCreate", "LeanKey.onInitializeInterface",
+            "LeanKey.loadLayouts", "LeanKey.onStartInputView"};
+    private static final String[] DEFERRED_STAGES = {"LeanKey.openDictionary", "LeanKey.preloadLayouts",
+            "LeanKey.buildGestureDictionary"};
+
+    @Test
+    public void firstKeyboard_runsCriticalStagesOnly() {
+        ShadowTrace.reset();
+
+        LeanbackImeService service = Robolectric.buildService(LeanbackImeService.class).create().get();
+        View view = showKeyboard(service);
+        view.getViewTreeObserver().dispatchOnPreDraw();
+
+        List<String> stages = new ArrayList<>(ShadowTrace.getPreviousSections());
+
+        // every stage runs once: only the current layout is loaded
+        for (String stage : CRITICAL_STAGES) {
+            assertEquals(stages.toString(), 1, Collections.frequency(stages, stage));
+        }
+
+        for (String stage : DEFERRED_STAGES) {
+            assertFalse(stages.toString(), stages.contains(stage));
+        }
+
+        // deferred stages are posted to the background threads, main thread does nothing more
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(stages, new ArrayList<>(ShadowTrace.getPreviousSections()));
+
+        service.onDestroy();
+    }
+
+    @Test
+    public void coldStart_endsAtFirstFrame() {
+        LeanbackImeService service = Robolectric.buildService(LeanbackImeService.class).create().get();
+        View view = showKeyboard(service);
+
+        assertTrue(ImeDiagnostics.isColdStartPending());
+
+        view.getViewTreeObserver().dispatchOnPreDraw();
+
+        assertFalse(ImeDiagnostics.isColdStartPending());
+        assertTrue(ImeDiagnostics.getColdStartDurationMs() >= 0);
+
+        service.onDestroy();
+    }
+
+    private static View showKeyboard(LeanbackImeService service) {
+        service.onInitializeInterface();
+        View view = service.onCreateInputView();
+
+        EditorInfo info = new EditorInfo();
+        info.inputType = InputType.TYPE_CLASS_TEXT;
+        service.onStartInput(info, false);
+        service.onStartInputView(info, false);
+
+        view.measure(MeasureSpec.makeMeasureSpec(1920, MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(1080, MeasureSpec.AT_MOST));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+
+        return view;
+    }
+}
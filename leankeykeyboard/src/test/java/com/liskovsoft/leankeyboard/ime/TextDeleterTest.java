@@ -0,0 +1,145 @@
+package com.liskovsoft.leankeyboard.ime;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TextDeleterTest {
+    private static final String MATH_BOLD_A = "𝐀"; // letter outside of BMP
+    private static final String EMOJI = "😀";
+
+    @Test
+    public void deleteWord_stopsAtSpace() {
+        assertEquals("hello ", deleteWord("hello world"));
+    }
+
+    @Test
+    public void deleteWord_removesTrailingSpaces() {
+        assertEquals("hello ", deleteWord("hello world   "));
+    }
+
+    @Test
+    public void deleteWord_punctuationIsSeparateWord() {
+        assertEquals("hello", deleteWord("hello,"));
+        assertEquals("hello, ", deleteWord("hello, world"));
+    }
+
+    @Test
+    public void deleteWord_keepsCombiningMarksInWord() {
+        // "Việt" with decomposed tone marks
+        assertEquals("Ti\u1ebfng ", deleteWord("Ti\u1ebfng Vie\u0302\u0323t"));
+        assertEquals("xin ", deleteWord("xin chào"));
+    }
+
+    @Test
+    public void deleteWord_surrogatePairs() {
+        assertEquals("abc ", deleteWord("abc " + EMOJI + EMOJI));
+        assertEquals("x ", deleteWord("x " + MATH_BOLD_A + MATH_BOLD_A));
+    }
+
+    @Test
+    public void deleteWord_surrogatePairSplitByWindow() {
+        String word = repeat(MATH_BOLD_A, 40) + "c";
+        FakeInputConnection editor = new FakeInputConnection("ab " + word);
+
+        assertEquals(word.length(), TextDeleter.deleteWordBeforeCursor(editor));
+        assertEquals("ab ", editor.text.toString());
+    }
+
+    @Test
+    public void deleteWord_longWordIsScannedInWindows() {
+        FakeInputConnection editor = new FakeInputConnection("start " + repeat("a", 200));
+
+        assertEquals(200, TextDeleter.deleteWordBeforeCursor(editor));
+        assertEquals("start ", editor.text.toString());
+        assertTrue(editor.maxReadLength <= 64);
+    }
+
+    @Test
+    public void deleteWord_keepsTextAfterCursor() {
+        FakeInputConnection editor = new FakeInputConnection("hello world");
+        editor.setSelection(5, 5);
+
+        TextDeleter.deleteWordBeforeCursor(editor);
+
+        assertEquals(" world", editor.text.toString());
+    }
+
+    @Test
+    public void deleteWord_whitespaceOnly() {
+        assertEquals("", deleteWord("     "));
+    }
+
+    @Test
+    public void delete_emptyField() {
+        FakeInputConnection editor = new FakeInputConnection("");
+
+        assertEquals(0, TextDeleter.deleteWordBeforeCursor(editor));
+        assertEquals(0, TextDeleter.deleteSentenceBeforeCursor(editor));
+        assertEquals(0, TextDeleter.deleteWordBeforeCursor(null));
+    }
+
+    @Test
+    public void deleteSentence_keepsSpacesAfterPreviousSentence() {
+        assertEquals("First one. ", deleteSentence("First one. Second two"));
+        assertEquals("Hỏi gì? ", deleteSentence("Hỏi gì? Không"));
+    }
+
+    @Test
+    public void deleteSentence_skipsTrailingTerminatorsAndSpaces() {
+        assertEquals("First one. ", deleteSentence("First one. Second two.  "));
+        assertEquals("One. ", deleteSentence("One. Two."));
+        assertEquals("Wait... ", deleteSentence("Wait... what"));
+    }
+
+    @Test
+    public void deleteSentence_newlineIsBoundary() {
+        assertEquals("line one\n", deleteSentence("line one\nline two"));
+    }
+
+    @Test
+    public void deleteSentence_noBoundary() {
+        assertEquals("", deleteSentence("just text"));
+    }
+
+    @Test
+    public void deleteSentence_surrogatePairs() {
+        assertEquals("Hi! ", deleteSentence("Hi! " + EMOJI + " ok"));
+    }
+
+    @Test
+    public void deleteSentence_longSentenceIsScannedInWindows() {
+        FakeInputConnection editor = new FakeInputConnection("Done. " + repeat("word ", 100));
+
+        assertEquals(500, TextDeleter.deleteSentenceBeforeCursor(editor));
+        assertEquals("Done. ", editor.text.toString());
+        assertTrue(editor.maxReadLength <= 64);
+    }
+
+    private static String deleteWord(String text) {
+        FakeInputConnection editor = new FakeInputConnection(text);
+        TextDeleter.deleteWordBeforeCursor(editor);
+        return editor.text.toString();
+    }
+
+    private static String deleteSentence(String text) {
+        FakeInputConnection editor = new FakeInputConnection(text);
+        TextDeleter.deleteSentenceBeforeCursor(editor);
+        return editor.text.toString();
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder result = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            result.append(text);
+        }
+
+        return result.toString();
+    }
+}
@@ -0,0 +1,152 @@
+package com.liskovsoft.leankeyboard.ime.gesture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Synthetic strokes over the qwerty layout: straight key-to-key segments, optionally with the finger noise
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class GestureDecoderTest {
+    private static final String[] ROWS = {"qwertyuiop", "asdfghjkl", "zxcvbnm"};
+    private static final float KEY_WIDTH = 100.0F;
+    private static final float KEY_HEIGHT = 120.0F;
+    private static final int POINTS_PER_SEGMENT = 12;
+    private GestureKeyLayout mLayout;
+    private GestureDecoder mDecoder;
+
+    @Before
+    public void setUp() {
+        mLayout = new GestureKeyLayout();
+
+        for (int row = 0; row < ROWS.length; row++) {
+            // rows are shifted like on the real keyboard
+            float offset = row * KEY_WIDTH / 2;
+
+            for (int i = 0; i < ROWS[row].length(); i++) {
+                mLayout.addKey(ROWS[row].charAt(i), offset + i * KEY_WIDTH + KEY_WIDTH / 2, row * KEY_HEIGHT + KEY_HEIGHT / 2, KEY_WIDTH);
+            }
+        }
+
+        GestureDictionary dictionary = new GestureDictionary();
+        int rank = 0;
+
+        for (String word : new String[] {"hello", "help", "world", "word", "the", "tie", "toe", "and", "quick", "brown", "fox"}) {
+            dictionary.add(word, word, rank++);
+        }
+
+        mDecoder = new GestureDecoder();
+        mDecoder.setDictionary(dictionary);
+    }
+
+    @Test
+    public void exactStroke_decodesWord() {
+        for (String word : new String[] {"hello", "help", "world", "word", "the", "quick", "brown"}) {
+            assertEquals(word, decode(word, null).get(0));
+        }
+    }
+
+    @Test
+    public void noisyStroke_decodesWord() {
+        Random random = new Random(42);
+
+        for (String word : new String[] {"hello", "world", "quick", "brown"}) {
+            assertEquals(word, decode(word, random).get(0));
+        }
+    }
+
+    @Test
+    public void sameKey_frequentVariantFirst() {
+        GestureDictionary dictionary = new GestureDictionary();
+        dictionary.add("la", "lá", 7);
+        dictionary.add("la", "là", 0);
+        dictionary.add("la", "la", 3);
+        mDecoder.setDictionary(dictionary);
+
+        List<String> words = decode("la", null);
+
+        assertEquals("là", words.get(0));
+        assertTrue(words.contains("la"));
+        assertTrue(words.contains("lá"));
+    }
+
+    @Test
+    public void shortStroke_isNotGesture() {
+        // within the same key, selector move rather than a word
+        mDecoder.startStroke(getX('g'), getY('g'));
+        mDecoder.addPoint(getX('g') + KEY_WIDTH / 4, getY('g'));
+
+        assertTrue(mDecoder.decode(mLayout).isEmpty());
+    }
+
+    @Test
+    public void strokeOverNoWord_decodesNothing() {
+        // z-p diagonal, no word starts on z
+        assertTrue(decode("zp", null).isEmpty());
+    }
+
+    @Test
+    public void notReady_withoutDictionary() {
+        mDecoder.setDictionary(null);
+
+        assertFalse(mDecoder.isReady());
+        assertTrue(decode("hello", null).isEmpty());
+    }
+
+    @Test
+    public void layoutWithFewLetters_isNotUsable() {
+        GestureKeyLayout layout = new GestureKeyLayout();
+
+        for (int i = 0; i < ROWS[0].length(); i++) {
+            layout.addKey(ROWS[0].charAt(i), i * KEY_WIDTH, 0, KEY_WIDTH);
+        }
+
+        assertFalse(layout.isUsable());
+        assertTrue(mLayout.isUsable());
+        assertEquals(KEY_WIDTH, mLayout.getKeyWidth(), 0.01F);
+    }
+
+    /**
+     * @param random noise of the finger or null for the exact key-to-key stroke
+     */
+    private List<String> decode(String word, Random random) {
+        mDecoder.startStroke(getX(word.charAt(0)), getY(word.charAt(0)));
+
+        for (int i = 1; i < word.length(); i++) {
+            char from = word.charAt(i - 1);
+            char to = word.charAt(i);
+
+            for (int j = 1; j <= POINTS_PER_SEGMENT; j++) {
+                float ratio = (float) j / POINTS_PER_SEGMENT;
+                float x = getX(from) + ratio * (getX(to) - getX(from));
+                float y = getY(from) + ratio * (getY(to) - getY(from));
+
+                if (random != null) {
+                    x += (float) random.nextGaussian() * KEY_WIDTH * 0.1F;
+                    y += (float) random.nextGaussian() * KEY_WIDTH * 0.1F;
+                }
+
+                mDecoder.addPoint(x, y);
+            }
+        }
+
+        return mDecoder.decode(mLayout);
+    }
+
+    private float getX(char letter) {
+        return mLayout.getX(letter - 'a');
+    }
+
+    private float getY(char letter) {
+        return mLayout.getY(letter - 'a');
+    }
+}
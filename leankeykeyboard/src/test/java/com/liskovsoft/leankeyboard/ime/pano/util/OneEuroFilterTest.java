@@ -0,0 +1,97 @@
+package com.liskovsoft.leankeyboard.ime.pano.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Offline replay of the synthetic touchpad traces (mm, 125 Hz) with the {@link TouchNavSpaceTracker} defaults
+ */
+public class OneEuroFilterTest {
+    private static final long PERIOD_MS = 8;
+    private static final float REST_MM = 20.0F;
+    private static final float NOISE_MM = 0.3F;
+    private static final long SWIPE_MS = 200;
+    private static final float SWIPE_SPEED_MM_PER_MS = 0.1F;
+    private static final float SWIPE_END_MM = REST_MM + SWIPE_SPEED_MM_PER_MS * SWIPE_MS;
+
+    @Test
+    public void fingerAtRest_jitterIsRemoved() {
+        OneEuroFilter filter = newFilter(TouchNavSpaceTracker.DEFAULT_FILTER_BETA);
+        Random random = new Random(42);
+        filter.reset(REST_MM, 0);
+
+        double inputSquares = 0;
+        double outputSquares = 0;
+        int samples = 0;
+
+        for (long time = PERIOD_MS; time <= 2000; time += PERIOD_MS) {
+            float input = REST_MM + (float) random.nextGaussian() * NOISE_MM;
+            float output = filter.filter(input, time);
+
+            if (time > 500) {
+                // settled
+                inputSquares += (input - REST_MM) * (input - REST_MM);
+                outputSquares += (output - REST_MM) * (output - REST_MM);
+                samples++;
+            }
+        }
+
+        double inputJitter = Math.sqrt(inputSquares / samples);
+        double outputJitter = Math.sqrt(outputSquares / samples);
+
+        assertTrue("Jitter " + outputJitter + " of " + inputJitter, outputJitter < inputJitter * 0.3);
+    }
+
+    @Test
+    public void fastSwipe_lagIsSmall() {
+        float adaptiveLag = replaySwipe(newFilter(TouchNavSpaceTracker.DEFAULT_FILTER_BETA));
+        float fixedLag = replaySwipe(newFilter(0));
+
+        assertTrue("Lag " + adaptiveLag + " mm", adaptiveLag < 2.0F);
+        assertTrue("Lag " + adaptiveLag + " of " + fixedLag, adaptiveLag < fixedLag * 0.25F);
+    }
+
+    @Test
+    public void swipeStop_settlesWithoutOvershoot() {
+        OneEuroFilter filter = newFilter(TouchNavSpaceTracker.DEFAULT_FILTER_BETA);
+        replaySwipe(filter);
+
+        for (long time = SWIPE_MS + PERIOD_MS; time <= SWIPE_MS + 500; time += PERIOD_MS) {
+            assertTrue(filter.filter(SWIPE_END_MM, time) <= SWIPE_END_MM);
+        }
+
+        assertEquals(SWIPE_END_MM, filter.getValue(), 0.1F);
+    }
+
+    @Test
+    public void sameTimestamp_staysFinite() {
+        OneEuroFilter filter = newFilter(TouchNavSpaceTracker.DEFAULT_FILTER_BETA);
+        filter.reset(REST_MM, 100);
+
+        float output = filter.filter(REST_MM + 5, 100);
+
+        assertFalse(Float.isNaN(output) || Float.isInfinite(output));
+        assertTrue(output > REST_MM && output <= REST_MM + 5);
+    }
+
+    /**
+     * Swipe from rest at 100 mm/s
+     * @return distance between the finger and the filtered position at the end
+     */
+    private static float replaySwipe(OneEuroFilter filter) {
+        filter.reset(REST_MM, 0);
+
+        for (long time = PERIOD_MS; time <= SWIPE_MS; time += PERIOD_MS) {
+            filter.filter(REST_MM + SWIPE_SPEED_MM_PER_MS * time, time);
+        }
+
+        return SWIPE_END_MM - filter.getValue();
+    }
+
+    private static OneEuroFilter newFilter(float beta) {
+        return new OneEuroFilter(TouchNavSpaceTracker.DEFAULT_FILTER_MIN_CUTOFF_HZ, beta, TouchNavSpaceTracker.DEFAULT_FILTER_DERIVATIVE_CUTOFF_HZ);
+    }
+}
@@ -0,0 +1,154 @@
+package com.liskovsoft.leankeyboard.ime.pano.util;
+
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import com.liskovsoft.leankeyboard.ime.pano.util.TouchNavSpaceTracker.PhysicalMotionEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Touch-navigation move path runs at 100+ Hz, so it must not allocate.<br/>
+ * Events go the whole way after the device lookup: velocity tracker, pointer averaging, filter, prediction.<br/>
+ * NOTE: MotionEvent and VelocityTracker are framework code (native on the devices). Their cost here is measured
+ * by feeding the same events to a bare velocity tracker and subtracted.<br/>
+ * NOTE: MotionEvent has no public time setter, so events are obtained before every chunk of moves, outside the measurement.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TouchNavAllocationTest {
+    private static final float RESOLUTION = 10.0F;
+    private static final int WARM_UP_MOVES = 10_000;
+    private static final int MOVES = 50_000;
+    private static final int CHUNK = 1_000;
+    private static final long PERIOD_MS = 8;
+    private final com.sun.management.ThreadMXBean mThreads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final MotionEvent[] mEvents = new MotionEvent[CHUNK];
+    private TouchNavSpaceTracker mSpaceTracker;
+    private TouchNavMotionTracker mTracker;
+    private VelocityTracker mFrameworkTracker;
+    private int mListenerMoves;
+    private float[] mXs;
+    private float[] mYs;
+    private long mDownTime;
+    private long mTime;
+    private int mIndex;
+    private long mMeasureOverhead;
+
+    @Before
+    public void setUp() {
+        mSpaceTracker = new TouchNavSpaceTracker();
+        mSpaceTracker.setTouchEventListener(new TouchNavSpaceTracker.SimpleTouchEventListener() {
+            @Override
+            public boolean onMove(PhysicalMotionEvent down, PhysicalMotionEvent current, float x, float y) {
+                mListenerMoves++;
+                return true;
+            }
+        });
+        mSpaceTracker.setPixelSize(1920, 1080);
+        mSpaceTracker.setPixelPosition(960, 540);
+        mSpaceTracker.setLPFEnabled(true);
+        mSpaceTracker.configurePrediction(TouchNavSpaceTracker.DEFAULT_PREDICTION_MS, TouchNavSpaceTracker.DEFAULT_MAX_PREDICTION_MM);
+
+        mTracker = new TouchNavMotionTracker(RESOLUTION, RESOLUTION, 0.1F);
+        mTracker.configureFilter(TouchNavSpaceTracker.DEFAULT_FILTER_MIN_CUTOFF_HZ, TouchNavSpaceTracker.DEFAULT_FILTER_BETA,
+                TouchNavSpaceTracker.DEFAULT_FILTER_DERIVATIVE_CUTOFF_HZ);
+        mFrameworkTracker = VelocityTracker.obtain();
+
+        // finger circles around the pad center, one turn per 64 events
+        mXs = new float[64];
+        mYs = new float[64];
+
+        for (int i = 0; i < mXs.length; i++) {
+            double angle = 2 * Math.PI * i / mXs.length;
+            mXs[i] = (float) (300 + 200 * Math.cos(angle));
+            mYs[i] = (float) (300 + 200 * Math.sin(angle));
+        }
+
+        MotionEvent down = MotionEvent.obtain(mDownTime, mTime, MotionEvent.ACTION_DOWN, mXs[0], mYs[0], 0);
+        mSpaceTracker.onMotionEvent(mTracker, down);
+        mFrameworkTracker.addMovement(down);
+        down.recycle();
+
+        long baseline = mThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        mMeasureOverhead = mThreads.getThreadAllocatedBytes(Thread.currentThread().getId()) - baseline;
+    }
+
+    @Test
+    public void move_allocatesNothing() {
+        move(WARM_UP_MOVES, false);
+        move(WARM_UP_MOVES, true);
+
+        mListenerMoves = 0;
+        long allocated = move(MOVES, false);
+        long frameworkAllocated = move(MOVES, true);
+
+        // pointer really moved
+        assertTrue(mListenerMoves > MOVES / 2);
+        // less than a byte per move: no object is created per move
+        assertTrue("Allocated " + allocated + " bytes in " + MOVES + " moves, framework " + frameworkAllocated,
+                allocated - frameworkAllocated < MOVES);
+    }
+
+    /**
+     * @param framework feed the bare velocity tracker instead
+     * @return bytes allocated by the moves
+     */
+    private long move(int count, boolean framework) {
+        long threadId = Thread.currentThread().getId();
+        long allocated = 0;
+
+        for (int chunk = 0; chunk < count / CHUNK; chunk++) {
+            obtainEvents();
+
+            long before = mThreads.getThreadAllocatedBytes(threadId);
+
+            for (MotionEvent event : mEvents) {
+                if (framework) {
+                    readEvent(event);
+                } else {
+                    mSpaceTracker.onMotionEvent(mTracker, event);
+                }
+            }
+
+            allocated += mThreads.getThreadAllocatedBytes(threadId) - before - mMeasureOverhead;
+
+            for (MotionEvent event : mEvents) {
+                event.recycle();
+            }
+        }
+
+        return allocated;
+    }
+
+    private void obtainEvents() {
+        for (int i = 0; i < CHUNK; i++) {
+            int index = mIndex++ % mXs.length;
+            mTime += PERIOD_MS;
+            mEvents[i] = MotionEvent.obtain(mDownTime, mTime, MotionEvent.ACTION_MOVE, mXs[index], mYs[index], 0);
+        }
+    }
+
+    /**
+     * Framework calls of the move path
+     */
+    private void readEvent(MotionEvent event) {
+        event.getActionMasked();
+        mFrameworkTracker.addMovement(event);
+        event.getPointerCount();
+        event.getX(0);
+        event.getY(0);
+        event.getDeviceId();
+        event.getEventTime();
+        mFrameworkTracker.computeCurrentVelocity(1000);
+        mFrameworkTracker.getXVelocity();
+        mFrameworkTracker.getYVelocity();
+    }
+}